@@ -76,6 +76,7 @@ public class CompilationServiceImpl implements CompilationService {
     }
 
     @Override
+    @Transactional
     public CompilationDto getCompilationId(Long compId) {
         Compilation compilation = compilationRepository.findById(compId)
                 .orElseThrow(() -> {
@@ -87,6 +88,7 @@ public class CompilationServiceImpl implements CompilationService {
     }
 
     @Override
+    @Transactional
     public List<CompilationDto> getCompilations(Boolean pinned, int from, int size) {
         log.info("Получение подборок: pinned={}, from={}, size={}", pinned, from, size);
 
@@ -26,6 +26,8 @@ import ru.practicum.user.UserRepository;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 import static ru.practicum.event.EventMapper.*;
@@ -114,14 +116,17 @@ public class EventServiceImpl implements EventService {
                     return new NotFoundException("Событие с id=" + eventId + " не найдено");
                 });
 
+        // Просмотры запрашиваются только для найденного события пользователя, а поток запроса тем временем
+        // собирает dto
+        CompletableFuture<Long> eventViews = getEventViewAsync(eventId);
+        EventDto eventDto = mapToEventDto(event);
+
         // Получаем количество просмотров
-        Long views = getEventView(eventId);
+        Long views = eventViews.join();
         log.debug("Получаем количество просмотров views=" + views);
-
-        EventDto eventDto = mapToEventDto(event);
         eventDto.setViews(views);
 
-        return mapToEventDto(event);
+        return eventDto;
     }
 
     @Override
@@ -186,7 +191,7 @@ public class EventServiceImpl implements EventService {
 
         // Получаем количество просмотров только если событие опубликовано
         if (updatedEvent.getState() == EventState.PUBLISHED) {
-            Long views = getEventView(eventId);
+            Long views = getEventViewAsync(eventId).join();
             eventDto.setViews(views);
         }
 
@@ -269,13 +274,16 @@ public class EventServiceImpl implements EventService {
             }
         }
 
+        // Просмотры запрашиваются после всех проверок параллельно с сохранением события
+        CompletableFuture<Long> eventViews = getEventViewAsync(eventId);
+
         updateEventFields(event, request);
 
         Event updatedEvent = eventRepository.save(event);
         log.info("Событие обновлено: eventId={}, newState={}", eventId, updatedEvent.getState());
 
         // Получаем количество просмотров
-        Long views = getEventView(eventId);
+        Long views = eventViews.join();
 
         EventDto eventDto = mapToEventDto(updatedEvent);
         eventDto.setViews(views);
@@ -299,13 +307,15 @@ public class EventServiceImpl implements EventService {
             throw new EventNotPublishedException("Событие еще не опубликовано");
         }
 
-        // Добавляем запись о просмотре в статистику
+        // Добавляем запись о просмотре в статистику и параллельно запрашиваем просмотры, не дожидаясь отправки хита:
+        // со спулом или очередью пачек хит доходит до сервиса статистики позже, и ожидание не гарантирует, что он
+        // будет учтен. Поэтому просмотры могут отставать на еще не доставленные хиты, в том числе на этот. Текущий
+        // ip сам является уникальным просмотром, так что просмотров не меньше одного
         addHit(remoteAddr, requestUri);
-
-        // Получаем количество просмотров
-        Long views = getEventView(id);
+        CompletableFuture<Long> eventViews = getEventViewAsync(id);
 
         EventDto eventDto = mapToEventDto(event);
+        Long views = Math.max(eventViews.join(), 1L);
         eventDto.setViews(views);
 
         log.debug("Событие с id={} получено, количество просмотров: {}", id, views);
@@ -445,8 +455,9 @@ public class EventServiceImpl implements EventService {
         }
     }
 
-    // Отправка информацию о просмотре события в сервис клиента
-    private void addHit(String ip, String uri) {
+    // Отправка информацию о просмотре события в сервис клиента без ожидания ответа. Future завершается после
+    // отправки, ошибки отправки пишет в лог StatsClient
+    private CompletableFuture<Void> addHit(String ip, String uri) {
         try {
             log.info("Отправка информации о просмотре события: uri={}, ip={}", uri, ip);
 
@@ -457,15 +468,17 @@ public class EventServiceImpl implements EventService {
                     .timestamp(LocalDateTime.now())
                     .build();
 
-            statsClient.addHit(request);
-            log.debug("Информация о просмотре успешно отправлена");
+            CompletableFuture<Void> sent = statsClient.addHitAsync(request);
+            log.debug("Информация о просмотре передана на отправку");
+            return sent;
         } catch (Exception e) {
             log.warn("Ошибка при отправке статистики просмотра для uri={}, ip={}: {}", uri, ip, e.getMessage(), e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
-    // Получение количества просмотров событий
-    private Long getEventView(Long eventId) {
+    // Получение количества просмотров событий. Запрос выполняется в пуле StatsClient, при ошибке просмотров 0
+    private CompletableFuture<Long> getEventViewAsync(Long eventId) {
 
         log.debug("Получение количества просмотров для события ID={}", eventId);
 
@@ -476,26 +489,28 @@ public class EventServiceImpl implements EventService {
         List<String> uris = List.of("/events/" + eventId);
         log.debug("Параметры запроса статистики: start={}, uris={}", appCreationDate, uris);
 
-        try {
-            // Запрашиваем статистику - учитываем только уникальные ip
-            List<ViewStatsDto> stats = statsClient.getStats(
-                    appCreationDate,
-                    LocalDateTime.now(),
-                    uris,
-                    true
-            );
-
-            log.debug("Получена статистика: {}", stats);
+        // Запрашиваем статистику - учитываем только уникальные ip
+        return statsClient.getStatsAsync(
+                        appCreationDate,
+                        LocalDateTime.now(),
+                        uris,
+                        true
+                )
+                .thenApply(stats -> {
+                    log.debug("Получена статистика: {}", stats);
 
-            Long views = stats.isEmpty() ? 0L : stats.get(0).getHits();
-            log.debug("Количество просмотров для события ID={}: {}", eventId, views);
+                    Long views = stats.isEmpty() ? 0L : stats.get(0).getHits();
+                    log.debug("Количество просмотров для события ID={}: {}", eventId, views);
 
-            return views;
-        } catch (Exception e) {
-            log.warn("Ошибка в statsClient.getStats() для события ID={}: {}", eventId, e.getMessage(), e);
+                    return views;
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.warn("Ошибка в statsClient.getStats() для события ID={}: {}", eventId, cause.getMessage(),
+                            cause);
 
-            return 0L;
-        }
+                    return 0L;
+                });
     }
 
 }
@@ -0,0 +1,178 @@
+package ru.practicum.bench;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.NewHitRequest;
+import ru.practicum.StatsServerApp;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.service.HitService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Время HitServiceImpl.getStats на наборе из hits хитов по uris uri с ips адресов, равномерно распределенных по days
+// суткам. Матрица покрывает все четыре запроса HitRepository: unique=false и true, все uri (uriCount=0) или список
+// из uriCount uri - на диапазонах длиной rangeDays суток. Конец диапазона не выровнен по часу, поэтому агрегаты
+// и битмапы дочитывают края из сырых хитов, как в обычных запросах. Кэш ответов /stats выключен
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsQueryBenchmark {
+
+    private static final LocalDateTime DATA_START = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final String APP = "ewm-main-service";
+    private static final long SEED = 42;
+    private static final int SEED_BATCH = 1000;
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    // h2 - встроенная база профиля test, postgres - база из DATABASE_URL с миграциями сервера
+    @Param({"h2"})
+    public String db;
+
+    @Param({"100000"})
+    public int hits;
+
+    @Param({"1000"})
+    public int uris;
+
+    @Param({"10000"})
+    public int ips;
+
+    @Param({"30"})
+    public int days;
+
+    @Param({"1", "7", "30"})
+    public int rangeDays;
+
+    @Param({"0", "1", "10", "100"})
+    public int uriCount;
+
+    @Param({"false", "true"})
+    public String unique;
+
+    private ConfigurableApplicationContext context;
+    private HitService hitService;
+    private LocalDateTime start;
+    private LocalDateTime end;
+    private List<String> uriList;
+    private UniqueMode uniqueMode;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(StatsServerApp.class).run(arguments());
+        hitService = context.getBean(HitService.class);
+        seed();
+
+        end = DATA_START.plusDays(days).minusHours(5).minusMinutes(13);
+        start = end.minusDays(rangeDays);
+        uriList = uriCount == 0
+                ? null
+                : IntStream.range(0, Math.min(uriCount, uris)).mapToObj(StatsQueryBenchmark::uri).toList();
+        uniqueMode = UniqueMode.from(unique);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> getStats() {
+        return hitService.getStats(start, end, uriList, uniqueMode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // Настройки, которыми бенчмарк отличается от сервера. Системные свойства форка (-jvmArgsAppend -D...) важнее
+    private String[] arguments() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.main.web-application-type", "none");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.org.hibernate.orm.deprecation", "ERROR");
+        properties.put("logging.level.org.springframework.orm.jpa", "WARN");
+        properties.put("logging.level.org.springframework.transaction", "WARN");
+        properties.put("logging.level.org.springframework.transaction.interceptor", "WARN");
+        properties.put("logging.level.org.springframework.orm.jpa.JpaTransactionManager", "WARN");
+        properties.put("stats.cache.enabled", "false");
+        properties.put("stats.top.enabled", "false");
+        properties.put("stats.ingest.mode", "sync");
+        properties.put("stats.store.segment.dir", "target/bench-segments");
+        switch (db) {
+            case "h2" -> properties.put("spring.profiles.active", "test");
+            case "postgres" -> {
+            }
+            default -> throw new IllegalArgumentException("Параметр db должен быть h2 или postgres");
+        }
+        return properties.entrySet().stream()
+                .filter(property -> System.getProperty(property.getKey()) == null)
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+    }
+
+    // Набор данных детерминирован и создается один раз: база Postgres между запусками переиспользуется,
+    // если в ней ровно hits хитов, и не трогается, если в ней что-то другое
+    private void seed() {
+        long existing = hitService.getStats(DATA_START, DATA_START.plusDays(days), null, UniqueMode.NONE).stream()
+                .mapToLong(ViewStatsDto::getHits)
+                .sum();
+        if (existing == hits) {
+            return;
+        }
+        if (existing != 0) {
+            throw new IllegalStateException("В базе уже " + existing + " хитов, а набор данных бенчмарка - "
+                    + hits + ": нужна пустая база");
+        }
+
+        long started = System.nanoTime();
+        Random random = new Random(SEED);
+        List<NewHitRequest> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < hits; i++) {
+            batch.add(NewHitRequest.builder()
+                    .app(APP)
+                    .uri(uri(random.nextInt(uris)))
+                    .ip(ip(random.nextInt(ips)))
+                    .timestamp(DATA_START.plusSeconds((long) (random.nextDouble() * days * SECONDS_PER_DAY))
+                            .plusNanos(random.nextInt(1_000_000) * 1_000L))
+                    .build());
+            if (batch.size() == SEED_BATCH || i == hits - 1) {
+                hitService.addHits(batch);
+                batch.clear();
+            }
+        }
+        log.info("Набор данных: {} хитов загружен за {} с", hits,
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+    }
+
+    private static String uri(int index) {
+        return "/events/" + index;
+    }
+
+    private static String ip(int index) {
+        return "10." + (index >>> 16 & 0xFF) + "." + (index >>> 8 & 0xFF) + "." + (index & 0xFF);
+    }
+}
@@ -0,0 +1,204 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Объединение хитов в пачки (stats-server.batch.enabled=true): StatsClient.addHit кладет хит в неблокирующую
+// очередь, а фоновый поток отправляет накопленное одним addHits раз в flush-interval-ms или сразу, как только
+// набралось max-batch-size хитов. Неудачная пачка не повторяется - хиты, которые нельзя терять при недоступности
+// stats-server, пишутся в спул (stats-server.spool.enabled), и при включенном спуле пачки собирает он сам
+@Slf4j
+@Component
+@ConditionalOnExpression("${stats-server.batch.enabled:false} and !${stats-server.spool.enabled:false}")
+public class HitBatcher implements SmartLifecycle {
+
+    private static final long SHUTDOWN_WAIT_MS = 5000;
+
+    private final long flushIntervalNanos;
+    private final int maxBatchSize;
+    private final int maxPending;
+
+    private final Counter sentCounter;
+    private final Counter flushCounter;
+    private final Counter droppedCounter;
+
+    private final ConcurrentLinkedQueue<PendingHit> queue = new ConcurrentLinkedQueue<>();
+    // Хиты в очереди и в отправляемой пачке: ConcurrentLinkedQueue.size() обходит всю очередь
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private Consumer<List<NewHitRequest>> sender;
+    private volatile boolean running;
+    private volatile Thread flusher;
+
+    public HitBatcher(MeterRegistry meterRegistry,
+                      @Value("${stats-server.batch.flush-interval-ms:5}") long flushIntervalMs,
+                      @Value("${stats-server.batch.max-batch-size:500}") int maxBatchSize,
+                      @Value("${stats-server.batch.max-pending:100000}") int maxPending) {
+        if (flushIntervalMs <= 0) {
+            throw new IllegalArgumentException("stats-server.batch.flush-interval-ms должен быть больше 0");
+        }
+        if (maxBatchSize <= 0 || maxPending < maxBatchSize) {
+            throw new IllegalArgumentException("stats-server.batch.max-batch-size должен быть больше 0 и не больше "
+                    + "stats-server.batch.max-pending");
+        }
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.maxBatchSize = maxBatchSize;
+        this.maxPending = maxPending;
+
+        Gauge.builder("stats.client.batch.pending", pending, AtomicInteger::get)
+                .description("Хиты в очереди и в отправляемой пачке")
+                .register(meterRegistry);
+        this.sentCounter = meterRegistry.counter("stats.client.batch.sent");
+        this.flushCounter = meterRegistry.counter("stats.client.batch.flushes");
+        this.droppedCounter = meterRegistry.counter("stats.client.batch.dropped");
+    }
+
+    public void sendTo(Consumer<List<NewHitRequest>> sender) {
+        this.sender = sender;
+    }
+
+    // Future завершается, когда пачка с хитом отправлена, и завершается ошибкой, если хит отброшен: очередь
+    // заполнена до max-pending, отправка не удалась или очередь уже остановлена
+    public CompletableFuture<Void> add(NewHitRequest hit) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Очередь хитов остановлена"));
+        }
+        int size = pending.incrementAndGet();
+        if (size > maxPending) {
+            pending.decrementAndGet();
+            droppedCounter.increment();
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Очередь хитов заполнена до " + maxPending));
+        }
+        PendingHit pendingHit = new PendingHit(hit, new CompletableFuture<>());
+        queue.offer(pendingHit);
+        // Остановка могла пройти между проверкой running и добавлением, и тогда хит уже некому отправить
+        if (!running && queue.remove(pendingHit)) {
+            pending.decrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("Очередь хитов остановлена"));
+        }
+        // Полная пачка отправляется, не дожидаясь интервала
+        if (size == maxBatchSize) {
+            LockSupport.unpark(flusher);
+        }
+        return pendingHit.sent();
+    }
+
+    @Override
+    public void start() {
+        if (sender == null) {
+            throw new IllegalStateException("Очереди хитов не задан получатель");
+        }
+        running = true;
+        Thread thread = new Thread(this::flushLoop, "hit-batch-flusher");
+        thread.setDaemon(true);
+        flusher = thread;
+        thread.start();
+    }
+
+    // Хиты, оставшиеся в очереди, отправляются перед остановкой, но не дольше SHUTDOWN_WAIT_MS
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(SHUTDOWN_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            log.warn("Отправка хитов из очереди не завершилась за {} мс, в очереди хитов: {}", SHUTDOWN_WAIT_MS,
+                    pending.get());
+        } else {
+            log.info("Очередь хитов остановлена");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Останавливаемся после веб-сервера, чтобы отправить хиты из последних запросов
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            if (pending.get() < maxBatchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            flush();
+        }
+        // Хиты, добавленные до остановки
+        flush();
+    }
+
+    // Отправляет очередь пачками не больше max-batch-size, пока она не опустеет
+    private void flush() {
+        List<PendingHit> batch = new ArrayList<>(Math.min(pending.get(), maxBatchSize));
+        PendingHit pendingHit;
+        while ((pendingHit = queue.poll()) != null) {
+            batch.add(pendingHit);
+            if (batch.size() == maxBatchSize) {
+                send(batch);
+                pending.addAndGet(-batch.size());
+                batch = new ArrayList<>(maxBatchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+            pending.addAndGet(-batch.size());
+        }
+    }
+
+    // Ответ 4xx, кроме 408 и 429, значит, что stats-server отверг какой-то хит пачки, и пачка отвергнута целиком:
+    // тогда хиты отправляются по одному, чтобы остальные не пропали из-за одного
+    private void send(List<PendingHit> batch) {
+        try {
+            sender.accept(batch.stream().map(PendingHit::hit).toList());
+            flushCounter.increment();
+            sentCounter.increment(batch.size());
+            batch.forEach(hit -> hit.sent().complete(null));
+        } catch (HttpClientErrorException e) {
+            if (batch.size() > 1 && !e.getStatusCode().isSameCodeAs(HttpStatus.REQUEST_TIMEOUT)
+                    && !e.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+                log.warn("stats-server отверг пачку из {} хитов ({}), отправка по одному", batch.size(),
+                        e.getStatusCode());
+                batch.forEach(hit -> send(List.of(hit)));
+                return;
+            }
+            drop(batch, e);
+        } catch (RuntimeException e) {
+            drop(batch, e);
+        }
+    }
+
+    private void drop(List<PendingHit> batch, RuntimeException e) {
+        droppedCounter.increment(batch.size());
+        log.warn("Не удалось отправить пачку из {} хитов, она отброшена: {}", batch.size(), e.getMessage());
+        batch.forEach(hit -> hit.sent().completeExceptionally(e));
+    }
+
+    private record PendingHit(NewHitRequest hit, CompletableFuture<Void> sent) {
+    }
+}
@@ -0,0 +1,545 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Локальный спул хитов (stats-server.spool.enabled=true): StatsClient.addHit только дописывает хит в файл и не ждет
+// stats-server, а фоновый отправщик читает спул пачками по batch-size и передает их addHits, повторяя неудачные
+// попытки с растущей паузой. Спул - файлы hits-<номер>.spool в dir, запись - длина, CRC32 и хит в формате
+// HitBinaryCodec. Файлы сбрасываются на диск раз в fsync-interval-ms: при падении процесса хиты не теряются, при сбое
+// ОС теряются хиты не больше чем за этот интервал. Позиция отправки хранится в shipped.pos, и пачка, отправленная
+// перед падением, но не отмеченная в нем, после запуска уйдет повторно
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats-server.spool.enabled", havingValue = "true")
+public class HitSpool implements SmartLifecycle {
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    // Поля хита в HitBinaryCodec короче 0xFFFF байт, поэтому запись длиннее - мусор оборванной записи
+    private static final int MAX_RECORD_SIZE = 1 + 3 * (2 + 0xFFFF) + 8;
+    private static final int READ_CHUNK_SIZE = 1 << 20;
+    private static final int POSITION_SIZE = 12;
+    private static final long SHUTDOWN_WAIT_MS = 5000;
+    private static final String POSITION_FILE = "shipped.pos";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("hits-(\\d{8})\\.spool");
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final int batchSize;
+    private final long shipIntervalMs;
+    private final long fsyncIntervalMs;
+    private final long retryInitialMs;
+    private final long retryMaxMs;
+
+    private final Counter spooledCounter;
+    private final Counter shippedCounter;
+    private final Counter droppedCounter;
+    private final Counter rejectedCounter;
+    // Хиты, отброшенные из-за заполненного спула, с прошлого сброса на диск
+    private final LongAdder droppedSinceSync = new LongAdder();
+    // Записанные, но еще не отправленные байты
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    // Запись идет под блокировкой, а не synchronized: внутри ввод-вывод, и виртуальный поток запроса, ожидающий
+    // монитор, занимал бы поток-носитель (pinning)
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private FileChannel active;
+    private int activeNumber;
+    private long activeSize;
+    private boolean dirty;
+    private boolean closed;
+
+    // Позиция отправки меняется только потоком отправщика
+    private final FileChannel positionChannel;
+    private int shipNumber;
+    private long shipPosition;
+    private volatile boolean positionDirty;
+
+    private Consumer<List<NewHitRequest>> sender;
+    private volatile boolean running;
+    private Thread shipper;
+    private ScheduledExecutorService syncer;
+
+    public HitSpool(MeterRegistry meterRegistry,
+                    @Value("${stats-server.spool.dir:data/spool}") String dir,
+                    @Value("${stats-server.spool.segment-bytes:8388608}") long segmentBytes,
+                    @Value("${stats-server.spool.max-bytes:268435456}") long maxBytes,
+                    @Value("${stats-server.spool.batch-size:500}") int batchSize,
+                    @Value("${stats-server.spool.ship-interval-ms:200}") long shipIntervalMs,
+                    @Value("${stats-server.spool.fsync-interval-ms:1000}") long fsyncIntervalMs,
+                    @Value("${stats-server.spool.retry-initial-ms:500}") long retryInitialMs,
+                    @Value("${stats-server.spool.retry-max-ms:30000}") long retryMaxMs) {
+        if (segmentBytes <= 0 || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("stats-server.spool.segment-bytes должен быть больше 0 и не больше "
+                    + "stats-server.spool.max-bytes");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("stats-server.spool.batch-size должен быть больше 0");
+        }
+        this.dir = Path.of(dir);
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.batchSize = batchSize;
+        this.shipIntervalMs = shipIntervalMs;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.retryInitialMs = retryInitialMs;
+        this.retryMaxMs = Math.max(retryInitialMs, retryMaxMs);
+
+        try {
+            Files.createDirectories(this.dir);
+            this.positionChannel = FileChannel.open(this.dir.resolve(POSITION_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть спул хитов в " + dir, e);
+        }
+
+        Gauge.builder("stats.client.spool.pending", pendingBytes, AtomicLong::get)
+                .description("Байты хитов в спуле, еще не отправленные в stats-server")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.spooledCounter = meterRegistry.counter("stats.client.spool.spooled");
+        this.shippedCounter = meterRegistry.counter("stats.client.spool.shipped");
+        this.droppedCounter = meterRegistry.counter("stats.client.spool.dropped");
+        this.rejectedCounter = meterRegistry.counter("stats.client.spool.rejected");
+    }
+
+    // Все файлы прошлого запуска закрываются для записи: хвост последнего мог оборваться, и новые хиты идут
+    // в новый файл. Отправка продолжается с сохраненной позиции, уже отправленные файлы удаляются
+    private void recover() throws IOException {
+        List<Integer> existing = existingSegments();
+        int savedNumber = -1;
+        long savedPosition = 0;
+        if (positionChannel.size() >= POSITION_SIZE) {
+            ByteBuffer position = ByteBuffer.allocate(POSITION_SIZE);
+            readFully(positionChannel, position, 0);
+            position.flip();
+            savedNumber = position.getInt();
+            savedPosition = position.getLong();
+        }
+
+        int last = existing.isEmpty() ? -1 : existing.get(existing.size() - 1);
+        activeNumber = Math.max(last, savedNumber) + 1;
+        active = openSegment(activeNumber);
+        activeSize = active.size();
+
+        shipNumber = activeNumber;
+        shipPosition = 0;
+        long pending = activeSize;
+        for (int number : existing) {
+            long size = Files.size(segmentPath(number));
+            if (number < savedNumber) {
+                Files.delete(segmentPath(number));
+            } else if (number == savedNumber) {
+                shipNumber = Math.min(shipNumber, number);
+                shipPosition = Math.min(Math.max(savedPosition, 0), size);
+                pending += size - shipPosition;
+            } else {
+                if (number < shipNumber) {
+                    shipNumber = number;
+                    shipPosition = 0;
+                }
+                pending += size;
+            }
+        }
+        pendingBytes.set(pending);
+        savePosition();
+        log.info("Спул хитов открыт в {}: неотправленных байт {}, отправка с файла {} позиции {}", dir, pending,
+                shipNumber, shipPosition);
+    }
+
+    // Получатель пачек хитов из спула, задается до запуска
+    public void shipTo(Consumer<List<NewHitRequest>> sender) {
+        this.sender = sender;
+    }
+
+    // Возвращает false, если спул заполнен до max-bytes и хит отброшен. Ошибка записи в файл - UncheckedIOException
+    public boolean append(NewHitRequest hit) {
+        byte[] payload = HitBinaryCodec.encode(hit);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .flip();
+        if (pendingBytes.get() + record.remaining() > maxBytes) {
+            droppedCounter.increment();
+            droppedSinceSync.increment();
+            return false;
+        }
+
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Спул хитов закрыт");
+            }
+            if (activeSize >= segmentBytes) {
+                rollSegment();
+            }
+            // Запись по позиции: если прошлая оборвалась ошибкой, ее остаток перезаписывается
+            long position = activeSize;
+            while (record.hasRemaining()) {
+                position += active.write(record, position);
+            }
+            pendingBytes.addAndGet(position - activeSize);
+            activeSize = position;
+            dirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать хит в спул", e);
+        } finally {
+            writeLock.unlock();
+        }
+        spooledCounter.increment();
+        return true;
+    }
+
+    private void rollSegment() throws IOException {
+        active.force(false);
+        active.close();
+        activeNumber++;
+        active = openSegment(activeNumber);
+        activeSize = 0;
+        dirty = false;
+    }
+
+    @Override
+    public void start() {
+        if (sender == null) {
+            throw new IllegalStateException("Спулу хитов не задан получатель");
+        }
+        running = true;
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hit-spool-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        shipper = new Thread(this::shipLoop, "hit-spool-shipper");
+        shipper.setDaemon(true);
+        shipper.start();
+    }
+
+    // Отправщик не ждет stats-server дольше SHUTDOWN_WAIT_MS: неотправленные хиты остаются в спуле до запуска
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(shipper);
+        try {
+            shipper.join(SHUTDOWN_WAIT_MS);
+            syncer.shutdown();
+            syncer.awaitTermination(SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (shipper.isAlive()) {
+            log.warn("Отправка хитов из спула не завершилась за {} мс", SHUTDOWN_WAIT_MS);
+        }
+
+        writeLock.lock();
+        try {
+            closed = true;
+            active.force(false);
+            active.close();
+            positionChannel.force(false);
+            positionChannel.close();
+        } catch (IOException e) {
+            log.error("Ошибка закрытия спула хитов: {}", e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Спул хитов закрыт, неотправленных байт {}", pendingBytes.get());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Останавливаемся после веб-сервера, чтобы записать хиты из последних запросов
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    // fsync идет вне блокировки записи, чтобы запросы не ждали диск. Файл, закрытый за это время сменой
+    // активного, уже сброшен при закрытии
+    private void sync() {
+        FileChannel channel = null;
+        writeLock.lock();
+        try {
+            if (dirty && !closed) {
+                channel = active;
+                dirty = false;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            if (channel != null) {
+                channel.force(false);
+            }
+            if (positionDirty) {
+                positionDirty = false;
+                positionChannel.force(false);
+            }
+        } catch (ClosedChannelException e) {
+            log.trace("Файл спула закрыт до сброса на диск");
+        } catch (IOException e) {
+            log.error("Ошибка сброса спула хитов на диск: {}", e.getMessage(), e);
+        }
+
+        long dropped = droppedSinceSync.sumThenReset();
+        if (dropped > 0) {
+            log.warn("Спул хитов заполнен до {} байт, отброшено хитов: {}", maxBytes, dropped);
+        }
+    }
+
+    private void shipLoop() {
+        HitBinaryCodec codec = new HitBinaryCodec();
+        long backoff = retryInitialMs;
+        while (running) {
+            try {
+                Batch batch = readBatch(codec);
+                if (batch == null) {
+                    pause(shipIntervalMs);
+                    continue;
+                }
+                if (!batch.hits().isEmpty() && !send(batch.hits(), backoff)) {
+                    pause(backoff);
+                    backoff = Math.min(backoff * 2, retryMaxMs);
+                    continue;
+                }
+                backoff = retryInitialMs;
+                pendingBytes.addAndGet(-(batch.end() - shipPosition));
+                shipPosition = batch.end();
+                savePosition();
+            } catch (IOException e) {
+                log.error("Ошибка чтения спула хитов: {}", e.getMessage(), e);
+                pause(backoff);
+                backoff = Math.min(backoff * 2, retryMaxMs);
+            }
+        }
+    }
+
+    // Ответ 4xx, кроме 408 и 429, значит, что stats-server отверг сами хиты: повтор не поможет. Хиты отвергнутой
+    // пачки отправляются по одному, и пропускаются только те, которые stats-server отверг
+    private boolean send(List<NewHitRequest> hits, long backoff) {
+        try {
+            sender.accept(hits);
+            shippedCounter.increment(hits.size());
+            return true;
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode().isSameCodeAs(HttpStatus.REQUEST_TIMEOUT)
+                    || e.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+                log.warn("stats-server не принял пачку из {} хитов ({}), повтор через {} мс", hits.size(),
+                        e.getStatusCode(), backoff);
+                return false;
+            }
+            if (hits.size() > 1) {
+                log.warn("stats-server отверг пачку из {} хитов ({}), отправка по одному", hits.size(),
+                        e.getStatusCode());
+                return sendEach(hits, backoff);
+            }
+            rejectedCounter.increment();
+            log.error("stats-server отверг хит, он пропущен: {}", e.getMessage());
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Не удалось отправить пачку из {} хитов, повтор через {} мс: {}", hits.size(), backoff,
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    // Временную ошибку на отдельном хите пережидаем здесь же, иначе при повторе пачки ее уже отправленные хиты
+    // ушли бы снова. Пачка повторяется целиком, только если спул остановлен во время ожидания
+    private boolean sendEach(List<NewHitRequest> hits, long backoff) {
+        for (NewHitRequest hit : hits) {
+            long delay = backoff;
+            while (!send(List.of(hit), delay)) {
+                if (!running) {
+                    return false;
+                }
+                pause(delay);
+                delay = Math.min(delay * 2, retryMaxMs);
+            }
+        }
+        return true;
+    }
+
+    // Следующая пачка с позиции отправки или null, если новых хитов нет. Отправленные целиком файлы, кроме
+    // активного, удаляются. Оборванная или поврежденная запись пропускается вместе с остатком файла
+    private Batch readBatch(HitBinaryCodec codec) throws IOException {
+        long limit;
+        while (true) {
+            limit = committedSize(shipNumber);
+            if (shipPosition < limit) {
+                break;
+            }
+            if (!nextSegment()) {
+                return null;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_CHUNK_SIZE, limit - shipPosition));
+        try (FileChannel channel = FileChannel.open(segmentPath(shipNumber), StandardOpenOption.READ)) {
+            readFully(channel, buffer, shipPosition);
+        }
+        buffer.flip();
+
+        List<NewHitRequest> hits = new ArrayList<>();
+        long end = shipPosition;
+        while (hits.size() < batchSize && buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                return corrupted(hits, end, limit);
+            }
+            if (buffer.remaining() < length) {
+                if (end + RECORD_HEADER_SIZE + length > limit) {
+                    return corrupted(hits, end, limit);
+                }
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 check = new CRC32();
+            check.update(payload);
+            if ((int) check.getValue() != crc) {
+                return corrupted(hits, end, limit);
+            }
+            try {
+                hits.addAll(codec.decode(payload));
+            } catch (IllegalArgumentException e) {
+                return corrupted(hits, end, limit);
+            }
+            end += RECORD_HEADER_SIZE + length;
+        }
+        if (hits.isEmpty() && end + buffer.remaining() == limit) {
+            return corrupted(hits, end, limit);
+        }
+        return new Batch(hits, end);
+    }
+
+    private Batch corrupted(List<NewHitRequest> hits, long end, long limit) {
+        log.warn("Файл спула {} поврежден с позиции {}, пропущено байт: {}", segmentPath(shipNumber), end,
+                limit - end);
+        return new Batch(hits, limit);
+    }
+
+    // Размер записанной части файла: у активного - до последней целиком записанной записи
+    private long committedSize(int number) throws IOException {
+        writeLock.lock();
+        try {
+            if (number == activeNumber) {
+                return activeSize;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            return Files.size(segmentPath(number));
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    // Переход к следующему файлу после отправленного целиком. Возвращает false, если отправляется активный файл
+    private boolean nextSegment() throws IOException {
+        int current;
+        writeLock.lock();
+        try {
+            current = activeNumber;
+        } finally {
+            writeLock.unlock();
+        }
+        if (shipNumber >= current) {
+            return false;
+        }
+        Files.deleteIfExists(segmentPath(shipNumber));
+        shipNumber++;
+        shipPosition = 0;
+        savePosition();
+        return true;
+    }
+
+    private void savePosition() throws IOException {
+        ByteBuffer position = ByteBuffer.allocate(POSITION_SIZE).putInt(shipNumber).putLong(shipPosition).flip();
+        while (position.hasRemaining()) {
+            positionChannel.write(position, position.position());
+        }
+        positionDirty = true;
+    }
+
+    private void pause(long millis) {
+        if (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    private List<Integer> existingSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> SEGMENT_NAME.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Integer.parseInt(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private FileChannel openSegment(int number) throws IOException {
+        return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int number) {
+        return dir.resolve(String.format("hits-%08d.spool", number));
+    }
+
+    // FileChannel может вернуть файл за несколько чтений
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Файл спула короче ожидаемого");
+            }
+        }
+    }
+
+    // Хиты пачки и позиция сразу после ее последней записи
+    private record Batch(List<NewHitRequest> hits, long end) {
+    }
+}
@@ -1,37 +1,156 @@
 package ru.practicum;
 
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+// Клиент сервиса статистики. При заданном stats-server.shards хиты и статистика распределяются между несколькими
+// stats-server по хэшу uri: хиты uri пишутся только на его шард, а запрос статистики делится по шардам и
+// выполняется параллельно. Все хиты одного uri лежат на одном шарде, поэтому и уникальные посещения точны.
+// При stats-server.spool.enabled=true addHit пишет хит в локальный спул, откуда он отправляется в фоне, а при
+// stats-server.batch.enabled=true - в очередь HitBatcher, которая отправляет хиты пачками.
+// addHitAsync и getStatsAsync выполняют те же вызовы в ограниченном пуле stats-server.async.*, не занимая
+// поток запроса
+@Slf4j
 @Component
-public class StatsClient {
+public class StatsClient implements DisposableBean {
 
-    private final RestClient restClient;
+    private static final MediaType HIT_BINARY = MediaType.valueOf(HitBinaryCodec.MEDIA_TYPE_VALUE);
+    // Шаблон uri для /stats (например /events/*) может соответствовать uri с любого шарда
+    private static final char URI_WILDCARD = '*';
+    private static final long ASYNC_KEEP_ALIVE_SECONDS = 60;
+    private static final long ASYNC_SHUTDOWN_WAIT_MS = 5000;
 
-    public StatsClient(@Value("${stats-server.url:http://localhost:9090}") String url) {
-        this.restClient = RestClient.builder()
-                .baseUrl(url)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
+    // Клиенты шардов в порядке stats-server.shards; без шардирования - один клиент stats-server.url
+    private final List<RestClient> shards;
+    private final ObjectReader statsReader = Jackson2ObjectMapperBuilder.json().build().readerFor(ViewStatsDto.class);
+    // Хиты отправляются в двоичном формате HitBinaryCodec вместо JSON
+    private final boolean binaryHits;
+    // Присутствует только при stats-server.spool.enabled=true
+    private final HitSpool spool;
+    // Присутствует только при stats-server.batch.enabled=true и выключенном спуле
+    private final HitBatcher batcher;
+    // Пул асинхронных вызовов: не больше async.threads одновременных запросов, остальные ждут в очереди
+    // на async.queue-capacity задач. Задачи сверх очереди отклоняются, а не выполняются в потоке запроса
+    private final ThreadPoolExecutor asyncExecutor;
+    private final Counter asyncRejectedCounter;
+
+    public StatsClient(@Value("${stats-server.url:http://localhost:9090}") String url,
+                       @Value("${stats-server.hit-format:json}") String hitFormat,
+                       @Value("${stats-server.shards:}") String shards,
+                       ObjectProvider<HitSpool> spool,
+                       ObjectProvider<HitBatcher> batcher,
+                       @Value("${stats-server.async.threads:8}") int asyncThreads,
+                       @Value("${stats-server.async.queue-capacity:1000}") int asyncQueueCapacity,
+                       MeterRegistry meterRegistry) {
+        if (asyncThreads <= 0) {
+            throw new IllegalArgumentException("stats-server.async.threads должен быть больше 0");
+        }
+        if (asyncQueueCapacity <= 0) {
+            throw new IllegalArgumentException("stats-server.async.queue-capacity должен быть больше 0");
+        }
+        List<String> urls = shards.isBlank()
+                ? List.of(url)
+                : Arrays.stream(shards.split(",")).map(String::trim).filter(shard -> !shard.isEmpty()).toList();
+        // Иначе каждый вызов падал бы на выборе шарда из пустого списка
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("stats-server.shards не содержит ни одного адреса: " + shards);
+        }
+        this.shards = urls.stream()
+                .map(shard -> RestClient.builder()
+                        .baseUrl(shard)
+                        .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .build())
+                .toList();
+        this.binaryHits = switch (hitFormat.toLowerCase()) {
+            case "json" -> false;
+            case "binary" -> true;
+            default -> throw new IllegalArgumentException("stats-server.hit-format должен быть json или binary");
+        };
+        this.spool = spool.getIfAvailable();
+        if (this.spool != null) {
+            this.spool.shipTo(this::addHits);
+        }
+        this.batcher = batcher.getIfAvailable();
+        if (this.batcher != null) {
+            this.batcher.sendTo(this::addHits);
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.asyncExecutor = new ThreadPoolExecutor(asyncThreads, asyncThreads,
+                ASYNC_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(asyncQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "stats-client-async-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.asyncExecutor.allowCoreThreadTimeOut(true);
+        // Глубина очереди, занятые потоки и выполненные задачи - метрики executor.* с тегом name=stats-client
+        new ExecutorServiceMetrics(asyncExecutor, "stats-client", Collections.emptyList()).bindTo(meterRegistry);
+        this.asyncRejectedCounter = meterRegistry.counter("stats.client.async.rejected");
     }
 
+    // Со спулом хит только записывается в локальный файл, с очередью пачек - только добавляется в нее,
+    // без обращения к stats-server
     public void addHit(NewHitRequest request) {
+        if (spool != null) {
+            // Заполненный спул отбрасывает хит, а не останавливает запрос: о потере говорят лог и счетчик спула
+            if (!spool.append(request)) {
+                log.warn("Спул хитов заполнен, хит uri={} отброшен", request.getUri());
+            }
+            return;
+        }
+        if (batcher != null) {
+            batcher.add(request);
+            return;
+        }
         try {
-            restClient.post()
-                    .uri("/hit")
-                    .body(request) // Spring сам сериализует в JSON
-                    .retrieve()
-                    .toBodilessEntity();
+            RestClient.RequestBodySpec spec = shards.get(shardOf(request.getUri())).post().uri("/hit");
+            if (binaryHits) {
+                spec.contentType(HIT_BINARY).body(HitBinaryCodec.encode(request));
+            } else {
+                spec.body(request); // Spring сам сериализует в JSON
+            }
+            spec.retrieve().toBodilessEntity();
         } catch (Exception e) {
             // Для отладки: логируем что отправляем
            // log.error("Failed to send hit: {}", request);
@@ -39,8 +158,211 @@ public class StatsClient {
         }
     }
 
+    // Отправка хита без ожидания stats-server: ошибка отправки только пишется в лог, при заполненной очереди хит
+    // отбрасывается. Future завершается после отправки - для вызовов, которые должны увидеть этот хит; со спулом -
+    // после записи в спул, и ошибкой, если спул заполнен
+    public CompletableFuture<Void> addHitAsync(NewHitRequest request) {
+        if (batcher != null) {
+            // Future завершается с отправкой пачки; ошибки отправки пачки HitBatcher пишет в лог сам
+            return batcher.add(request);
+        }
+        CompletableFuture<Void> sent;
+        if (spool != null) {
+            // Запись в спул локальная и не ждет сети, пул для нее не нужен
+            try {
+                sent = spool.append(request)
+                        ? CompletableFuture.completedFuture(null)
+                        : CompletableFuture.failedFuture(new IllegalStateException("Спул хитов заполнен, хит отброшен"));
+            } catch (RuntimeException e) {
+                sent = CompletableFuture.failedFuture(e);
+            }
+        } else {
+            sent = supplyAsync(() -> {
+                addHit(request);
+                return null;
+            });
+        }
+        return sent.whenComplete((ignored, e) -> {
+            if (e != null) {
+                log.warn("Хит uri={} не отправлен в сервис статистики: {}", request.getUri(), e.getMessage());
+            }
+        });
+    }
+
+    // Пакетная отправка хитов одним запросом на каждый шард
+    public void addHits(List<NewHitRequest> requests) {
+        Map<Integer, List<NewHitRequest>> byShard = new LinkedHashMap<>();
+        for (NewHitRequest request : requests) {
+            byShard.computeIfAbsent(shardOf(request.getUri()), shard -> new ArrayList<>()).add(request);
+        }
+        List<Callable<Void>> calls = new ArrayList<>();
+        byShard.forEach((shard, batch) -> calls.add(() -> {
+            RestClient.RequestBodySpec spec = shards.get(shard).post().uri("/hits/batch");
+            if (binaryHits) {
+                spec.contentType(HIT_BINARY).body(HitBinaryCodec.encode(batch));
+            } else {
+                spec.body(batch);
+            }
+            spec.retrieve().toBodilessEntity();
+            return null;
+        }));
+        callShards(calls);
+    }
+
+    // Ответы шардов не пересекаются по uri, поэтому объединяются без суммирования и заново сортируются по убыванию хитов
     public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end,
                                        List<String> uris, Boolean unique) {
+        Map<Integer, List<String>> plan = shardUris(uris);
+        List<Callable<List<ViewStatsDto>>> calls = new ArrayList<>();
+        plan.forEach((shard, shardUris) -> calls.add(() -> shards.get(shard).get()
+                .uri(statsUri(start, end, shardUris, unique))
+                .retrieve()
+                .body(new ParameterizedTypeReference<List<ViewStatsDto>>() {})));
+        List<List<ViewStatsDto>> responses = callShards(calls);
+        if (responses.size() == 1) {
+            return responses.get(0);
+        }
+
+        List<ViewStatsDto> stats = new ArrayList<>();
+        for (List<ViewStatsDto> response : responses) {
+            if (response != null) {
+                stats.addAll(response);
+            }
+        }
+        stats.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return stats;
+    }
+
+    // getStats в пуле асинхронных вызовов. При заполненной очереди future сразу завершается
+    // RejectedExecutionException
+    public CompletableFuture<List<ViewStatsDto>> getStatsAsync(LocalDateTime start, LocalDateTime end,
+                                                               List<String> uris, Boolean unique) {
+        return supplyAsync(() -> getStats(start, end, uris, unique));
+    }
+
+    // Потоковое получение статистики в формате NDJSON: строки передаются consumer по мере чтения ответа,
+    // весь список в памяти не собирается. Подходит для запросов без uris за длинный период
+    // При шардировании шарды читаются по очереди, строки идут без общей сортировки
+    public void streamStats(LocalDateTime start, LocalDateTime end,
+                            List<String> uris, Boolean unique, Consumer<ViewStatsDto> consumer) {
+        shardUris(uris).forEach((shard, shardUris) -> streamStats(shards.get(shard), start, end, shardUris, unique,
+                consumer));
+    }
+
+    private void streamStats(RestClient restClient, LocalDateTime start, LocalDateTime end,
+                             List<String> uris, Boolean unique, Consumer<ViewStatsDto> consumer) {
+        restClient.get()
+                .uri(statsUri(start, end, uris, unique))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isError()) {
+                        throw new RestClientResponseException("Ошибка получения статистики",
+                                response.getStatusCode(), response.getStatusText(), response.getHeaders(),
+                                response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                    try (MappingIterator<ViewStatsDto> stats = statsReader.readValues(response.getBody())) {
+                        while (stats.hasNextValue()) {
+                            consumer.accept(stats.nextValue());
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    // Уже принятые в очередь задачи выполняются, но не дольше ASYNC_SHUTDOWN_WAIT_MS
+    @Override
+    public void destroy() {
+        asyncExecutor.shutdown();
+        try {
+            if (!asyncExecutor.awaitTermination(ASYNC_SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Асинхронные вызовы сервиса статистики не завершились за {} мс, отменено задач: {}",
+                        ASYNC_SHUTDOWN_WAIT_MS, asyncExecutor.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            asyncExecutor.shutdownNow();
+        }
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, asyncExecutor);
+        } catch (RejectedExecutionException e) {
+            asyncRejectedCounter.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Шард, которому принадлежит uri. Хэш String.hashCode определен спецификацией и одинаков во всех JVM,
+    // перемешивание битов (финализатор MurmurHash3) нужно, чтобы похожие uri расходились по шардам равномерно
+    static int shardOf(String uri, int shards) {
+        int hash = uri == null ? 0 : uri.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shards);
+    }
+
+    private int shardOf(String uri) {
+        return shardOf(uri, shards.size());
+    }
+
+    // Какие uri спрашивать у каждого шарда. Без uris или с шаблоном запрос уходит на все шарды (шаблоны - каждому),
+    // иначе только владельцам перечисленных uri
+    private Map<Integer, List<String>> shardUris(List<String> uris) {
+        Map<Integer, List<String>> plan = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty()) {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                plan.put(shard, uris);
+            }
+            return plan;
+        }
+
+        List<String> patterns = uris.stream().filter(uri -> uri.indexOf(URI_WILDCARD) >= 0).toList();
+        if (!patterns.isEmpty()) {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                plan.put(shard, new ArrayList<>(patterns));
+            }
+        }
+        for (String uri : uris) {
+            if (uri.indexOf(URI_WILDCARD) < 0) {
+                plan.computeIfAbsent(shardOf(uri), shard -> new ArrayList<>()).add(uri);
+            }
+        }
+        return plan;
+    }
+
+    // Запросы к шардам выполняются параллельно в виртуальных потоках; единственный запрос - в текущем потоке
+    private <T> List<T> callShards(List<Callable<T>> calls) {
+        try {
+            if (calls.size() == 1) {
+                return Collections.singletonList(calls.get(0).call());
+            }
+            List<T> results = new ArrayList<>(calls.size());
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (Future<T> future : executor.invokeAll(calls)) {
+                    results.add(future.get());
+                }
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка запроса к шарду сервиса статистики", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Запрос к сервису статистики прерван", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Ошибка запроса к сервису статистики", e);
+        }
+    }
+
+    private String statsUri(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
         if (start == null || end == null) {
             throw new IllegalArgumentException("Даты начала и окончания должны быть");
         }
@@ -72,12 +394,7 @@ public class StatsClient {
         }
 
         // 3. Получаем URI с правильным кодированием
-        String uri = uriBuilder.build().toUriString();
-
-        return restClient.get()
-                .uri(uri)
-                .retrieve()
-                .body(new ParameterizedTypeReference<List<ViewStatsDto>>() {});
+        return uriBuilder.build().toUriString();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitBatcherTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2025, 3, 10, 12, 0, 0);
+    // Интервал, который тест не дожидается: пачку отправляет заполнение или остановка
+    private static final long NEVER_MS = 60_000;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<List<NewHitRequest>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void fullBatchIsSentWithoutWaitingForInterval() throws Exception {
+        HitBatcher batcher = batcher(NEVER_MS, 3);
+        List<CompletableFuture<Void>> sent = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sent.add(batcher.add(hit("/events/" + i)));
+        }
+
+        CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        batcher.stop();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(3);
+    }
+
+    @Test
+    void partialBatchIsSentAfterInterval() throws Exception {
+        HitBatcher batcher = batcher(20, 100);
+        NewHitRequest hit = hit("/events/1");
+
+        batcher.add(hit).get(5, TimeUnit.SECONDS);
+        batcher.stop();
+
+        assertThat(batches).containsExactly(List.of(hit));
+    }
+
+    @Test
+    void pendingHitsAreSentOnStop() {
+        HitBatcher batcher = batcher(NEVER_MS, 100);
+        CompletableFuture<Void> first = batcher.add(hit("/events/1"));
+        CompletableFuture<Void> second = batcher.add(hit("/events/2"));
+
+        batcher.stop();
+
+        assertThat(first).isCompleted();
+        assertThat(second).isCompleted();
+        assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(2);
+        assertThat(batcher.add(hit("/events/3"))).isCompletedExceptionally();
+    }
+
+    // Пачка отвергнута из-за одного хита: остальные отправляются по одному, отвергнутый завершается ошибкой
+    @Test
+    void rejectedBatchIsSentOneByOne() {
+        HitBatcher batcher = new HitBatcher(meterRegistry, NEVER_MS, 100, 1000);
+        batcher.sendTo(batch -> {
+            if (batch.stream().anyMatch(hit -> hit.getUri().equals("/bad"))) {
+                throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                        null, null);
+            }
+            batches.add(batch);
+        });
+        batcher.start();
+        CompletableFuture<Void> good = batcher.add(hit("/events/1"));
+        CompletableFuture<Void> bad = batcher.add(hit("/bad"));
+
+        batcher.stop();
+
+        assertThat(good).isCompleted();
+        assertThatThrownBy(bad::get).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(HttpClientErrorException.class);
+        assertThat(batches).containsExactly(List.of(hit("/events/1")));
+        assertThat(meterRegistry.counter("stats.client.batch.dropped").count()).isEqualTo(1);
+    }
+
+    private HitBatcher batcher(long flushIntervalMs, int maxBatchSize) {
+        HitBatcher batcher = new HitBatcher(meterRegistry, flushIntervalMs, maxBatchSize, 1000);
+        batcher.sendTo(batches::add);
+        batcher.start();
+        return batcher;
+    }
+
+    private static NewHitRequest hit(String uri) {
+        return new NewHitRequest("ewm-service", uri, "10.0.0.1", TIMESTAMP);
+    }
+}
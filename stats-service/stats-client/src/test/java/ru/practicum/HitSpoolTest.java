@@ -0,0 +1,227 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HitSpoolTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2025, 3, 10, 12, 0, 0);
+    private static final Path FIRST_SEGMENT = Path.of("hits-00000000.spool");
+
+    @TempDir
+    private Path dir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<NewHitRequest> shipped = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void segmentsRollAndShippedOnesAreDeleted() throws Exception {
+        HitSpool spool = spool(100, 1 << 20);
+        List<NewHitRequest> hits = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            hits.add(hit("/events/" + i));
+            assertThat(spool.append(hits.get(i))).isTrue();
+        }
+        assertThat(segments()).hasSizeGreaterThan(1);
+
+        spool.shipTo(shipped::addAll);
+        spool.start();
+        await(() -> shipped.size() == hits.size());
+        spool.stop();
+
+        assertThat(shipped).containsExactlyElementsOf(hits);
+        assertThat(segments()).hasSize(1);
+    }
+
+    // Позиция отправки переживает перезапуск: отправленные хиты не уходят повторно
+    @Test
+    void shippedPositionSurvivesRestart() throws Exception {
+        HitSpool spool = spool(1 << 20, 1 << 20);
+        spool.shipTo(shipped::addAll);
+        spool.start();
+        NewHitRequest first = hit("/events/1");
+        spool.append(first);
+        await(() -> shipped.size() == 1);
+        spool.stop();
+
+        HitSpool restarted = spool(1 << 20, 1 << 20);
+        restarted.shipTo(shipped::addAll);
+        restarted.start();
+        NewHitRequest second = hit("/events/2");
+        restarted.append(second);
+        await(() -> shipped.size() == 2);
+        restarted.stop();
+
+        assertThat(shipped).containsExactly(first, second);
+    }
+
+    // Последняя запись оборвана падением процесса: хиты до нее отправляются, обрывок пропускается
+    @Test
+    void tornTailIsSkippedAfterRestart() throws Exception {
+        List<NewHitRequest> hits = spoolUnshipped("/events/1", "/events/2", "/events/3");
+        try (FileChannel segment = FileChannel.open(dir.resolve(FIRST_SEGMENT), StandardOpenOption.WRITE)) {
+            segment.truncate(segment.size() - 3);
+        }
+
+        List<NewHitRequest> expected = new ArrayList<>(hits.subList(0, 2));
+        expected.add(restartAndAppend("/events/4"));
+
+        assertThat(shipped).containsExactlyElementsOf(expected);
+    }
+
+    // Запись с неверной CRC пропускается вместе с остатком файла, новые хиты отправляются
+    @Test
+    void corruptedRecordIsSkippedWithRestOfSegment() throws Exception {
+        List<NewHitRequest> hits = spoolUnshipped("/events/1", "/events/2", "/events/3");
+        Path segment = dir.resolve(FIRST_SEGMENT);
+        long recordSize = Files.size(segment) / hits.size();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, recordSize + 10);
+            one.put(0, (byte) ~one.get(0)).rewind();
+            channel.write(one, recordSize + 10);
+        }
+
+        NewHitRequest fresh = restartAndAppend("/events/4");
+
+        assertThat(shipped).containsExactly(hits.get(0), fresh);
+    }
+
+    // stats-server отверг пачку из-за одного хита: остальные отправляются по одному, отвергнутый пропускается
+    @Test
+    void rejectedHitIsSkippedAndOthersAreShipped() throws Exception {
+        HitSpool spool = spool(1 << 20, 1 << 20);
+        NewHitRequest first = hit("/events/1");
+        NewHitRequest last = hit("/events/3");
+        spool.append(first);
+        spool.append(hit("/bad"));
+        spool.append(last);
+        spool.shipTo(batch -> {
+            if (batch.stream().anyMatch(hit -> hit.getUri().equals("/bad"))) {
+                throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                        null, null);
+            }
+            shipped.addAll(batch);
+        });
+        spool.start();
+        await(() -> shipped.size() == 2);
+        spool.stop();
+
+        assertThat(shipped).containsExactly(first, last);
+        assertThat(meterRegistry.counter("stats.client.spool.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void unavailableServerIsRetried() throws Exception {
+        AtomicInteger failures = new AtomicInteger(2);
+        HitSpool spool = spool(1 << 20, 1 << 20);
+        spool.shipTo(batch -> {
+            if (failures.getAndDecrement() > 0) {
+                throw HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable",
+                        HttpHeaders.EMPTY, null, null);
+            }
+            shipped.addAll(batch);
+        });
+        spool.start();
+        NewHitRequest hit = hit("/events/1");
+        spool.append(hit);
+        await(() -> !shipped.isEmpty());
+        spool.stop();
+
+        assertThat(shipped).containsExactly(hit);
+        assertThat(meterRegistry.counter("stats.client.spool.rejected").count()).isZero();
+    }
+
+    @Test
+    void fullSpoolDropsHit() throws Exception {
+        long recordSize = HitBinaryCodec.encode(hit("/events/1")).length + 8;
+        HitSpool spool = spool(2 * recordSize, 2 * recordSize);
+        spool.shipTo(unavailable());
+        spool.start();
+
+        assertThat(spool.append(hit("/events/1"))).isTrue();
+        assertThat(spool.append(hit("/events/2"))).isTrue();
+        assertThat(spool.append(hit("/events/3"))).isFalse();
+        spool.stop();
+
+        assertThat(meterRegistry.counter("stats.client.spool.dropped").count()).isEqualTo(1);
+    }
+
+    // Хиты записываются в спул, пока stats-server недоступен, и спул останавливается, не отправив их
+    private List<NewHitRequest> spoolUnshipped(String... uris) {
+        HitSpool spool = spool(1 << 20, 1 << 20);
+        spool.shipTo(unavailable());
+        spool.start();
+        List<NewHitRequest> hits = new ArrayList<>();
+        for (String uri : uris) {
+            NewHitRequest hit = hit(uri);
+            assertThat(spool.append(hit)).isTrue();
+            hits.add(hit);
+        }
+        spool.stop();
+        return hits;
+    }
+
+    // Новый запуск спула в том же каталоге; возвращает хит, дописанный после запуска
+    private NewHitRequest restartAndAppend(String uri) throws Exception {
+        HitSpool spool = spool(1 << 20, 1 << 20);
+        spool.shipTo(shipped::addAll);
+        spool.start();
+        NewHitRequest hit = hit(uri);
+        spool.append(hit);
+        await(() -> shipped.contains(hit));
+        spool.stop();
+        return hit;
+    }
+
+    private HitSpool spool(long segmentBytes, long maxBytes) {
+        return new HitSpool(meterRegistry, dir.toString(), segmentBytes, maxBytes, 500, 10, 50, 10, 50);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".spool")).toList();
+        }
+    }
+
+    private static Consumer<List<NewHitRequest>> unavailable() {
+        return batch -> {
+            throw new IllegalStateException("stats-server недоступен");
+        };
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("ожидание отправки хитов").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static NewHitRequest hit(String uri) {
+        return new NewHitRequest("ewm-service", uri, "10.0.0.1", TIMESTAMP);
+    }
+}
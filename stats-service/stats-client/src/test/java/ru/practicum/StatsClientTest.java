@@ -0,0 +1,187 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StatsClientTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2025, 3, 10, 12, 0, 0);
+    private static final ObjectMapper MAPPER = Jackson2ObjectMapperBuilder.json().build();
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final List<StatsClient> clients = new ArrayList<>();
+
+    @AfterEach
+    void stopShards() {
+        clients.forEach(StatsClient::destroy);
+        shards.forEach(shard -> shard.server().stop(0));
+    }
+
+    // Хит и пачка хитов попадают только на шард своего uri
+    @Test
+    void hitsAreRoutedToShardOfUri() {
+        Shard first = shard(List.of());
+        Shard second = shard(List.of());
+        StatsClient client = client(first, second);
+
+        List<NewHitRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            client.addHit(hit("/events/" + i));
+            batch.add(hit("/compilations/" + i));
+        }
+        client.addHits(batch);
+
+        assertThat(first.uris()).isNotEmpty();
+        assertThat(second.uris()).isNotEmpty();
+        assertThat(first.uris()).allSatisfy(uri -> assertThat(StatsClient.shardOf(uri, 2)).isZero());
+        assertThat(second.uris()).allSatisfy(uri -> assertThat(StatsClient.shardOf(uri, 2)).isEqualTo(1));
+        assertThat(first.uris().size() + second.uris().size()).isEqualTo(40);
+    }
+
+    // Без uris статистика собирается со всех шардов и сортируется по убыванию хитов
+    @Test
+    void statsOfAllShardsAreMerged() {
+        Shard first = shard(List.of(stats("/events/1", 5), stats("/events/3", 1)));
+        Shard second = shard(List.of(stats("/events/2", 3)));
+        StatsClient client = client(first, second);
+
+        List<ViewStatsDto> stats = client.getStats(TIMESTAMP.minusDays(1), TIMESTAMP, null, false);
+
+        assertThat(stats).extracting(ViewStatsDto::getUri).containsExactly("/events/1", "/events/2", "/events/3");
+    }
+
+    // Перечисленные uri спрашиваются только у их шардов, шаблон - у всех
+    @Test
+    void statsForUrisAskOnlyTheirShards() {
+        Shard first = shard(List.of());
+        Shard second = shard(List.of());
+        StatsClient client = client(first, second);
+        String uri = "/events/1";
+        Shard owner = StatsClient.shardOf(uri, 2) == 0 ? first : second;
+        Shard other = owner == first ? second : first;
+
+        client.getStats(TIMESTAMP.minusDays(1), TIMESTAMP, List.of(uri), false);
+        assertThat(owner.statsUris()).containsExactly(List.of(uri));
+        assertThat(other.statsUris()).isEmpty();
+
+        client.getStats(TIMESTAMP.minusDays(1), TIMESTAMP, List.of("/events/*"), false);
+        assertThat(first.statsUris()).endsWith(List.of("/events/*"));
+        assertThat(second.statsUris()).endsWith(List.of("/events/*"));
+    }
+
+    @Test
+    void shardListWithoutAddressesIsRejected() {
+        assertThatThrownBy(() -> new StatsClient("http://localhost:9090", "json", " , ", absent(), absent(), 1, 1,
+                new SimpleMeterRegistry()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("stats-server.shards");
+    }
+
+    // Хит, не поместившийся в спул, не должен выглядеть записанным
+    @Test
+    void hitDroppedByFullSpoolFailsAsyncCall() {
+        HitSpool spool = mock(HitSpool.class);
+        when(spool.append(any())).thenReturn(false);
+        ObjectProvider<HitSpool> spoolProvider = provider(spool);
+        StatsClient client = new StatsClient("http://localhost:9090", "json", "", spoolProvider, absent(), 1, 1,
+                new SimpleMeterRegistry());
+        clients.add(client);
+
+        CompletableFuture<Void> sent = client.addHitAsync(hit("/events/1"));
+
+        assertThat(sent).isCompletedExceptionally();
+    }
+
+    private StatsClient client(Shard... shards) {
+        List<String> urls = new ArrayList<>();
+        for (Shard shard : shards) {
+            urls.add("http://localhost:" + shard.server().getAddress().getPort());
+        }
+        StatsClient client = new StatsClient("http://localhost:9090", "json", String.join(",", urls), absent(),
+                absent(), 2, 10, new SimpleMeterRegistry());
+        clients.add(client);
+        return client;
+    }
+
+    // Заглушка stats-server: запоминает uri принятых хитов и uris запросов /stats, на /stats отвечает stats
+    private Shard shard(List<ViewStatsDto> stats) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            Shard shard = new Shard(server, Collections.synchronizedList(new ArrayList<>()),
+                    Collections.synchronizedList(new ArrayList<>()));
+            server.createContext("/hit", exchange -> {
+                shard.uris().add(MAPPER.readValue(exchange.getRequestBody(), NewHitRequest.class).getUri());
+                respond(exchange, 201, "");
+            });
+            server.createContext("/hits/batch", exchange -> {
+                MAPPER.readValue(exchange.getRequestBody(), new TypeReference<List<NewHitRequest>>() {
+                }).forEach(hit -> shard.uris().add(hit.getUri()));
+                respond(exchange, 201, "");
+            });
+            server.createContext("/stats", exchange -> {
+                List<String> uris = UriComponentsBuilder.fromUri(exchange.getRequestURI()).build()
+                        .getQueryParams().get("uris");
+                shard.statsUris().add(uris == null ? List.of() : uris);
+                respond(exchange, 200, MAPPER.writeValueAsString(stats));
+            });
+            server.start();
+            shards.add(shard);
+            return shard;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(bean);
+        return provider;
+    }
+
+    private static <T> ObjectProvider<T> absent() {
+        return provider(null);
+    }
+
+    private static NewHitRequest hit(String uri) {
+        return new NewHitRequest("ewm-service", uri, "10.0.0.1", TIMESTAMP);
+    }
+
+    private static ViewStatsDto stats(String uri, long hits) {
+        return ViewStatsDto.builder().app("ewm-service").uri(uri).hits(hits).build();
+    }
+
+    private record Shard(HttpServer server, List<String> uris, List<List<String>> statsUris) {
+    }
+}
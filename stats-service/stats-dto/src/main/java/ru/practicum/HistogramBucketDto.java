@@ -0,0 +1,21 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Интервал гистограммы: начало интервала и число хитов (или уникальных ip) в нем
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistogramBucketDto {
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime start;
+    private Long hits;
+
+}
@@ -0,0 +1,20 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Ряд /stats/histogram для одного app+uri: непустые интервалы в порядке времени
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistogramDto {
+    private String app;
+    private String uri;
+    private List<HistogramBucketDto> buckets;
+
+}
@@ -0,0 +1,158 @@
+package ru.practicum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Двоичный формат хитов для POST /hit и /hits/batch (Content-Type application/x-ewm-hits).
+// Тело: байт версии, затем записи до конца тела. Запись: app, uri и ip - длина в 2 байтах (0xFFFF - null)
+// и байты UTF-8, затем timestamp - 8 байт миллисекунд от эпохи (время без часового пояса считается UTC, как в JSON).
+// Числа записываются в порядке big-endian
+public final class HitBinaryCodec {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-ewm-hits";
+
+    private static final int VERSION = 1;
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    private static final int TIMESTAMP_SIZE = 8;
+    private static final int INTERNED_SLOTS = 4096;
+
+    // Строки app и uri повторяются от хита к хиту, поэтому декодер берет их из небольшого кэша по хэшу байтов.
+    // Кэш используется из разных потоков без блокировок: String неизменяем, гонка приводит лишь к промаху
+    private final String[] interned = new String[INTERNED_SLOTS];
+
+    public static byte[] encode(NewHitRequest hit) {
+        return encode(List.of(hit));
+    }
+
+    public static byte[] encode(List<NewHitRequest> hits) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 + hits.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            for (NewHitRequest hit : hits) {
+                writeText(out, hit.getApp());
+                writeText(out, hit.getUri());
+                writeText(out, hit.getIp());
+                out.writeLong(hit.getTimestamp() == null
+                        ? NULL_TIMESTAMP
+                        : hit.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Бросает IllegalArgumentException, если тело не соответствует формату
+    public List<NewHitRequest> decode(byte[] body) {
+        if (body.length == 0 || body[0] != VERSION) {
+            throw new IllegalArgumentException("Неизвестная версия двоичного формата хитов");
+        }
+
+        List<NewHitRequest> hits = new ArrayList<>();
+        Cursor cursor = new Cursor(body);
+        while (cursor.position < body.length) {
+            NewHitRequest hit = new NewHitRequest();
+            hit.setApp(cursor.readText(true));
+            hit.setUri(cursor.readText(true));
+            hit.setIp(cursor.readText(false));
+            long millis = cursor.readLong();
+            if (millis != NULL_TIMESTAMP) {
+                hit.setTimestamp(LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                        (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC));
+            }
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_LENGTH) {
+            throw new IllegalArgumentException("Поле хита длиннее " + (NULL_LENGTH - 1) + " байт");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private String interned(byte[] body, int offset, int length) {
+        int hash = length;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + body[i];
+        }
+        int slot = (hash ^ hash >>> 16) & (INTERNED_SLOTS - 1);
+        String cached = interned[slot];
+        if (cached != null && sameAscii(cached, body, offset, length)) {
+            return cached;
+        }
+        String value = new String(body, offset, length, StandardCharsets.UTF_8);
+        interned[slot] = value;
+        return value;
+    }
+
+    // Сравнение без декодирования; строки не из ASCII не совпадают и просто не берутся из кэша
+    private static boolean sameAscii(String value, byte[] body, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = body[offset + i];
+            if (b < 0 || value.charAt(i) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class Cursor {
+
+        private final byte[] body;
+        private int position = 1;
+
+        private Cursor(byte[] body) {
+            this.body = body;
+        }
+
+        private String readText(boolean intern) {
+            require(2);
+            int length = (body[position] & 0xFF) << 8 | body[position + 1] & 0xFF;
+            position += 2;
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            require(length);
+            String value = intern
+                    ? interned(body, position, length)
+                    : new String(body, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private long readLong() {
+            require(TIMESTAMP_SIZE);
+            long value = 0;
+            for (int i = 0; i < TIMESTAMP_SIZE; i++) {
+                value = value << 8 | body[position++] & 0xFF;
+            }
+            return value;
+        }
+
+        private void require(int bytes) {
+            if (position + bytes > body.length) {
+                throw new IllegalArgumentException("Запись хита в двоичном формате обрывается на байте " + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Итог загрузки хитов: число загруженных хитов и самая ранняя и поздняя метки времени среди них
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HitImportDto {
+    private Long imported;
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime from;
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime to;
+
+}
@@ -0,0 +1,20 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Строка ответа /stats/live: число хитов uri за последнюю минуту, пять минут и час
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LiveHitsDto {
+    private String app;
+    private String uri;
+    private Long minute;
+    private Long fiveMinutes;
+    private Long hour;
+
+}
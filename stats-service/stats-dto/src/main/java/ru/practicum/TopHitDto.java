@@ -0,0 +1,21 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Оценка числа хитов uri в окне /stats/top: истинное значение лежит в [hits - error, hits].
+// guaranteed - uri гарантированно входит в top-n независимо от погрешности
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopHitDto {
+    private String app;
+    private String uri;
+    private Long hits;
+    private Long error;
+    private Boolean guaranteed;
+
+}
@@ -0,0 +1,21 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Ответ /stats/top: total - число всех хитов в окне, otherMax - больше этого не мог набрать ни один uri вне списка
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopHitsDto {
+    private String window;
+    private Long total;
+    private Long otherMax;
+    private List<TopHitDto> top;
+
+}
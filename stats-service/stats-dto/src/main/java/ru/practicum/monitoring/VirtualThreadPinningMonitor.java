@@ -0,0 +1,104 @@
+package ru.practicum.monitoring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Обнаружение pinning виртуальных потоков (spring.threads.virtual.enabled=true): поток, который блокируется внутри
+// synchronized или нативного вызова, не отпускает поток-носитель. События JFR jdk.VirtualThreadPinned читаются
+// в самом процессе. Место pinning - первый кадр стека из ru.practicum, а если его нет, первый кадр библиотеки вне
+// JDK. Каждое новое место пишется в лог со стеком один раз, все события попадают в таймер jvm.threads.virtual.pinned
+// с тегом site
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor implements DisposableBean {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String OWN_PACKAGE = "ru.practicum.";
+    private static final int LOGGED_FRAMES = 16;
+
+    private final MeterRegistry meterRegistry;
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+    private final RecordingStream recording;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                       @Value("${virtual-threads.pinning.threshold-ms:20}") long thresholdMs) {
+        this.meterRegistry = meterRegistry;
+        this.recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        log.info("Отслеживается pinning виртуальных потоков дольше {} мс", thresholdMs);
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames = event.getStackTrace() == null
+                ? List.of()
+                : event.getStackTrace().getFrames();
+        String site = site(frames);
+        Timer.builder("jvm.threads.virtual.pinned")
+                .description("Время, на которое виртуальный поток занял поток-носитель, заблокировавшись")
+                .tag("site", site)
+                .register(meterRegistry)
+                .record(event.getDuration());
+        if (reportedSites.add(site)) {
+            log.warn("Виртуальный поток заблокировался на {} мс, не отпустив поток-носитель, в {}:\n{}",
+                    event.getDuration().toMillis(), site, format(event.getStackTrace()));
+        } else {
+            log.debug("Pinning виртуального потока на {} мс в {}", event.getDuration().toMillis(), site);
+        }
+    }
+
+    private static String site(List<RecordedFrame> frames) {
+        RecordedFrame library = null;
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith(OWN_PACKAGE)) {
+                return frame(frame);
+            }
+            if (library == null && !type.startsWith("java.") && !type.startsWith("jdk.")) {
+                library = frame;
+            }
+        }
+        if (library != null) {
+            return frame(library);
+        }
+        return frames.isEmpty() ? "unknown" : frame(frames.get(0));
+    }
+
+    private static String format(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "\tстек недоступен";
+        }
+        String frames = stackTrace.getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(frame -> "\tat " + frame(frame))
+                .collect(Collectors.joining("\n"));
+        return stackTrace.getFrames().size() > LOGGED_FRAMES || stackTrace.isTruncated() ? frames + "\n\t..." : frames;
+    }
+
+    private static String frame(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+
+    @Override
+    public void destroy() {
+        recording.close();
+    }
+}
@@ -14,7 +14,8 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 public class ValidationErrorHandler {
 
     @ExceptionHandler({ValidationException.class, MethodArgumentNotValidException.class, ConstraintViolationException.class,
-            HttpMessageNotReadableException.class, MissingRequestHeaderException.class, IllegalArgumentException.class})
+            HttpMessageNotReadableException.class, MissingRequestHeaderException.class, IllegalArgumentException.class,
+            jakarta.validation.ConstraintViolationException.class})
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponse handleValidation(final Exception e) {
          log.debug("Ошибка валидации. {}", e.getMessage());
@@ -31,6 +32,9 @@ public class ValidationErrorHandler {
         } else if (e.getClass() == ConstraintViolationException.class) {
             log.debug("Ошибка, некорректное значение. {}", e.getMessage());
             return new ErrorResponse("Некорректное значение", "Ошибка валидации");
+        } else if (e.getClass() == jakarta.validation.ConstraintViolationException.class) {
+            log.debug("Ошибка валидации элементов пакета. {}", e.getMessage());
+            return new ErrorResponse("Некорректное значение", e.getMessage());
         } else if (e.getClass() == IllegalArgumentException.class) {
             log.debug("Ошибка, некорректное значение даты. {}", e.getMessage());
             return new ErrorResponse("Некорректное значение даты начало или конца", "Ошибка валидации");
@@ -0,0 +1,348 @@
+package ru.practicum.hits.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.ingest.HitStoredListener;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.sketch.UniqueIpSet;
+import ru.practicum.hits.store.HitStore;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Кэш ответов /stats (stats.cache.enabled=true). Хиты старше границы закрытия (текущее время минус seal-delay,
+// округленное вниз до seal-step) считаются окончательными, поэтому ответ за закрытую часть диапазона хранится
+// бессрочно, а открытый край "сейчас" досчитывается хранилищем при каждом запросе.
+// Для запросов, захватывающих "сейчас", закрытая часть хранится в объединяемом виде (число хитов или множества ip)
+// и с движением границы только дополняется. Поздний хит с timestamp в закрытой части удаляет пересекающиеся записи.
+// Ответ, не умещающийся в кэш целиком (обычно множества ip для unique=true), заменяется меткой: следующие запросы
+// с тем же ключом сразу идут в хранилище за числами и не строят множества, которые все равно не будут сохранены
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.cache.enabled", havingValue = "true")
+public class StatsQueryCache implements HitStoredListener {
+
+    // Метки времени хранятся с точностью до микросекунды: [from, to) == [from, to - 1 мкс]
+    private static final long MICROSECOND = 1_000;
+
+    private final HitStore hitStore;
+    private final long sealDelaySeconds;
+    private final long sealStepSeconds;
+    private final long maxBytes;
+    // Порядок доступа: первой вытесняется давно не запрошенная запись
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    // Растет при каждой инвалидации: результат, посчитанный до нее, в кэш уже не кладется
+    private long generation;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter bypassCounter;
+    private final Counter evictionCounter;
+    private final Counter oversizeCounter;
+    private final Counter invalidationCounter;
+
+    public StatsQueryCache(HitStore hitStore,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.cache.seal-delay-seconds:60}") long sealDelaySeconds,
+                           @Value("${stats.cache.seal-step-seconds:60}") long sealStepSeconds,
+                           @Value("${stats.cache.max-size-mb:64}") long maxSizeMb) {
+        if (sealStepSeconds <= 0) {
+            throw new IllegalArgumentException("stats.cache.seal-step-seconds должен быть больше 0");
+        }
+        this.hitStore = hitStore;
+        this.sealDelaySeconds = sealDelaySeconds;
+        this.sealStepSeconds = sealStepSeconds;
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+
+        Gauge.builder("stats.cache.entries", this, cache -> cache.size())
+                .description("Количество закэшированных ответов /stats")
+                .register(meterRegistry);
+        Gauge.builder("stats.cache.size", this, cache -> cache.bytes())
+                .description("Примерный объем кэша /stats в байтах")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.hitCounter = meterRegistry.counter("stats.cache.hits");
+        this.missCounter = meterRegistry.counter("stats.cache.misses");
+        this.bypassCounter = meterRegistry.counter("stats.cache.bypassed");
+        this.evictionCounter = meterRegistry.counter("stats.cache.evictions");
+        this.oversizeCounter = meterRegistry.counter("stats.cache.oversize");
+        this.invalidationCounter = meterRegistry.counter("stats.cache.invalidations");
+    }
+
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
+        LocalDateTime sealed = sealBoundary();
+        List<String> uriKey = uris == null || uris.isEmpty() ? null : uris.stream().distinct().sorted().toList();
+
+        if (end.isBefore(sealed)) {
+            return getSealedStats(new Key(start, end, uriKey, unique), uris);
+        }
+        if (!start.isBefore(sealed) || unique == UniqueMode.APPROX) {
+            // Диапазон целиком открыт, либо оценки HyperLogLog нельзя дополнять с точностью ответа по скетчам
+            bypassCounter.increment();
+            return hitStore.getStats(start, end, uris, unique);
+        }
+        return getGrowingStats(new Key(start, null, uriKey, unique), sealed, end, uris);
+    }
+
+    // Диапазон целиком закрыт: ответ кэшируется как есть
+    private List<ViewStatsDto> getSealedStats(Key key, List<String> uris) {
+        Entry entry = get(key);
+        if (entry != null && entry.oversize()) {
+            bypassCounter.increment();
+            return hitStore.getStats(key.start(), key.end(), uris, key.unique());
+        }
+        if (entry != null) {
+            hitCounter.increment();
+            return entry.stats();
+        }
+        missCounter.increment();
+        long startGeneration = generation();
+        List<ViewStatsDto> stats = List.copyOf(hitStore.getStats(key.start(), key.end(), uris, key.unique()));
+        put(key, Entry.sealed(key.end(), stats), startGeneration);
+        return stats;
+    }
+
+    // Диапазон захватывает "сейчас": закрытая часть берется из кэша и дополняется до текущей границы,
+    // открытый край [sealed, end] считается заново и в кэш не попадает
+    private List<ViewStatsDto> getGrowingStats(Key key, LocalDateTime sealed, LocalDateTime end, List<String> uris) {
+        long startGeneration = generation();
+        Entry entry = get(key);
+        Partial partial;
+        if (entry == null) {
+            missCounter.increment();
+            partial = load(key.start(), sealed, uris, key.unique());
+            put(key, Entry.growing(sealed, partial), startGeneration);
+        } else if (entry.oversize() || entry.sealedTo().isAfter(sealed)) {
+            // Закрытая часть не умещается в кэш, либо часы сервера ушли назад
+            // и закрытая часть записи длиннее запрошенного диапазона
+            bypassCounter.increment();
+            return hitStore.getStats(key.start(), end, uris, key.unique());
+        } else {
+            hitCounter.increment();
+            partial = entry.partial();
+            if (entry.sealedTo().isBefore(sealed)) {
+                partial = partial.plus(load(entry.sealedTo(), sealed, uris, key.unique()));
+                put(key, Entry.growing(sealed, partial), startGeneration);
+            }
+        }
+        return partial.toStats(load(sealed, end.plusNanos(MICROSECOND), uris, key.unique()));
+    }
+
+    // Объединяемая статистика за [from, to)
+    private Partial load(LocalDateTime from, LocalDateTime to, List<String> uris, UniqueMode unique) {
+        LocalDateTime last = to.minusNanos(MICROSECOND);
+        if (unique == UniqueMode.NONE) {
+            Map<AppUri, Long> counts = new HashMap<>();
+            for (ViewStatsDto stat : hitStore.getStats(from, last, uris, unique)) {
+                counts.put(new AppUri(stat.getApp(), stat.getUri()), stat.getHits());
+            }
+            return new HitCounts(counts);
+        }
+        return new IpSets(hitStore.getUniqueIps(from, last, uris));
+    }
+
+    // Граница закрытия: хиты раньше нее кэшируются, хиты с этого момента досчитываются при каждом запросе
+    private LocalDateTime sealBoundary() {
+        long seconds = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - sealDelaySeconds;
+        return LocalDateTime.ofEpochSecond(seconds - Math.floorMod(seconds, sealStepSeconds), 0, ZoneOffset.UTC);
+    }
+
+    // Хиты открытой части кэш не затрагивают, поздние хиты удаляют записи, чья закрытая часть их покрывает
+    @Override
+    public void onHitsStored(List<Hit> hits) {
+        LocalDateTime sealed = sealBoundary();
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        for (Hit hit : hits) {
+            LocalDateTime timestamp = hit.getTimestamp();
+            if (timestamp.isBefore(sealed)) {
+                from = from == null || timestamp.isBefore(from) ? timestamp : from;
+                to = to == null || timestamp.isAfter(to) ? timestamp : to;
+            }
+        }
+        if (from != null) {
+            log.debug("Записаны хиты в закрытую часть с {} по {}, кэш статистики обновляется", from, to);
+            invalidate(from, to);
+        }
+    }
+
+    // Удаляет записи, пересекающиеся с [from, to]
+    public synchronized void invalidate(LocalDateTime from, LocalDateTime to) {
+        generation++;
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> cached = iterator.next();
+            Entry entry = cached.getValue();
+            if (!cached.getKey().start().isAfter(to) && entry.covers(from)) {
+                iterator.remove();
+                bytes -= entry.weight();
+                removed++;
+            }
+        }
+        invalidationCounter.increment(removed);
+    }
+
+    private synchronized Entry get(Key key) {
+        return entries.get(key);
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    // Слишком большая запись заменяется меткой, которую вытесняют и инвалидируют наравне с остальными
+    private synchronized void put(Key key, Entry entry, long startGeneration) {
+        if (generation != startGeneration) {
+            return;
+        }
+        if (entry.weight() > maxBytes) {
+            log.debug("Ответ /stats весом {} байт не помещается в кэш", entry.weight());
+            oversizeCounter.increment();
+            entry = Entry.OVERSIZE;
+        }
+        Entry previous = entries.put(key, entry);
+        bytes += entry.weight() - (previous == null ? 0 : previous.weight());
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().weight();
+            eldest.remove();
+            evictionCounter.increment();
+        }
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized long bytes() {
+        return bytes;
+    }
+
+    private static long rowWeight(String app, String uri) {
+        return 64 + 2L * (app.length() + uri.length());
+    }
+
+    private static List<ViewStatsDto> sortByHits(Map<AppUri, Long> counts) {
+        return counts.entrySet().stream()
+                .map(count -> ViewStatsDto.builder()
+                        .app(count.getKey().app())
+                        .uri(count.getKey().uri())
+                        .hits(count.getValue())
+                        .build())
+                .sorted(Comparator.comparing(ViewStatsDto::getHits).reversed())
+                .toList();
+    }
+
+    // end == null - запрос, захватывающий "сейчас"; uris отсортированы, null - без фильтра
+    private record Key(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
+    }
+
+    // Закрытый ответ за [start ключа, sealedTo] (stats), объединяемая закрытая часть за [start ключа, sealedTo)
+    // или метка OVERSIZE без данных
+    private record Entry(LocalDateTime sealedTo, List<ViewStatsDto> stats, Partial partial, long weight) {
+
+        static final Entry OVERSIZE = new Entry(null, null, null, 128);
+
+        static Entry sealed(LocalDateTime end, List<ViewStatsDto> stats) {
+            return new Entry(end, stats, null,
+                    128 + stats.stream().mapToLong(stat -> rowWeight(stat.getApp(), stat.getUri())).sum());
+        }
+
+        static Entry growing(LocalDateTime sealedTo, Partial partial) {
+            return new Entry(sealedTo, null, partial, 128 + partial.weight());
+        }
+
+        boolean oversize() {
+            return this == OVERSIZE;
+        }
+
+        // Метка удаляется любой инвалидацией ключа: после удаления хитов ответ может снова уместиться
+        boolean covers(LocalDateTime time) {
+            if (oversize()) {
+                return true;
+            }
+            return stats != null ? !time.isAfter(sealedTo) : time.isBefore(sealedTo);
+        }
+    }
+
+    // Статистика в объединяемом виде. Закэшированные экземпляры не изменяются: plus возвращает новый
+    private interface Partial {
+
+        Partial plus(Partial next);
+
+        // Итоговый ответ вместе с открытым краем open
+        List<ViewStatsDto> toStats(Partial open);
+
+        long weight();
+    }
+
+    private record HitCounts(Map<AppUri, Long> counts) implements Partial {
+
+        @Override
+        public Partial plus(Partial next) {
+            Map<AppUri, Long> sum = new HashMap<>(counts);
+            ((HitCounts) next).counts().forEach((key, hits) -> sum.merge(key, hits, Long::sum));
+            return new HitCounts(sum);
+        }
+
+        @Override
+        public List<ViewStatsDto> toStats(Partial open) {
+            return sortByHits(((HitCounts) plus(open)).counts());
+        }
+
+        @Override
+        public long weight() {
+            return counts.keySet().stream().mapToLong(key -> rowWeight(key.app(), key.uri())).sum();
+        }
+    }
+
+    private record IpSets(Map<AppUri, UniqueIpSet> sets) implements Partial {
+
+        @Override
+        public Partial plus(Partial next) {
+            Map<AppUri, UniqueIpSet> union = new HashMap<>(sets);
+            ((IpSets) next).sets().forEach((key, ips) -> union.merge(key, ips, (cached, added) -> {
+                UniqueIpSet merged = new UniqueIpSet();
+                merged.merge(cached);
+                merged.merge(added);
+                return merged;
+            }));
+            return new IpSets(union);
+        }
+
+        @Override
+        public List<ViewStatsDto> toStats(Partial open) {
+            Map<AppUri, UniqueIpSet> openSets = ((IpSets) open).sets();
+            Map<AppUri, Long> counts = new HashMap<>();
+            sets.forEach((key, ips) -> {
+                UniqueIpSet added = openSets.get(key);
+                counts.put(key, added == null ? ips.cardinality() : ips.unionCardinality(added));
+            });
+            openSets.forEach((key, ips) -> counts.putIfAbsent(key, ips.cardinality()));
+            return sortByHits(counts);
+        }
+
+        @Override
+        public long weight() {
+            return sets.entrySet().stream()
+                    .mapToLong(set -> rowWeight(set.getKey().app(), set.getKey().uri()) + set.getValue().sizeInBytes())
+                    .sum();
+        }
+    }
+}
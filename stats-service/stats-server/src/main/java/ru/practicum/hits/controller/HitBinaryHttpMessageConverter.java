@@ -0,0 +1,128 @@
+package ru.practicum.hits.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.practicum.HitBinaryCodec;
+import ru.practicum.NewHitRequest;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+// Чтение тел POST /hit и /hits/batch в двоичном формате HitBinaryCodec. Spring Boot добавляет бин-конвертер
+// к стандартным, выбор идет по Content-Type, так что JSON остается форматом по умолчанию.
+// Валидация @RequestBody выполняется после чтения так же, как для JSON. Конвертер только читает: canWrite всегда
+// false, поэтому Spring не выбирает его для ответов и методы записи не вызываются
+@Component
+public class HitBinaryHttpMessageConverter implements GenericHttpMessageConverter<Object> {
+
+    private static final MediaType MEDIA_TYPE = MediaType.valueOf(HitBinaryCodec.MEDIA_TYPE_VALUE);
+
+    private final HitBinaryCodec codec = new HitBinaryCodec();
+    private final int maxBodyBytes;
+
+    public HitBinaryHttpMessageConverter(@Value("${stats.hits.binary.max-size-mb:8}") int maxSizeMb) {
+        if (maxSizeMb <= 0 || maxSizeMb > Integer.MAX_VALUE / (1024 * 1024)) {
+            throw new IllegalArgumentException("stats.hits.binary.max-size-mb должен быть от 1 до 2047");
+        }
+        this.maxBodyBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return List.of(MEDIA_TYPE);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, @Nullable MediaType mediaType) {
+        return canRead(clazz, null, mediaType);
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return (type == NewHitRequest.class || isHitList(type))
+                && (mediaType == null || MEDIA_TYPE.includes(mediaType));
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public Object read(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException {
+        List<NewHitRequest> hits = decode(inputMessage);
+        if (isHitList(type)) {
+            return hits;
+        }
+        if (hits.size() != 1) {
+            throw new HttpMessageNotReadableException("Ожидался один хит, получено " + hits.size(), inputMessage);
+        }
+        return hits.get(0);
+    }
+
+    @Override
+    public void write(Object value, @Nullable MediaType contentType, HttpOutputMessage outputMessage) {
+        throw notWritable();
+    }
+
+    @Override
+    public void write(Object value, @Nullable Type type, @Nullable MediaType contentType,
+                      HttpOutputMessage outputMessage) {
+        throw notWritable();
+    }
+
+    // Тело больше max-size-mb отклоняется с 413: по Content-Length до чтения, а без него - как только прочитано
+    // на байт больше предела, так что в памяти не оказывается больше maxBodyBytes + 1 байт
+    private List<NewHitRequest> decode(HttpInputMessage inputMessage) throws IOException {
+        long contentLength = inputMessage.getHeaders().getContentLength();
+        if (contentLength > maxBodyBytes) {
+            throw tooLarge();
+        }
+        byte[] body = inputMessage.getBody().readNBytes(maxBodyBytes + 1);
+        if (body.length > maxBodyBytes) {
+            throw tooLarge();
+        }
+        try {
+            return codec.decode(body);
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+    }
+
+    private ResponseStatusException tooLarge() {
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                "Тело запроса больше " + maxBodyBytes + " байт");
+    }
+
+    private static HttpMessageNotWritableException notWritable() {
+        return new HttpMessageNotWritableException("Двоичный формат хитов используется только для чтения");
+    }
+
+    private static boolean isHitList(Type type) {
+        return type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() == List.class
+                && parameterized.getActualTypeArguments()[0] == NewHitRequest.class;
+    }
+}
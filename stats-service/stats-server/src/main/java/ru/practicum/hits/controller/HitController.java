@@ -1,16 +1,31 @@
 package ru.practicum.hits.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.HistogramDto;
 import ru.practicum.HitDto;
+import ru.practicum.LiveHitsDto;
 import ru.practicum.NewHitRequest;
+import ru.practicum.TopHitsDto;
 import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.TopWindow;
+import ru.practicum.hits.model.UniqueMode;
 import ru.practicum.hits.service.HitService;
+import ru.practicum.hits.sketch.HyperLogLog;
 import ru.practicum.validation.CreateValidation;
+import ru.practicum.validation.ConstraintViolationException;
 
-
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -20,10 +35,19 @@ import java.util.List;
 @Slf4j
 public class HitController {
 
+    private static final String UNIQUE_ERROR_HEADER = "X-Unique-Standard-Error";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private final HitService hitService;
+    private final ObjectMapper objectMapper;
+    private final int sketchPrecision;
 
-    public HitController(HitService hitService) {
+    public HitController(HitService hitService, ObjectMapper objectMapper,
+                         @Value("${stats.sketch.precision:12}") int sketchPrecision) {
         this.hitService = hitService;
+        this.objectMapper = objectMapper;
+        this.sketchPrecision = sketchPrecision;
     }
 
     @PostMapping("/hit")
@@ -33,15 +57,89 @@ public class HitController {
         return hitService.addHit(request);
     }
 
+    @PostMapping("/hits/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    @Validated(CreateValidation.class)
+    public void addHits(@RequestBody List<@Valid NewHitRequest> requests) {
+        log.info("Пакетно сохраняется информация о {} запросах к эндпоинтам", requests.size());
+        if (requests.isEmpty()) {
+            throw new ConstraintViolationException("Пакет хитов не может быть пустым");
+        }
+        hitService.addHits(requests);
+    }
+
+    // В uris можно передавать шаблоны с '*', например /events/*: они раскрываются в подходящие uri по индексу префиксов
     @GetMapping("/stats")
     public List<ViewStatsDto> getStats(@RequestParam String start, @RequestParam String end,
                                        @RequestParam(required = false) List<String> uris,
-                                       @RequestParam(defaultValue = "false") boolean unique) {
+                                       @RequestParam(defaultValue = "false") String unique,
+                                       HttpServletResponse response) {
         log.info("Время начала и конца переводится в определенный формат");
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        LocalDateTime startDate = LocalDateTime.parse(start, formatter);
-        LocalDateTime endDate = LocalDateTime.parse(end, formatter);
+        LocalDateTime startDate = LocalDateTime.parse(start, DATE_FORMATTER);
+        LocalDateTime endDate = LocalDateTime.parse(end, DATE_FORMATTER);
+        UniqueMode uniqueMode = UniqueMode.from(unique);
+        if (uniqueMode == UniqueMode.APPROX) {
+            // Относительная стандартная ошибка оценки числа уникальных посещений
+            response.setHeader(UNIQUE_ERROR_HEADER, String.valueOf(HyperLogLog.standardError(sketchPrecision)));
+        }
         log.info("Получение статистики по посещениям");
-        return hitService.getStats(startDate, endDate, uris, unique);
+        return hitService.getStats(startDate, endDate, uris, uniqueMode);
+    }
+
+    // Потоковая выдача при Accept: application/x-ndjson - каждая строка ответа пишется отдельной строкой JSON
+    // сразу после чтения из хранилища, так что память не зависит от размера ответа.
+    // Уникальные посещения в этом режиме всегда считаются точно, в том числе при unique=approx
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void streamStats(@RequestParam String start, @RequestParam String end,
+                            @RequestParam(required = false) List<String> uris,
+                            @RequestParam(defaultValue = "false") String unique,
+                            HttpServletResponse response) throws IOException {
+        LocalDateTime startDate = LocalDateTime.parse(start, DATE_FORMATTER);
+        LocalDateTime endDate = LocalDateTime.parse(end, DATE_FORMATTER);
+        UniqueMode uniqueMode = UniqueMode.from(unique);
+        log.info("Потоковое получение статистики по посещениям");
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        ServletOutputStream out = response.getOutputStream();
+        hitService.streamStats(startDate, endDate, uris, uniqueMode, stat -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(stat));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось передать строку статистики", e);
+            }
+        });
+    }
+
+    // Число хитов каждого uri по интервалам minute, hour или day. Интервалы выровнены по началу минуты, часа
+    // или суток; интервалы без хитов в ответ не попадают
+    @GetMapping("/stats/histogram")
+    public List<HistogramDto> getHistogram(@RequestParam String start, @RequestParam String end,
+                                           @RequestParam(required = false) List<String> uris,
+                                           @RequestParam(defaultValue = "hour") String interval,
+                                           @RequestParam(defaultValue = "false") String unique) {
+        LocalDateTime startDate = LocalDateTime.parse(start, DATE_FORMATTER);
+        LocalDateTime endDate = LocalDateTime.parse(end, DATE_FORMATTER);
+        log.info("Получение гистограммы посещений");
+        return hitService.getHistogram(startDate, endDate, uris, RollupGranularity.fromInterval(interval),
+                UniqueMode.from(unique));
+    }
+
+    // Самые посещаемые uri за последнюю минуту, час или сутки. Считается в памяти по скетчам Space-Saving:
+    // число хитов каждого uri в ответе завышено не больше чем на его error
+    @GetMapping("/stats/top")
+    public TopHitsDto getTopHits(@RequestParam(defaultValue = "10") int n,
+                                 @RequestParam(defaultValue = "hour") String window) {
+        log.info("Получение самых посещаемых uri");
+        return hitService.getTopHits(TopWindow.from(window), n);
+    }
+
+    // Число хитов uri за последнюю минуту, пять минут и час по счетчикам в памяти - для блоков "популярно сейчас".
+    // Без uris возвращаются n самых посещаемых за минуту uri; в uris можно передавать шаблоны с '*'
+    @GetMapping("/stats/live")
+    public List<LiveHitsDto> getLiveHits(@RequestParam(required = false) List<String> uris,
+                                         @RequestParam(defaultValue = "10") int n) {
+        log.info("Получение числа посещений за последние минуты");
+        return hitService.getLiveHits(uris, n);
     }
 }
@@ -0,0 +1,62 @@
+package ru.practicum.hits.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import ru.practicum.HitImportDto;
+import ru.practicum.hits.transfer.HitTransferService;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Перенос хитов между окружениями из командной строки:
+//   curl -o hits.csv.gz 'http://host:9090/admin/hits/export?start=2025-01-01%2000:00:00&end=2025-03-31%2023:59:59'
+//   curl --data-binary @hits.csv.gz http://host:9090/admin/hits/import
+// Выгрузка - CSV в gzip (app,uri,ip,timestamp), загрузка принимает его же или несжатый CSV
+@RestController
+@Slf4j
+@ConditionalOnExpression("${stats.transfer.enabled:false} and '${stats.store.engine:postgres}' == 'postgres'")
+public class HitTransferController {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String GZIP_CONTENT_TYPE = "application/gzip";
+
+    private final HitTransferService hitTransferService;
+
+    public HitTransferController(HitTransferService hitTransferService) {
+        this.hitTransferService = hitTransferService;
+    }
+
+    @GetMapping("/admin/hits/export")
+    public void exportHits(@RequestParam String start, @RequestParam String end,
+                           HttpServletResponse response) throws IOException {
+        LocalDateTime startDate = LocalDateTime.parse(start, DATE_FORMATTER);
+        LocalDateTime endDate = LocalDateTime.parse(end, DATE_FORMATTER);
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата не может быть позже конечной даты");
+        }
+        log.info("Выгрузка хитов с {} по {}", startDate, endDate);
+
+        response.setContentType(GZIP_CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename("hits.csv.gz").build().toString());
+        hitTransferService.exportHits(startDate, endDate, response.getOutputStream());
+    }
+
+    @PostMapping("/admin/hits/import")
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitImportDto importHits(HttpServletRequest request) throws IOException {
+        log.info("Загрузка хитов из файла");
+        return hitTransferService.importHits(request.getInputStream());
+    }
+}
@@ -0,0 +1,27 @@
+package ru.practicum.hits.controller;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Ответы об ошибках на запросы с Accept: application/x-ndjson (потоковый /stats) пишутся тем же JSON-конвертером:
+// один объект JSON - корректный документ NDJSON из одной строки. Без этого вместо 400 клиент получал бы 500
+@Configuration
+public class NdjsonConverterConfig implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2HttpMessageConverter jackson) {
+                List<MediaType> mediaTypes = new ArrayList<>(jackson.getSupportedMediaTypes());
+                mediaTypes.add(MediaType.APPLICATION_NDJSON);
+                jackson.setSupportedMediaTypes(mediaTypes);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.practicum.hits.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.ingest.HitStoredListener;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.store.HitStore;
+import ru.practicum.validation.ConstraintViolationException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+// Индекс префиксов uri (stats.uri-prefix.enabled=true): отсортированный в памяти словарь всех известных хранилищу uri.
+// Шаблон с '*' раскрывается в список uri поиском диапазона по литеральному префиксу до первой '*', остаток шаблона
+// проверяется только на uri из этого диапазона. Таблица hits при раскрытии не читается
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.uri-prefix.enabled", havingValue = "true")
+public class UriPrefixIndex implements HitStoredListener {
+
+    public static final char WILDCARD = '*';
+
+    private final NavigableSet<String> uris = new ConcurrentSkipListSet<>();
+    private final int maxExpansion;
+
+    public UriPrefixIndex(HitStore hitStore,
+                          @Value("${stats.uri-prefix.max-expansion:10000}") int maxExpansion) {
+        this.maxExpansion = maxExpansion;
+        uris.addAll(hitStore.knownUris());
+        log.info("Индекс префиксов uri загружен: {} uri", uris.size());
+    }
+
+    public static boolean isPattern(String uri) {
+        return uri.indexOf(WILDCARD) >= 0;
+    }
+
+    @Override
+    public void onHitsStored(List<Hit> hits) {
+        for (Hit hit : hits) {
+            uris.add(hit.getUri().getUri());
+        }
+    }
+
+    // Uri, записанные в обход HitStore, например загрузкой хитов из файла
+    public void addAll(Collection<String> newUris) {
+        uris.addAll(newUris);
+    }
+
+    // Uri, подходящие под шаблон, по возрастанию. '*' соответствует любой последовательности символов, включая '/'
+    public List<String> expand(String pattern) {
+        int wildcard = pattern.indexOf(WILDCARD);
+        String prefix = pattern.substring(0, wildcard);
+        NavigableSet<String> range = prefix.isEmpty()
+                ? uris
+                : uris.subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+        Pattern glob = wildcard == pattern.length() - 1 ? null : compile(pattern);
+
+        List<String> matched = new ArrayList<>();
+        for (String uri : range) {
+            if (glob != null && !glob.matcher(uri).matches()) {
+                continue;
+            }
+            if (matched.size() == maxExpansion) {
+                log.warn("Шаблон uri {} соответствует больше чем {} uri", pattern, maxExpansion);
+                throw new ConstraintViolationException("Шаблон uri " + pattern + " соответствует больше чем "
+                        + maxExpansion + " uri");
+            }
+            matched.add(uri);
+        }
+        return matched;
+    }
+
+    public int maxExpansion() {
+        return maxExpansion;
+    }
+
+    private static Pattern compile(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        int from = 0;
+        for (int wildcard = pattern.indexOf(WILDCARD); wildcard >= 0; wildcard = pattern.indexOf(WILDCARD, from)) {
+            regex.append(Pattern.quote(pattern.substring(from, wildcard))).append(".*");
+            from = wildcard + 1;
+        }
+        regex.append(Pattern.quote(pattern.substring(from)));
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
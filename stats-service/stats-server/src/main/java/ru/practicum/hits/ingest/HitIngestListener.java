@@ -0,0 +1,14 @@
+package ru.practicum.hits.ingest;
+
+import ru.practicum.hits.model.Hit;
+
+import java.util.List;
+
+// Получает каждую записанную пачку хитов в той же транзакции, что и вставка в hits.
+// Через этот интерфейс поддерживаются производные структуры (агрегаты, индексы), которые должны расти вместе с hits.
+// Слушатели упорядочены (@Order) так же, как пересчет суток при сжатии и загрузке хитов: агрегаты, скетчи, битмапы.
+// Пересчет блокирует свою таблицу, и при общем порядке запись и пересчет не ждут друг друга по кругу
+public interface HitIngestListener {
+
+    void onHitsWritten(List<Hit> hits);
+}
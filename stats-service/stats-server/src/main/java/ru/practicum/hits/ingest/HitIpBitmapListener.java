@@ -0,0 +1,83 @@
+package ru.practicum.hits.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.HitIpBitmap;
+import ru.practicum.hits.repository.HitIpBitmapRepository;
+import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.mapper.IpAddresses;
+import ru.practicum.hits.sketch.UniqueIpSet;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Поддерживает суточные битмапы ip для точного /stats?unique=true
+@Slf4j
+@Component
+@Order(3)
+@ConditionalOnProperty(name = "stats.bitmap.enabled", havingValue = "true")
+public class HitIpBitmapListener implements HitIngestListener, SmartLifecycle {
+
+    private final HitIpBitmapRepository hitIpBitmapRepository;
+    private final HitRepository hitRepository;
+
+    private volatile boolean running;
+
+    public HitIpBitmapListener(HitIpBitmapRepository hitIpBitmapRepository, HitRepository hitRepository) {
+        this.hitIpBitmapRepository = hitIpBitmapRepository;
+        this.hitRepository = hitRepository;
+    }
+
+    @Override
+    public void onHitsWritten(List<Hit> hits) {
+        Map<HitIpBitmap.Key, Set<String>> ipsByKey = new HashMap<>();
+        Set<String> others = new HashSet<>();
+        for (Hit hit : hits) {
+            HitIpBitmap.Key key = new HitIpBitmap.Key();
+            key.setApp(hit.getApp().getName());
+            key.setUri(hit.getUri().getUri());
+            key.setDay(hit.getTimestamp().toLocalDate());
+            ipsByKey.computeIfAbsent(key, k -> new HashSet<>()).add(hit.getIp());
+            if (IpAddresses.parseIpv4(hit.getIp()) == IpAddresses.NOT_IPV4) {
+                others.add(hit.getIp());
+            }
+        }
+
+        Map<String, Integer> ids = others.isEmpty() ? Map.of() : hitIpBitmapRepository.resolveIpIds(others);
+        Map<HitIpBitmap.Key, UniqueIpSet> sets = new HashMap<>();
+        ipsByKey.forEach((key, ips) -> sets.put(key, UniqueIpSet.of(ips, ids)));
+        hitIpBitmapRepository.mergeAll(sets);
+    }
+
+    // Хиты, записанные до включения битмапов, однократно переносим из сырых данных. Как и агрегаты, до веб-сервера
+    @Override
+    public void start() {
+        if (!hitIpBitmapRepository.existsAnyBitmap() && hitRepository.existsAnyHit()) {
+            log.info("Таблица hit_ip_bitmaps пуста, строим битмапы по сырым хитам");
+            hitIpBitmapRepository.rebuildFromHits();
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
@@ -0,0 +1,96 @@
+package ru.practicum.hits.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.HitRollup;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.repository.HitRollupRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Поддерживает поминутные, почасовые и посуточные счетчики hit_rollups при каждой записи хитов
+@Slf4j
+@Component
+@Order(1)
+@ConditionalOnProperty(name = "stats.rollups.enabled", havingValue = "true")
+public class HitRollupListener implements HitIngestListener, SmartLifecycle {
+
+    // Единый порядок обновления строк, чтобы параллельные транзакции не взаимоблокировались
+    private static final Comparator<Bucket> BUCKET_ORDER = Comparator.comparing(Bucket::granularity)
+            .thenComparing(Bucket::start)
+            .thenComparing(Bucket::app)
+            .thenComparing(Bucket::uri);
+
+    private final HitRollupRepository hitRollupRepository;
+    private final HitRepository hitRepository;
+
+    private volatile boolean running;
+
+    public HitRollupListener(HitRollupRepository hitRollupRepository, HitRepository hitRepository) {
+        this.hitRollupRepository = hitRollupRepository;
+        this.hitRepository = hitRepository;
+    }
+
+    @Override
+    public void onHitsWritten(List<Hit> hits) {
+        Map<Bucket, Long> counts = new TreeMap<>(BUCKET_ORDER);
+        for (Hit hit : hits) {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                Bucket bucket = new Bucket(granularity, granularity.floor(hit.getTimestamp()), hit.getApp().getName(),
+                        hit.getUri().getUri());
+                counts.merge(bucket, 1L, Long::sum);
+            }
+        }
+
+        List<HitRollup> deltas = new ArrayList<>(counts.size());
+        counts.forEach((bucket, count) -> {
+            HitRollup rollup = new HitRollup();
+            rollup.setGranularity(bucket.granularity());
+            rollup.setBucketStart(bucket.start());
+            rollup.setApp(bucket.app());
+            rollup.setUri(bucket.uri());
+            rollup.setHits(count);
+            deltas.add(rollup);
+        });
+        hitRollupRepository.increment(deltas);
+    }
+
+    // Хиты, записанные до включения агрегатов, в корзины не попали - однократно строим их по сырым данным.
+    // Запуск идет до веб-сервера: /stats не отвечает по пустым агрегатам, а /hit не пишет в них во время пересчета
+    @Override
+    public void start() {
+        if (!hitRollupRepository.existsAnyRollup() && hitRepository.existsAnyHit()) {
+            log.info("Таблица hit_rollups пуста, строим агрегаты по сырым хитам");
+            hitRollupRepository.rebuildFromHits();
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private record Bucket(RollupGranularity granularity, LocalDateTime start, String app, String uri) {
+    }
+}
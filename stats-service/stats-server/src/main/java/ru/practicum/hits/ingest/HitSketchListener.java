@@ -0,0 +1,90 @@
+package ru.practicum.hits.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.HitSketch;
+import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.repository.HitSketchRepository;
+import ru.practicum.hits.sketch.HyperLogLog;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Поддерживает суточные скетчи HyperLogLog по ip для /stats?unique=approx
+@Slf4j
+@Component
+@Order(2)
+@ConditionalOnProperty(name = "stats.sketch.enabled", havingValue = "true")
+public class HitSketchListener implements HitIngestListener, SmartLifecycle {
+
+    private final HitSketchRepository hitSketchRepository;
+    private final HitRepository hitRepository;
+    private final int precision;
+
+    private volatile boolean running;
+
+    public HitSketchListener(HitSketchRepository hitSketchRepository,
+                             HitRepository hitRepository,
+                             @Value("${stats.sketch.precision:12}") int precision) {
+        this.hitSketchRepository = hitSketchRepository;
+        this.hitRepository = hitRepository;
+        this.precision = precision;
+    }
+
+    @Override
+    public void onHitsWritten(List<Hit> hits) {
+        Map<HitSketch.Key, HyperLogLog> sketches = new HashMap<>();
+        for (Hit hit : hits) {
+            HitSketch.Key key = new HitSketch.Key();
+            key.setApp(hit.getApp().getName());
+            key.setUri(hit.getUri().getUri());
+            key.setDay(hit.getTimestamp().toLocalDate());
+            sketches.computeIfAbsent(key, k -> new HyperLogLog(precision)).add(hit.getIp());
+        }
+        hitSketchRepository.mergeAll(sketches);
+    }
+
+    // Скетчи строятся заново, если их еще нет или точность в настройках изменилась. Как и агрегаты, до веб-сервера.
+    // Скетчи сжатых суток пересчитать не из чего, поэтому смена точности при них останавливает запуск,
+    // а не удаляет оценки за эти сутки
+    @Override
+    public void start() {
+        Integer storedSize = hitSketchRepository.findAnySketchSize();
+        if (storedSize == null && hitRepository.existsAnyHit()) {
+            log.info("Таблица hit_sketches пуста, строим скетчи по сырым хитам");
+            hitSketchRepository.rebuildFromHits(precision);
+        } else if (storedSize != null && storedSize != 1 << precision) {
+            int storedPrecision = Integer.numberOfTrailingZeros(storedSize);
+            if (hitSketchRepository.hasDaysWithoutHits()) {
+                throw new IllegalStateException("Хранимые скетчи построены с stats.sketch.precision=" + storedPrecision
+                        + ", а сырые хиты части суток уже сжаты, и скетчи за них с точностью " + precision
+                        + " не пересчитать. Верните stats.sketch.precision=" + storedPrecision);
+            }
+            log.info("Размер хранимых скетчей {} байт не соответствует точности {}, строим скетчи заново",
+                    storedSize, precision);
+            hitSketchRepository.rebuildFromHits(precision);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
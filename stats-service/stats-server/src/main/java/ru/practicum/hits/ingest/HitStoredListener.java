@@ -0,0 +1,13 @@
+package ru.practicum.hits.ingest;
+
+import ru.practicum.hits.model.Hit;
+
+import java.util.List;
+
+// Получает каждую пачку хитов после того, как хранилище ее записало, при любом движке и режиме записи.
+// В отличие от HitIngestListener вызывается вне транзакции записи: для структур в памяти (кэш, скетчи),
+// которые не должны видеть хиты откаченной транзакции
+public interface HitStoredListener {
+
+    void onHitsStored(List<Hit> hits);
+}
@@ -0,0 +1,307 @@
+package ru.practicum.hits.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.store.HitStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Асинхронная запись хитов (stats.ingest.mode=async): HTTP-поток только кладет хит в ограниченный кольцевой буфер,
+// а фоновый писатель сбрасывает накопленное в хранилище одной пачкой каждые flush-size хитов или flush-interval-ms.
+// Пачка хитов запроса принимается целиком или не принимается вовсе, так что клиент может просто повторить запрос.
+// Неудачная запись повторяется с нарастающей паузой до остановки буфера: пока БД недоступна, буфер заполняется
+// и новые хиты ждут места или отбрасываются по политике overflow. После остановки хиты не принимаются
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "async")
+public class HitWriteBuffer implements SmartLifecycle {
+
+    public enum OverflowPolicy {
+        BLOCK, // HTTP-поток ждет освобождения места в буфере
+        DROP   // хит отбрасывается и учитывается в метрике stats.ingest.dropped
+    }
+
+    private static final long SHUTDOWN_WAIT_MS = 5000;
+    // Как часто HTTP-поток, ждущий места в буфере при overflow=block, проверяет, не остановлен ли буфер
+    private static final long BLOCK_CHECK_MS = 100;
+    private static final long RETRY_INITIAL_MS = 100;
+    private static final long RETRY_MAX_MS = 2000;
+
+    private final HitStore hitStore;
+    private final List<HitStoredListener> storedListeners;
+    private final BlockingQueue<Hit> queue;
+    private final int capacity;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean flushOnShutdown;
+
+    private final Counter acceptedCounter;
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Counter retriedCounter;
+    private final Timer flushTimer;
+
+    // HTTP-потоки кладут хиты в буфер по одному под этой блокировкой: пока пачка проверяет свободное место
+    // и кладется, писатель может только освобождать место. Под ней же stop снимает running, поэтому хит,
+    // положенный до остановки, будет записан, а после нее уже не попадет в буфер
+    private final ReentrantLock offerLock = new ReentrantLock();
+    private final Condition spaceFreed = offerLock.newCondition();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public HitWriteBuffer(HitStore hitStore,
+                          List<HitStoredListener> storedListeners,
+                          MeterRegistry meterRegistry,
+                          @Value("${stats.ingest.buffer-capacity:65536}") int capacity,
+                          @Value("${stats.ingest.flush-size:500}") int flushSize,
+                          @Value("${stats.ingest.flush-interval-ms:200}") long flushIntervalMs,
+                          @Value("${stats.ingest.overflow:block}") String overflowPolicy,
+                          @Value("${stats.ingest.flush-on-shutdown:true}") boolean flushOnShutdown) {
+        this.hitStore = hitStore;
+        this.storedListeners = storedListeners;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.toUpperCase());
+        this.flushOnShutdown = flushOnShutdown;
+
+        Gauge.builder("stats.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Количество хитов, ожидающих записи в БД")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingest.queue.capacity", () -> capacity)
+                .description("Емкость буфера хитов")
+                .register(meterRegistry);
+        this.acceptedCounter = meterRegistry.counter("stats.ingest.accepted");
+        this.droppedCounter = meterRegistry.counter("stats.ingest.dropped");
+        this.writtenCounter = meterRegistry.counter("stats.ingest.written");
+        this.failedCounter = meterRegistry.counter("stats.ingest.failed");
+        this.retriedCounter = meterRegistry.counter("stats.ingest.retried");
+        this.flushTimer = meterRegistry.timer("stats.ingest.flush");
+    }
+
+    // Возвращает false, если хит был отброшен: из-за переполнения буфера при overflow=drop или из-за остановки буфера
+    public boolean offer(Hit hit) {
+        return offerAll(List.of(hit));
+    }
+
+    // Возвращает false, если пачка отброшена целиком; частично пачка не принимается
+    public boolean offerAll(List<Hit> hits) {
+        if (hits.size() > capacity) {
+            droppedCounter.increment(hits.size());
+            log.warn("Пачка из {} хитов больше емкости буфера и отброшена", hits.size());
+            return false;
+        }
+        try {
+            offerLock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCounter.increment(hits.size());
+            return false;
+        }
+        try {
+            while (running && queue.remainingCapacity() < hits.size()) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    droppedCounter.increment(hits.size());
+                    log.debug("Буфер хитов переполнен, отброшено хитов: {}", hits.size());
+                    return false;
+                }
+                spaceFreed.await(BLOCK_CHECK_MS, TimeUnit.MILLISECONDS);
+            }
+            if (!running) {
+                droppedCounter.increment(hits.size());
+                log.warn("Буфер записи хитов остановлен, отброшено хитов: {}", hits.size());
+                return false;
+            }
+            // Место только освобождается, поэтому вся пачка помещается
+            queue.addAll(hits);
+            acceptedCounter.increment(hits.size());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCounter.increment(hits.size());
+            return false;
+        } finally {
+            offerLock.unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, "hit-writer");
+        writer.start();
+        log.info("Запущена асинхронная запись хитов: емкость буфера={}, flush-size={}, overflow={}",
+                queue.remainingCapacity(), flushSize, overflowPolicy);
+    }
+
+    // Писатель сбрасывает буфер и завершается, но ждем его не дольше SHUTDOWN_WAIT_MS. Хиты, которые HTTP-потоки
+    // успели положить после его последнего сброса, записываются здесь
+    @Override
+    public void stop() {
+        offerLock.lock();
+        try {
+            running = false;
+            spaceFreed.signalAll();
+        } finally {
+            offerLock.unlock();
+        }
+        try {
+            writer.join(SHUTDOWN_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("Запись хитов из буфера не завершилась за {} мс, в буфере хитов: {}", SHUTDOWN_WAIT_MS,
+                    queue.size());
+            return;
+        }
+        drainRemaining(new ArrayList<>(flushSize));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Останавливаемся после веб-сервера, чтобы успеть записать хиты из последних запросов
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void writeLoop() {
+        List<Hit> batch = new ArrayList<>(flushSize);
+        while (running) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            signalSpaceFreed();
+            flush(batch);
+        }
+        drainRemaining(batch);
+    }
+
+    private void drainRemaining(List<Hit> batch) {
+        if (queue.isEmpty() && batch.isEmpty()) {
+            return;
+        }
+        if (flushOnShutdown) {
+            log.info("Запись оставшихся в буфере хитов перед остановкой: {}", queue.size() + batch.size());
+            do {
+                queue.drainTo(batch, flushSize - batch.size());
+                flush(batch);
+            } while (!queue.isEmpty());
+        } else {
+            log.warn("Буфер остановлен без сброса, потеряно хитов: {}", queue.size() + batch.size());
+            queue.clear();
+            batch.clear();
+        }
+    }
+
+    // Ждем первый хит не дольше интервала сброса, затем добираем пачку до flush-size или до истечения интервала
+    private void collect(List<Hit> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long left = deadline - System.nanoTime();
+            if (batch.size() >= flushSize || left <= 0) {
+                return;
+            }
+            Hit next = queue.poll(left, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void signalSpaceFreed() {
+        offerLock.lock();
+        try {
+            spaceFreed.signalAll();
+        } finally {
+            offerLock.unlock();
+        }
+    }
+
+    // Пачка повторяется, пока буфер работает; после остановки делается еще одна попытка, и только ее неудача
+    // теряет хиты. Слушатели вызываются после записи по отдельности: их ошибка не делает записанные хиты
+    // неудачными и не мешает остальным слушателям
+    private void flush(List<Hit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            if (!save(batch)) {
+                return;
+            }
+            writtenCounter.increment(batch.size());
+            log.debug("Записана пачка из {} хитов", batch.size());
+            for (HitStoredListener listener : storedListeners) {
+                try {
+                    listener.onHitsStored(batch);
+                } catch (RuntimeException e) {
+                    log.error("Ошибка обработки записанной пачки из {} хитов в {}: {}", batch.size(),
+                            listener.getClass().getSimpleName(), e.getMessage(), e);
+                }
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private boolean save(List<Hit> batch) {
+        long delay = RETRY_INITIAL_MS;
+        while (true) {
+            try {
+                flushTimer.record(() -> hitStore.saveAll(batch));
+                return true;
+            } catch (RuntimeException e) {
+                if (!running || Thread.currentThread().isInterrupted()) {
+                    failedCounter.increment(batch.size());
+                    log.error("Ошибка записи пачки из {} хитов, хиты потеряны: {}", batch.size(), e.getMessage(), e);
+                    return false;
+                }
+                retriedCounter.increment();
+                log.warn("Ошибка записи пачки из {} хитов, повтор через {} мс: {}", batch.size(), delay,
+                        e.getMessage());
+                pause(delay);
+                delay = Math.min(delay * 2, RETRY_MAX_MS);
+            }
+        }
+    }
+
+    // Пауза перед повтором обрывается остановкой буфера, чтобы последняя попытка не ждала полной паузы
+    private void pause(long delayMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        try {
+            long left;
+            while (running && (left = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(left, TimeUnit.MILLISECONDS.toNanos(BLOCK_CHECK_MS)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
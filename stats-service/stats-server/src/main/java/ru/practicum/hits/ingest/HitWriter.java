@@ -0,0 +1,42 @@
+package ru.practicum.hits.ingest;
+
+import jakarta.transaction.Transactional;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.repository.HitRepository;
+
+import java.util.List;
+
+// Единая точка записи хитов: вставка в hits и обновление производных структур выполняются одной транзакцией
+@Component
+public class HitWriter {
+
+    private final HitRepository hitRepository;
+    private final List<HitIngestListener> listeners;
+
+    public HitWriter(HitRepository hitRepository, List<HitIngestListener> listeners) {
+        this.hitRepository = hitRepository;
+        this.listeners = listeners;
+    }
+
+    @Transactional
+    public Hit write(Hit hit) {
+        hitRepository.resolveDictionary(List.of(hit));
+        Hit saved = hitRepository.save(hit);
+        notifyListeners(List.of(saved));
+        return saved;
+    }
+
+    @Transactional
+    public void writeAll(List<Hit> hits) {
+        hitRepository.resolveDictionary(hits);
+        hitRepository.insertAll(hits);
+        notifyListeners(hits);
+    }
+
+    private void notifyListeners(List<Hit> hits) {
+        for (HitIngestListener listener : listeners) {
+            listener.onHitsWritten(hits);
+        }
+    }
+}
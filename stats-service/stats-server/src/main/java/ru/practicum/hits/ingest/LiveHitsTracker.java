@@ -0,0 +1,264 @@
+package ru.practicum.hits.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.LiveHitsDto;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.Hit;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Число хитов каждого uri за последнюю минуту, пять минут и час (stats.live.enabled=true) в памяти, без обращения
+// к хранилищу. У uri два кольца ячеек: посекундное на пять минут и поминутное на час. Ячейка хранит в одном long
+// номер своей секунды (минуты) и счетчик, поэтому хит учитывается одним CAS без блокировок, а ячейка прошлого круга
+// обнуляется тем же CAS. Если CAS срывается из-за конкурентной записи, uri получает полосы ячеек по потокам,
+// как LongAdder. Uri без хитов дольше часа удаляются, новые uri сверх max-uris не учитываются
+@Slf4j
+@Component
+@EnableScheduling
+@ConditionalOnProperty(name = "stats.live.enabled", havingValue = "true")
+public class LiveHitsTracker implements HitStoredListener {
+
+    private static final int SECOND_CELLS = 300;
+    private static final int MINUTE_CELLS = 60;
+    private static final int CELLS = SECOND_CELLS + MINUTE_CELLS;
+    private static final int MINUTE_SECONDS = 60;
+    private static final long WINDOW_SECONDS = (long) MINUTE_CELLS * MINUTE_SECONDS;
+    private static final int PERIOD_SHIFT = 32;
+    private static final long COUNT_MASK = 0xFFFF_FFFFL;
+    // Степень двойки, чтобы полоса выбиралась маской
+    private static final int STRIPES =
+            Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2);
+    // Значение lastSecond удаленного счетчика
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private static final Comparator<LiveHitsDto> ORDER = Comparator.comparing(LiveHitsDto::getMinute)
+            .thenComparing(LiveHitsDto::getFiveMinutes)
+            .thenComparing(LiveHitsDto::getHour)
+            .reversed();
+
+    private final Map<AppUri, LiveCounter> counters = new ConcurrentHashMap<>();
+    // Хиты новых uri, не учтенные из-за предела max-uris, с прошлой очистки
+    private final LongAdder untracked = new LongAdder();
+    private final int maxUris;
+
+    public LiveHitsTracker(@Value("${stats.live.max-uris:10000}") int maxUris) {
+        if (maxUris <= 0) {
+            throw new IllegalArgumentException("stats.live.max-uris должен быть больше 0");
+        }
+        this.maxUris = maxUris;
+    }
+
+    @Override
+    public void onHitsStored(List<Hit> hits) {
+        long now = epochSecond(LocalDateTime.now());
+        for (Hit hit : hits) {
+            // Хит с timestamp из будущего учитывается в текущей секунде, хит старше часа отбрасывается
+            long second = Math.min(epochSecond(hit.getTimestamp()), now);
+            if (second > now - WINDOW_SECONDS) {
+                add(new AppUri(hit.getApp().getName(), hit.getUri().getUri()), second);
+            }
+        }
+    }
+
+    // uris == null - все uri. Строки идут по убыванию хитов за минуту, затем за пять минут и за час; uri без хитов
+    // за час в ответ не попадают
+    public List<LiveHitsDto> getLive(List<String> uris, int n) {
+        long now = epochSecond(LocalDateTime.now());
+        Set<String> wanted = uris == null ? null : Set.copyOf(uris);
+        // n лучших строк: в голове очереди худшая из них
+        PriorityQueue<LiveHitsDto> best = new PriorityQueue<>(ORDER.reversed());
+        counters.forEach((key, counter) -> {
+            if (wanted != null && !wanted.contains(key.uri())) {
+                return;
+            }
+            LiveHitsDto live = counter.snapshot(key, now);
+            if (live == null) {
+                return;
+            }
+            if (best.size() < n) {
+                best.add(live);
+            } else if (ORDER.compare(live, best.peek()) < 0) {
+                best.poll();
+                best.add(live);
+            }
+        });
+        return best.stream().sorted(ORDER).toList();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.live.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long expired = epochSecond(LocalDateTime.now()) - WINDOW_SECONDS;
+        int evicted = 0;
+        for (Map.Entry<AppUri, LiveCounter> entry : counters.entrySet()) {
+            if (entry.getValue().retire(expired)) {
+                counters.remove(entry.getKey(), entry.getValue());
+                evicted++;
+            }
+        }
+        long lost = untracked.sumThenReset();
+        if (lost > 0) {
+            log.warn("Не учтено {} хитов новых uri в счетчиках посещений: отслеживается предельное число uri {}",
+                    lost, maxUris);
+        }
+        log.debug("Из счетчиков посещений удалено {} uri без хитов за час, отслеживается {} uri",
+                evicted, counters.size());
+    }
+
+    // Предел max-uris соблюдается приблизительно: uri, впервые пришедшие одновременно, могут его немного превысить.
+    // Секунда не проверяется на попадание в окно, поэтому тесты вызывают метод напрямую со старыми секундами
+    void add(AppUri key, long second) {
+        while (true) {
+            LiveCounter counter = counters.get(key);
+            if (counter == null) {
+                if (counters.size() >= maxUris) {
+                    untracked.increment();
+                    return;
+                }
+                counter = counters.computeIfAbsent(key, k -> new LiveCounter());
+            }
+            if (counter.add(second)) {
+                return;
+            }
+            // Счетчик удален очисткой между get и add: хит учитывается в новом
+            counters.remove(key, counter);
+        }
+    }
+
+    private static long epochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static final class LiveCounter {
+
+        // Ячейки [0, SECOND_CELLS) - секунды, остальные - минуты. Значение ячейки: номер периода << 32 | число хитов
+        private final AtomicLongArray base = new AtomicLongArray(CELLS);
+        // STRIPES колец подряд, создаются при первом сорвавшемся CAS
+        private final AtomicReference<AtomicLongArray> striped = new AtomicReference<>();
+        // Самый поздний учтенный хит. Очистка удаляет счетчик, только сменив его на RETIRED, поэтому хит,
+        // успевший продвинуть lastSecond, не теряется
+        private final AtomicLong lastSecond = new AtomicLong();
+
+        private boolean add(long second) {
+            long last;
+            do {
+                last = lastSecond.get();
+                if (last == RETIRED) {
+                    return false;
+                }
+            } while (last < second && !lastSecond.compareAndSet(last, second));
+
+            increment((int) Math.floorMod(second, (long) SECOND_CELLS), second);
+            long minute = Math.floorDiv(second, MINUTE_SECONDS);
+            increment(SECOND_CELLS + (int) Math.floorMod(minute, (long) MINUTE_CELLS), minute);
+            return true;
+        }
+
+        private boolean retire(long expired) {
+            long last = lastSecond.get();
+            return last != RETIRED && last <= expired && lastSecond.compareAndSet(last, RETIRED);
+        }
+
+        private void increment(int cell, long period) {
+            AtomicLongArray cells = striped.get();
+            if (cells == null) {
+                if (tryIncrement(base, cell, period)) {
+                    return;
+                }
+                striped.compareAndSet(null, new AtomicLongArray(STRIPES * CELLS));
+                cells = striped.get();
+            }
+            int index = stripe() * CELLS + cell;
+            while (!tryIncrement(cells, index, period)) {
+                Thread.onSpinWait();
+            }
+        }
+
+        // Ячейка, занятая более поздним периодом, не трогается: опоздавший хит старше кольца виден только в кольце
+        // большего периода
+        private static boolean tryIncrement(AtomicLongArray cells, int index, long period) {
+            long value = cells.get(index);
+            long current = value >>> PERIOD_SHIFT;
+            if (current > period) {
+                return true;
+            }
+            long next = current == period ? value + 1 : period << PERIOD_SHIFT | 1;
+            return cells.compareAndSet(index, value, next);
+        }
+
+        private static int stripe() {
+            return (int) (Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L >>> PERIOD_SHIFT) & (STRIPES - 1);
+        }
+
+        // Счетчики uri на момент now или null, если за час у него нет хитов. Час - последние MINUTE_CELLS минут,
+        // включая текущую, поэтому его фактическая длина от 59 до 60 минут
+        private LiveHitsDto snapshot(AppUri key, long now) {
+            long last = lastSecond.get();
+            if (last <= now - WINDOW_SECONDS) {
+                return null;
+            }
+            AtomicLongArray cells = striped.get();
+            long currentMinute = Math.floorDiv(now, MINUTE_SECONDS);
+            long hour = 0;
+            int cell = (int) Math.floorMod(currentMinute + 1, (long) MINUTE_CELLS);
+            for (long minute = currentMinute - MINUTE_CELLS + 1; minute <= currentMinute; minute++) {
+                hour += count(cells, SECOND_CELLS + cell, minute);
+                cell = cell + 1 == MINUTE_CELLS ? 0 : cell + 1;
+            }
+            if (hour == 0) {
+                return null;
+            }
+
+            long lastMinute = 0;
+            long fiveMinutes = 0;
+            // Посекундное кольцо обходится, только если хиты были в последние пять минут
+            if (last > now - SECOND_CELLS) {
+                cell = (int) Math.floorMod(now + 1, (long) SECOND_CELLS);
+                for (long second = now - SECOND_CELLS + 1; second <= now; second++) {
+                    long hits = count(cells, cell, second);
+                    cell = cell + 1 == SECOND_CELLS ? 0 : cell + 1;
+                    fiveMinutes += hits;
+                    if (second > now - MINUTE_SECONDS) {
+                        lastMinute += hits;
+                    }
+                }
+            }
+            return LiveHitsDto.builder()
+                    .app(key.app())
+                    .uri(key.uri())
+                    .minute(lastMinute)
+                    .fiveMinutes(fiveMinutes)
+                    .hour(hour)
+                    .build();
+        }
+
+        private long count(AtomicLongArray cells, int cell, long period) {
+            long sum = count(base.get(cell), period);
+            if (cells != null) {
+                for (int stripe = 0; stripe < STRIPES; stripe++) {
+                    sum += count(cells.get(stripe * CELLS + cell), period);
+                }
+            }
+            return sum;
+        }
+
+        private static long count(long value, long period) {
+            return value >>> PERIOD_SHIFT == period ? value & COUNT_MASK : 0;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ru.practicum.hits.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.TopHitDto;
+import ru.practicum.TopHitsDto;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.TopWindow;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.sketch.SpaceSaving;
+import ru.practicum.hits.store.HitStore;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Самые посещаемые uri за последнюю минуту, час и сутки (stats.top.enabled=true) без обращения к хранилищу.
+// Каждое окно - кольцо корзин со скетчами Space-Saving по capacity счетчиков. Закрытые корзины окна объединяются
+// один раз при сдвиге окна, запрос объединяет результат только с текущей корзиной
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.top.enabled", havingValue = "true")
+public class TopHitsTracker implements HitStoredListener {
+
+    // Метки времени хранятся с точностью до микросекунды: [from, to) == [from, to - 1 мкс]
+    private static final long MICROSECOND = 1_000;
+
+    private final int capacity;
+    private final Map<TopWindow, SlidingTop> windows = new EnumMap<>(TopWindow.class);
+
+    // Окна заполняются из хранилища до старта веб-сервера и буфера записи, поэтому ни один хит не учитывается дважды.
+    // Минутное окно не заполняется: оно набирается заново за минуту работы
+    public TopHitsTracker(HitStore hitStore,
+                          @Value("${stats.top.capacity:1000}") int capacity,
+                          @Value("${stats.top.warm-up:true}") boolean warmUp) {
+        this.capacity = capacity;
+        for (TopWindow window : TopWindow.values()) {
+            windows.put(window, new SlidingTop(window));
+        }
+        if (warmUp) {
+            warmUp(hitStore, TopWindow.HOUR);
+            warmUp(hitStore, TopWindow.DAY);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void onHitsStored(List<Hit> hits) {
+        long now = epochSecond(LocalDateTime.now());
+        for (SlidingTop window : windows.values()) {
+            window.add(hits, now);
+        }
+    }
+
+    public TopHitsDto getTop(TopWindow window, int n) {
+        return windows.get(window).top(epochSecond(LocalDateTime.now()), n);
+    }
+
+    private void warmUp(HitStore hitStore, TopWindow window) {
+        SlidingTop sliding = windows.get(window);
+        long current = Math.floorDiv(epochSecond(LocalDateTime.now()), window.getBucketSeconds());
+        long hits = 0;
+        for (long bucket = current - window.getBuckets() + 1; bucket <= current; bucket++) {
+            LocalDateTime from = toDateTime(bucket * window.getBucketSeconds());
+            LocalDateTime to = toDateTime((bucket + 1) * window.getBucketSeconds()).minusNanos(MICROSECOND);
+            for (ViewStatsDto stat : hitStore.getStats(from, to, null, UniqueMode.NONE)) {
+                sliding.add(bucket, current, new AppUri(stat.getApp(), stat.getUri()), stat.getHits());
+                hits += stat.getHits();
+            }
+        }
+        log.info("Окно top-uri {} заполнено из хранилища: {} хитов", window, hits);
+    }
+
+    private static long epochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    private final class SlidingTop {
+
+        private final TopWindow window;
+        private final long bucketSeconds;
+        private final int buckets;
+        // Скетч корзины с номером slotBucket[i] (время в секундах / bucketSeconds) лежит в slots[номер % buckets]
+        private final SpaceSaving<AppUri>[] slots;
+        private final long[] slotBucket;
+        // Объединение закрытых корзин окна, построенное для текущей корзины closedFor
+        private SpaceSaving<AppUri> closed;
+        private long closedFor = Long.MIN_VALUE;
+
+        @SuppressWarnings("unchecked")
+        private SlidingTop(TopWindow window) {
+            this.window = window;
+            this.bucketSeconds = window.getBucketSeconds();
+            this.buckets = window.getBuckets();
+            this.slots = (SpaceSaving<AppUri>[]) new SpaceSaving[buckets];
+            this.slotBucket = new long[buckets];
+            Arrays.fill(slotBucket, Long.MIN_VALUE);
+        }
+
+        private synchronized void add(List<Hit> hits, long now) {
+            long current = Math.floorDiv(now, bucketSeconds);
+            for (Hit hit : hits) {
+                long bucket = Math.floorDiv(epochSecond(hit.getTimestamp()), bucketSeconds);
+                add(bucket, current, new AppUri(hit.getApp().getName(), hit.getUri().getUri()), 1);
+            }
+        }
+
+        // Хит с timestamp из будущего учитывается в текущей корзине, хит старше окна отбрасывается
+        private synchronized void add(long bucket, long current, AppUri key, long hits) {
+            bucket = Math.min(bucket, current);
+            if (bucket <= current - buckets) {
+                return;
+            }
+            int slot = (int) Math.floorMod(bucket, (long) buckets);
+            if (slotBucket[slot] != bucket) {
+                slots[slot] = new SpaceSaving<>(capacity);
+                slotBucket[slot] = bucket;
+            }
+            slots[slot].offer(key, hits);
+            if (bucket < current) {
+                // Поздний хит в закрытой корзине: объединение закрытых корзин строится заново
+                closedFor = Long.MIN_VALUE;
+            }
+        }
+
+        private synchronized TopHitsDto top(long now, int n) {
+            long current = Math.floorDiv(now, bucketSeconds);
+            if (closedFor != current) {
+                List<SpaceSaving<AppUri>> sketches = new ArrayList<>(buckets);
+                for (int slot = 0; slot < buckets; slot++) {
+                    if (slotBucket[slot] > current - buckets && slotBucket[slot] < current) {
+                        sketches.add(slots[slot]);
+                    }
+                }
+                closed = SpaceSaving.merge(sketches, capacity);
+                closedFor = current;
+            }
+
+            int slot = (int) Math.floorMod(current, (long) buckets);
+            SpaceSaving.Top<AppUri> summary = SpaceSaving.top(
+                    slotBucket[slot] == current ? List.of(closed, slots[slot]) : List.of(closed), n);
+            List<TopHitDto> top = new ArrayList<>(summary.estimates().size());
+            for (SpaceSaving.Estimate<AppUri> estimate : summary.estimates()) {
+                top.add(TopHitDto.builder()
+                        .app(estimate.key().app())
+                        .uri(estimate.key().uri())
+                        .hits(estimate.count())
+                        .error(estimate.error())
+                        .guaranteed(estimate.count() - estimate.error() >= summary.otherMax())
+                        .build());
+            }
+            return TopHitsDto.builder()
+                    .window(window.name().toLowerCase())
+                    .total(summary.total())
+                    .otherMax(summary.otherMax())
+                    .top(top)
+                    .build();
+        }
+    }
+}
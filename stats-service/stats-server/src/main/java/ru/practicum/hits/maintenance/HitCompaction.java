@@ -0,0 +1,97 @@
+package ru.practicum.hits.maintenance;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.cache.StatsQueryCache;
+import ru.practicum.hits.repository.HitCompactionRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.function.IntSupplier;
+
+// Сжатие старых хитов (stats.compaction.enabled=true, только при хранении в Postgres). Каждые сутки старше
+// after-days один раз пересчитываются в посуточные агрегаты, скетчи и битмапы, граница сжатия сдвигается за них,
+// и только затем сырые хиты, поминутные и почасовые агрегаты раньше границы удаляются пачками по batch-size строк.
+// Каждая пачка - отдельная короткая транзакция, поэтому запись новых хитов не ждет удаления. Хиты, пришедшие
+// за уже сжатые сутки, удаляются при следующем запуске: слушатели записи к тому времени учли их в посуточных данных
+@Slf4j
+@Component
+@EnableScheduling
+@ConditionalOnExpression("${stats.compaction.enabled:false} and '${stats.store.engine:postgres}' == 'postgres'")
+public class HitCompaction {
+
+    // Окно TopHitsTracker за сутки собирается из почасовых запросов, поэтому сжатыми могут быть только сутки,
+    // которые в него не попадают
+    private static final int MIN_AFTER_DAYS = 2;
+
+    private final HitCompactionService hitCompactionService;
+    private final HitCompactionRepository hitCompactionRepository;
+    private final StatsQueryCache statsCache;
+    private final int afterDays;
+    private final int batchSize;
+
+    public HitCompaction(HitCompactionService hitCompactionService,
+                         HitCompactionRepository hitCompactionRepository,
+                         ObjectProvider<StatsQueryCache> statsCache,
+                         @Value("${stats.compaction.after-days:90}") int afterDays,
+                         @Value("${stats.compaction.batch-size:10000}") int batchSize) {
+        if (afterDays < MIN_AFTER_DAYS) {
+            throw new IllegalArgumentException("stats.compaction.after-days должен быть не меньше " + MIN_AFTER_DAYS);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("stats.compaction.batch-size должен быть больше 0");
+        }
+        this.hitCompactionService = hitCompactionService;
+        this.hitCompactionRepository = hitCompactionRepository;
+        this.statsCache = statsCache.getIfAvailable();
+        this.afterDays = afterDays;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${stats.compaction.cron:0 30 3 * * *}")
+    public void compact() {
+        LocalDate cutoff = LocalDate.now().minusDays(afterDays);
+        LocalDateTime boundary = hitCompactionService.compactedBefore();
+        int days = 0;
+        // Сутки без сырых хитов пропускаются сразу до следующего хита
+        Optional<LocalDateTime> next = boundary == null
+                ? hitCompactionRepository.findFirstHit()
+                : hitCompactionRepository.findFirstHitFrom(boundary);
+        while (next.isPresent() && next.get().toLocalDate().isBefore(cutoff)) {
+            LocalDate day = next.get().toLocalDate();
+            hitCompactionService.compactDay(day);
+            days++;
+            next = hitCompactionRepository.findFirstHitFrom(day.plusDays(1).atStartOfDay());
+        }
+        if (boundary == null || boundary.toLocalDate().isBefore(cutoff)) {
+            hitCompactionService.skipTo(cutoff);
+        }
+
+        LocalDateTime compactedBefore = hitCompactionService.compactedBefore();
+        long hits = deleteInBatches(() -> hitCompactionRepository.deleteHitsBefore(compactedBefore, batchSize));
+        long rollups = deleteInBatches(() -> hitCompactionRepository.deleteFineRollupsBefore(compactedBefore,
+                batchSize));
+        // Ответы за сжатые сутки теперь считаются целыми сутками и могут отличаться от закэшированных
+        if (statsCache != null && !compactedBefore.equals(boundary)) {
+            statsCache.invalidate(LocalDateTime.MIN, compactedBefore);
+        }
+        log.info("Хиты сжаты до {}: пересчитано суток {}, удалено сырых хитов {}, мелких агрегатов {}",
+                compactedBefore.toLocalDate(), days, hits, rollups);
+    }
+
+    private long deleteInBatches(IntSupplier batch) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = batch.getAsInt();
+            total += deleted;
+        } while (deleted == batchSize);
+        return total;
+    }
+}
@@ -0,0 +1,92 @@
+package ru.practicum.hits.maintenance;
+
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.hits.repository.HitCompactionRepository;
+import ru.practicum.hits.repository.HitIpBitmapRepository;
+import ru.practicum.hits.repository.HitRollupRepository;
+import ru.practicum.hits.repository.HitSketchRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Граница сжатия хитов и пересчет суток перед сжатием. Сутки раньше границы читаются только из посуточных
+// агрегатов, скетчей и битмапов, поэтому граница сдвигается в той же транзакции, что и их пересчет, а в памяти -
+// только после фиксации: до этого запросы еще читают сырые хиты этих суток, которые к тому моменту не удалены
+@Slf4j
+@Service
+@ConditionalOnExpression("${stats.compaction.enabled:false} and '${stats.store.engine:postgres}' == 'postgres'")
+public class HitCompactionService {
+
+    private final HitCompactionRepository hitCompactionRepository;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitIpBitmapRepository hitIpBitmapRepository;
+    private final boolean sketchesEnabled;
+    private final int sketchPrecision;
+    private volatile LocalDateTime compactedBefore;
+
+    public HitCompactionService(HitCompactionRepository hitCompactionRepository,
+                                HitRollupRepository hitRollupRepository,
+                                HitSketchRepository hitSketchRepository,
+                                HitIpBitmapRepository hitIpBitmapRepository,
+                                @Value("${stats.rollups.enabled:false}") boolean rollupsEnabled,
+                                @Value("${stats.sketch.enabled:false}") boolean sketchesEnabled,
+                                @Value("${stats.sketch.precision:12}") int sketchPrecision,
+                                @Value("${stats.bitmap.enabled:false}") boolean bitmapsEnabled) {
+        // Без агрегатов и битмапов сжатые сутки нечем читать: число хитов и точные уникальные ip считаются по ним
+        if (!rollupsEnabled || !bitmapsEnabled) {
+            throw new IllegalStateException(
+                    "Сжатие хитов требует stats.rollups.enabled=true и stats.bitmap.enabled=true");
+        }
+        this.hitCompactionRepository = hitCompactionRepository;
+        this.hitRollupRepository = hitRollupRepository;
+        this.hitSketchRepository = hitSketchRepository;
+        this.hitIpBitmapRepository = hitIpBitmapRepository;
+        this.sketchesEnabled = sketchesEnabled;
+        this.sketchPrecision = sketchPrecision;
+        this.compactedBefore = hitCompactionRepository.findCompactedBefore()
+                .map(LocalDate::atStartOfDay)
+                .orElse(null);
+    }
+
+    // Начало первых несжатых суток или null, если сжатие еще не выполнялось
+    public LocalDateTime compactedBefore() {
+        return compactedBefore;
+    }
+
+    // Пересчитывает производные данные суток по их сырым хитам и переносит границу сжатия за эти сутки.
+    // Сутки пересчитываются один раз: хиты, пришедшие за них позже, учитываются слушателями записи
+    @Transactional
+    public void compactDay(LocalDate day) {
+        LocalDate next = day.plusDays(1);
+        log.debug("Пересчет агрегатов, скетчей и битмапов за {} перед сжатием", day);
+        hitRollupRepository.rebuildDays(day, next);
+        if (sketchesEnabled) {
+            hitSketchRepository.rebuildDays(sketchPrecision, day, next);
+        }
+        hitIpBitmapRepository.rebuildDays(day, next);
+        moveBoundary(next);
+    }
+
+    // Сдвигает границу на сутки без сырых хитов: пересчитывать в них нечего
+    @Transactional
+    public void skipTo(LocalDate day) {
+        moveBoundary(day);
+    }
+
+    private void moveBoundary(LocalDate day) {
+        hitCompactionRepository.saveCompactedBefore(day);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                compactedBefore = day.atStartOfDay();
+            }
+        });
+    }
+}
@@ -0,0 +1,109 @@
+package ru.practicum.hits.maintenance;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.cache.StatsQueryCache;
+import ru.practicum.hits.model.PartitionGranularity;
+import ru.practicum.hits.repository.HitPartitionRepository;
+import ru.practicum.hits.repository.HitPartitionRepository.Partition;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Обслуживание секций hits: заранее создает секции на precreate периодов вперед
+// и отсоединяет или удаляет секции, целиком вышедшие за срок хранения
+@Slf4j
+@Component
+@EnableScheduling
+@ConditionalOnProperty(name = "stats.partitions.enabled", havingValue = "true")
+public class HitPartitionMaintenance {
+
+    private final HitPartitionRepository hitPartitionRepository;
+    private final StatsQueryCache statsCache;
+    private final PartitionGranularity granularity;
+    private final int precreate;
+    private final int retentionDays;
+    private final boolean dropExpired;
+
+    public HitPartitionMaintenance(HitPartitionRepository hitPartitionRepository,
+                                   ObjectProvider<StatsQueryCache> statsCache,
+                                   @Value("${stats.partitions.granularity:month}") String granularity,
+                                   @Value("${stats.partitions.precreate:2}") int precreate,
+                                   @Value("${stats.partitions.retention-days:0}") int retentionDays,
+                                   @Value("${stats.partitions.retention-action:drop}") String retentionAction) {
+        this.hitPartitionRepository = hitPartitionRepository;
+        this.statsCache = statsCache.getIfAvailable();
+        this.granularity = PartitionGranularity.valueOf(granularity.toUpperCase());
+        this.precreate = precreate;
+        this.retentionDays = retentionDays;
+        this.dropExpired = switch (retentionAction.toLowerCase()) {
+            case "drop" -> true;
+            case "detach" -> false;
+            default -> throw new IllegalArgumentException("stats.partitions.retention-action должен быть drop или detach");
+        };
+    }
+
+    // Секция на текущий период должна существовать до первого хита, поэтому обслуживание выполняется и при старте
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${stats.partitions.cron:0 10 0 * * *}")
+    public void maintain() {
+        LocalDate today = LocalDate.now();
+        createAhead(today);
+        if (retentionDays > 0) {
+            expire(granularity.floor(today.minusDays(retentionDays)).atStartOfDay());
+        }
+    }
+
+    private void createAhead(LocalDate today) {
+        LocalDate last = granularity.floor(today);
+        for (int i = 0; i < precreate; i++) {
+            last = granularity.next(last);
+        }
+        createPartitions(today, last);
+    }
+
+    // Создает недостающие секции на все периоды с первого по последний день включительно, например перед загрузкой
+    // хитов за прошлые месяцы, чтобы они не оседали в секции по умолчанию
+    public void createPartitions(LocalDate firstDay, LocalDate lastDay) {
+        List<Partition> partitions = hitPartitionRepository.findRangePartitions();
+        for (LocalDate period = granularity.floor(firstDay); !period.isAfter(lastDay); period = granularity.next(period)) {
+            LocalDateTime from = period.atStartOfDay();
+            LocalDateTime to = granularity.next(period).atStartOfDay();
+            // Период может быть уже покрыт секцией другой гранулярности, например месячной после смены настройки
+            boolean covered = partitions.stream()
+                    .anyMatch(partition -> partition.from().isBefore(to) && partition.to().isAfter(from));
+            if (!covered) {
+                String name = granularity.partitionName(period);
+                log.info("Создание секции {} для хитов с {} по {}", name, from, to);
+                hitPartitionRepository.createPartition(name, from, to);
+            }
+        }
+    }
+
+    private void expire(LocalDateTime cutoff) {
+        for (Partition partition : hitPartitionRepository.findRangePartitions()) {
+            if (!partition.to().isAfter(cutoff)) {
+                log.info("Секция {} вышла за срок хранения и будет {}", partition.name(),
+                        dropExpired ? "удалена" : "отсоединена");
+                hitPartitionRepository.detachPartition(partition.name(), dropExpired);
+            }
+        }
+        hitPartitionRepository.deleteBefore(cutoff);
+        // Закэшированные ответы за удаленный период больше не совпадают с данными
+        if (statsCache != null) {
+            statsCache.invalidate(LocalDateTime.MIN, cutoff);
+        }
+    }
+}
@@ -4,16 +4,23 @@ package ru.practicum.hits.mapper;
 import ru.practicum.HitDto;
 import ru.practicum.NewHitRequest;
 import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.HitApp;
+import ru.practicum.hits.model.HitUri;
 
+import java.time.temporal.ChronoUnit;
 
 public final class HitMapper {
 
     public static Hit mapToHit(NewHitRequest request) {
         Hit hit = new Hit();
-        hit.setApp(request.getApp());
-        hit.setUri(request.getUri());
+        hit.setApp(new HitApp(request.getApp()));
+        hit.setUri(new HitUri(request.getUri()));
         hit.setIp(request.getIp());
-        hit.setTimestamp(request.getTimestamp());
+        // Хиты хранятся с точностью до секунды: на этом построены агрегаты, скетчи, битмапы и границы [start, end]
+        // в запросах, а JSON и двоичный формат могут передать и миллисекунды
+        hit.setTimestamp(request.getTimestamp() == null
+                ? null
+                : request.getTimestamp().truncatedTo(ChronoUnit.SECONDS));
 
         return hit;
     }
@@ -21,8 +28,8 @@ public final class HitMapper {
     public static HitDto mapToHitDto(Hit hit) {
         HitDto dto = new HitDto();
         dto.setId(hit.getId());
-        dto.setApp(hit.getApp());
-        dto.setUri(hit.getUri());
+        dto.setApp(hit.getApp().getName());
+        dto.setUri(hit.getUri().getUri());
         dto.setIp(hit.getIp());
         dto.setTimestamp(hit.getTimestamp());
 
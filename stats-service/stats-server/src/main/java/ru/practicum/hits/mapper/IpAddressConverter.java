@@ -0,0 +1,19 @@
+package ru.practicum.hits.mapper;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// Хранение ip в hits в компактном бинарном виде, в коде адрес остается строкой
+@Converter
+public class IpAddressConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String ip) {
+        return ip == null ? null : IpAddresses.encode(ip);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] encoded) {
+        return encoded == null ? null : IpAddresses.decode(encoded);
+    }
+}
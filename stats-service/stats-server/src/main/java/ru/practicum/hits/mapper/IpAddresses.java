@@ -0,0 +1,82 @@
+package ru.practicum.hits.mapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class IpAddresses {
+
+    public static final long NOT_IPV4 = -1L;
+
+    // Первый байт закодированного адреса: IPv4 хранится 4 байтами, все остальное (IPv6, имена) - исходной строкой
+    private static final byte TAG_TEXT = 0;
+    private static final byte TAG_IPV4 = 4;
+
+    private IpAddresses() {
+    }
+
+    // Разбор IPv4 в канонической нотации a.b.c.d (без ведущих нулей) без обращения к DNS. Возвращает адрес
+    // как беззнаковое 32-битное число или NOT_IPV4. Записи вида "010.0.0.1" считаются отдельными строками,
+    // как и при COUNT(DISTINCT ip), и декодируются обратно без потерь
+    public static long parseIpv4(String ip) {
+        long address = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (octet == 0) {
+                    return NOT_IPV4;
+                }
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return NOT_IPV4;
+                }
+            } else if (c == '.' && octet >= 0 && octets < 3) {
+                address = (address << 8) | octet;
+                octets++;
+                octet = -1;
+            } else {
+                return NOT_IPV4;
+            }
+        }
+        if (octets != 3 || octet < 0) {
+            return NOT_IPV4;
+        }
+        return (address << 8) | octet;
+    }
+
+    public static String formatIpv4(long address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "."
+                + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    // Компактное представление ip для колонки hits.ip: IPv4 занимает 5 байт вместо строки до 15 символов
+    public static byte[] encode(String ip) {
+        long ipv4 = parseIpv4(ip);
+        if (ipv4 != NOT_IPV4) {
+            return new byte[]{TAG_IPV4, (byte) (ipv4 >>> 24), (byte) (ipv4 >>> 16), (byte) (ipv4 >>> 8), (byte) ipv4};
+        }
+        byte[] text = ip.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = new byte[text.length + 1];
+        encoded[0] = TAG_TEXT;
+        System.arraycopy(text, 0, encoded, 1, text.length);
+        return encoded;
+    }
+
+    public static String decode(byte[] encoded) {
+        long ipv4 = ipv4(encoded);
+        if (ipv4 != NOT_IPV4) {
+            return formatIpv4(ipv4);
+        }
+        return new String(Arrays.copyOfRange(encoded, 1, encoded.length), StandardCharsets.UTF_8);
+    }
+
+    // IPv4 из закодированного значения без построения строки или NOT_IPV4
+    public static long ipv4(byte[] encoded) {
+        if (encoded.length != 5 || encoded[0] != TAG_IPV4) {
+            return NOT_IPV4;
+        }
+        return ((encoded[1] & 0xFFL) << 24) | ((encoded[2] & 0xFFL) << 16)
+                | ((encoded[3] & 0xFFL) << 8) | (encoded[4] & 0xFFL);
+    }
+}
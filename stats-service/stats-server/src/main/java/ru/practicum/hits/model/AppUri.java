@@ -0,0 +1,5 @@
+package ru.practicum.hits.model;
+
+// Ключ группировки статистики: приложение и uri
+public record AppUri(String app, String uri) {
+}
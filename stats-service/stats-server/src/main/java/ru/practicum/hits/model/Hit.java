@@ -3,6 +3,7 @@ package ru.practicum.hits.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import ru.practicum.hits.mapper.IpAddressConverter;
 
 import java.time.LocalDateTime;
 
@@ -17,9 +18,19 @@ public class Hit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    private String app; // Название приложения
-    private String uri; // Uri
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "app_id", nullable = false)
+    private HitApp app; // Название приложения
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "uri_id", nullable = false)
+    private HitUri uri; // Uri
+
+    @Convert(converter = IpAddressConverter.class)
+    @Column(nullable = false)
     private String ip; // Ip адрес
+
+    @Column(nullable = false)
     private LocalDateTime timestamp; // Дата и время, когда был совершен запрос
 
 }
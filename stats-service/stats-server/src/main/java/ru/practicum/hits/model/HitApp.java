@@ -0,0 +1,26 @@
+package ru.practicum.hits.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Словарь названий приложений: в hits хранится только его id
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "hit_apps")
+public class HitApp {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(length = 100, nullable = false, unique = true)
+    private String name;
+
+    public HitApp(String name) {
+        this.name = name;
+    }
+}
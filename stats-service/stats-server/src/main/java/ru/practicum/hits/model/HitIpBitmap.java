@@ -0,0 +1,45 @@
+package ru.practicum.hits.model;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Точное множество ip всех хитов app+uri за сутки day в виде двух сжатых битмапов
+@Getter
+@Setter
+@Entity
+@Table(name = "hit_ip_bitmaps")
+@IdClass(HitIpBitmap.Key.class)
+public class HitIpBitmap {
+
+    @Id
+    @Column(length = 100)
+    private String app;
+
+    @Id
+    @Column(length = 100)
+    private String uri;
+
+    @Id
+    @Column(name = "bucket_day")
+    private LocalDate day;
+
+    @Column(nullable = false)
+    private byte[] ipv4;
+
+    @Column(name = "ip_ids", nullable = false)
+    private byte[] ipIds;
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private String app;
+        private String uri;
+        private LocalDate day;
+    }
+}
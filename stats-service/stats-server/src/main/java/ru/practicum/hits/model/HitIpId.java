@@ -0,0 +1,20 @@
+package ru.practicum.hits.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+// Словарь адресов, не являющихся IPv4 (IPv6 и прочие), для хранения в 32-битных битмапах
+@Getter
+@Setter
+@Entity
+@Table(name = "hit_ip_ids")
+public class HitIpId {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(length = 100, nullable = false, unique = true)
+    private String ip;
+}
@@ -0,0 +1,47 @@
+package ru.practicum.hits.model;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// Количество хитов app+uri в корзине [bucketStart, bucketStart + granularity)
+@Getter
+@Setter
+@Entity
+@Table(name = "hit_rollups")
+@IdClass(HitRollup.Key.class)
+public class HitRollup {
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private RollupGranularity granularity;
+
+    @Id
+    @Column(name = "bucket_start")
+    private LocalDateTime bucketStart;
+
+    @Id
+    @Column(length = 100)
+    private String app;
+
+    @Id
+    @Column(length = 100)
+    private String uri;
+
+    private Long hits;
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private RollupGranularity granularity;
+        private LocalDateTime bucketStart;
+        private String app;
+        private String uri;
+    }
+}
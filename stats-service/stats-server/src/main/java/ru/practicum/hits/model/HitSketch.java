@@ -0,0 +1,42 @@
+package ru.practicum.hits.model;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Скетч HyperLogLog по ip всех хитов app+uri за сутки day
+@Getter
+@Setter
+@Entity
+@Table(name = "hit_sketches")
+@IdClass(HitSketch.Key.class)
+public class HitSketch {
+
+    @Id
+    @Column(length = 100)
+    private String app;
+
+    @Id
+    @Column(length = 100)
+    private String uri;
+
+    @Id
+    @Column(name = "bucket_day")
+    private LocalDate day;
+
+    @Column(nullable = false)
+    private byte[] sketch;
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private String app;
+        private String uri;
+        private LocalDate day;
+    }
+}
@@ -0,0 +1,26 @@
+package ru.practicum.hits.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Словарь uri: в hits хранится только его id
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "hit_uris")
+public class HitUri {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(length = 100, nullable = false, unique = true)
+    private String uri;
+
+    public HitUri(String uri) {
+        this.uri = uri;
+    }
+}
@@ -0,0 +1,29 @@
+package ru.practicum.hits.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+
+// Период одной секции таблицы hits
+public enum PartitionGranularity {
+    DAY(DateTimeFormatter.ofPattern("yyyyMMdd")),
+    MONTH(DateTimeFormatter.ofPattern("yyyyMM"));
+
+    private final DateTimeFormatter suffix;
+
+    PartitionGranularity(DateTimeFormatter suffix) {
+        this.suffix = suffix;
+    }
+
+    public LocalDate floor(LocalDate day) {
+        return this == DAY ? day : day.with(TemporalAdjusters.firstDayOfMonth());
+    }
+
+    public LocalDate next(LocalDate periodStart) {
+        return this == DAY ? periodStart.plusDays(1) : periodStart.plusMonths(1);
+    }
+
+    public String partitionName(LocalDate periodStart) {
+        return "hits_p" + suffix.format(periodStart);
+    }
+}
@@ -0,0 +1,51 @@
+package ru.practicum.hits.model;
+
+import ru.practicum.validation.ConstraintViolationException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+// Размер корзины предагрегатов hit_rollups, от самой крупной к самой мелкой
+public enum RollupGranularity {
+    DAY(ChronoUnit.DAYS),
+    HOUR(ChronoUnit.HOURS),
+    MINUTE(ChronoUnit.MINUTES);
+
+    private final ChronoUnit unit;
+
+    RollupGranularity(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? time : floor.plus(1, unit);
+    }
+
+    public LocalDateTime next(LocalDateTime bucketStart) {
+        return bucketStart.plus(1, unit);
+    }
+
+    public long micros() {
+        return unit.getDuration().toNanos() / 1_000;
+    }
+
+    // Число корзин, которые задевает [from, to]
+    public long bucketsBetween(LocalDateTime from, LocalDateTime to) {
+        return unit.between(floor(from), floor(to)) + 1;
+    }
+
+    // Значение параметра interval в /stats/histogram
+    public static RollupGranularity fromInterval(String value) {
+        return switch (value.toLowerCase()) {
+            case "minute" -> MINUTE;
+            case "hour" -> HOUR;
+            case "day" -> DAY;
+            default -> throw new ConstraintViolationException("Параметр interval должен быть minute, hour или day");
+        };
+    }
+}
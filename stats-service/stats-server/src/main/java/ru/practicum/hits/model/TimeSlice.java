@@ -0,0 +1,67 @@
+package ru.practicum.hits.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Часть диапазона [from, to), которая читается либо из корзин granularity, либо (granularity == null) из сырых hits
+public record TimeSlice(RollupGranularity granularity, LocalDateTime from, LocalDateTime to) {
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+
+    // Разбивает [from, to) на выровненные корзины от самых крупных к мелким, оставляя по краям сырые куски короче минуты.
+    // Всего получается не больше семи кусков независимо от длины диапазона
+    public static List<TimeSlice> split(LocalDateTime from, LocalDateTime to) {
+        return split(from, to, RollupGranularity.DAY);
+    }
+
+    // То же, но без корзин крупнее coarsest: каждая корзина целиком попадает в один интервал гистограммы
+    public static List<TimeSlice> split(LocalDateTime from, LocalDateTime to, RollupGranularity coarsest) {
+        List<TimeSlice> slices = new ArrayList<>();
+        split(from, to, coarsest.ordinal(), slices);
+        return slices;
+    }
+
+    // Разбивает [from, to) на целые сутки и сырые неполные сутки по краям - для структур, которые хранятся посуточно
+    public static List<TimeSlice> splitByDays(LocalDateTime from, LocalDateTime to) {
+        List<TimeSlice> slices = new ArrayList<>();
+        LocalDateTime fromDay = RollupGranularity.DAY.ceil(from);
+        LocalDateTime toDay = RollupGranularity.DAY.floor(to);
+        if (fromDay.isBefore(toDay)) {
+            if (from.isBefore(fromDay)) {
+                slices.add(new TimeSlice(null, from, fromDay));
+            }
+            slices.add(new TimeSlice(RollupGranularity.DAY, fromDay, toDay));
+            if (toDay.isBefore(to)) {
+                slices.add(new TimeSlice(null, toDay, to));
+            }
+        } else {
+            slices.add(new TimeSlice(null, from, to));
+        }
+        return slices;
+    }
+
+    private static void split(LocalDateTime from, LocalDateTime to, int level, List<TimeSlice> slices) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        RollupGranularity[] levels = RollupGranularity.values();
+        if (level == levels.length) {
+            slices.add(new TimeSlice(null, from, to));
+            return;
+        }
+
+        RollupGranularity granularity = levels[level];
+        LocalDateTime alignedFrom = granularity.ceil(from);
+        LocalDateTime alignedTo = granularity.floor(to);
+        if (alignedFrom.isBefore(alignedTo)) {
+            split(from, alignedFrom, level + 1, slices);
+            slices.add(new TimeSlice(granularity, alignedFrom, alignedTo));
+            split(alignedTo, to, level + 1, slices);
+        } else {
+            split(from, to, level + 1, slices);
+        }
+    }
+}
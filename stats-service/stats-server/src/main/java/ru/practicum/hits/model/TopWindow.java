@@ -0,0 +1,36 @@
+package ru.practicum.hits.model;
+
+import ru.practicum.validation.ConstraintViolationException;
+
+// Значение параметра window в /stats/top: скользящее окно из buckets корзин по bucketSeconds секунд.
+// Окно сдвигается на одну корзину, поэтому его фактическая длина - от (buckets - 1) до buckets корзин
+public enum TopWindow {
+    MINUTE(1, 60),
+    HOUR(60, 60),
+    DAY(3600, 24);
+
+    private final long bucketSeconds;
+    private final int buckets;
+
+    TopWindow(long bucketSeconds, int buckets) {
+        this.bucketSeconds = bucketSeconds;
+        this.buckets = buckets;
+    }
+
+    public long getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public static TopWindow from(String value) {
+        return switch (value.toLowerCase()) {
+            case "minute" -> MINUTE;
+            case "hour" -> HOUR;
+            case "day" -> DAY;
+            default -> throw new ConstraintViolationException("Параметр window должен быть minute, hour или day");
+        };
+    }
+}
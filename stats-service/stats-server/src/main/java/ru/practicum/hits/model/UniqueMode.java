@@ -0,0 +1,19 @@
+package ru.practicum.hits.model;
+
+import ru.practicum.validation.ConstraintViolationException;
+
+// Значение параметра unique в /stats
+public enum UniqueMode {
+    NONE,   // unique=false - все хиты
+    EXACT,  // unique=true - точное число уникальных ip
+    APPROX; // unique=approx - оценка числа уникальных ip по скетчам HyperLogLog
+
+    public static UniqueMode from(String value) {
+        return switch (value.toLowerCase()) {
+            case "false" -> NONE;
+            case "true" -> EXACT;
+            case "approx" -> APPROX;
+            default -> throw new ConstraintViolationException("Параметр unique должен быть true, false или approx");
+        };
+    }
+}
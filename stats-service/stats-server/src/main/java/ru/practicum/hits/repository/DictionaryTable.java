@@ -0,0 +1,95 @@
+package ru.practicum.hits.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Таблица-словарь вида (id, значение) с уникальным значением: выдает id строкам, при необходимости добавляя новые.
+// Id словаря не меняются после выдачи, поэтому их можно кэшировать без инвалидации
+class DictionaryTable {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final String insertSql;
+    private final String selectSql;
+    private final int cacheLimit;
+    private final Map<String, Integer> cache = new ConcurrentHashMap<>();
+
+    DictionaryTable(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate,
+                    String table, String column, int cacheLimit) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.insertSql = "INSERT INTO " + table + " (" + column + ") VALUES (?) ON CONFLICT DO NOTHING";
+        this.selectSql = "SELECT id, " + column + " FROM " + table + " WHERE " + column + " IN (:values)";
+        this.cacheLimit = cacheLimit;
+    }
+
+    // Id для всех значений, отсутствующие в словаре значения добавляются
+    Map<String, Integer> resolve(Collection<String> values) {
+        return lookup(values, true);
+    }
+
+    // Id только для уже известных словарю значений
+    Map<String, Integer> find(Collection<String> values) {
+        return lookup(values, false);
+    }
+
+    private Map<String, Integer> lookup(Collection<String> values, boolean insertMissing) {
+        Map<String, Integer> ids = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String value : values) {
+            Integer id = cache.get(value);
+            if (id != null) {
+                ids.put(value, id);
+            } else {
+                missing.add(value);
+            }
+        }
+        if (missing.isEmpty()) {
+            return ids;
+        }
+
+        if (insertMissing) {
+            // Сортировка задает общий порядок блокировок для конкурентных вставок
+            List<String> sorted = new ArrayList<>(missing);
+            sorted.sort(Comparator.naturalOrder());
+            jdbcTemplate.batchUpdate(insertSql, sorted, sorted.size(), (ps, value) -> ps.setString(1, value));
+        }
+        Map<String, Integer> found = new HashMap<>();
+        namedJdbcTemplate.query(selectSql, Map.of("values", missing), rs -> {
+            found.put(rs.getString(2), rs.getInt(1));
+        });
+        ids.putAll(found);
+
+        // Новые id попадают в кэш только после фиксации транзакции, иначе при откате в кэше остался бы несуществующий id
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cacheIds(found);
+                }
+            });
+        } else {
+            cacheIds(found);
+        }
+        return ids;
+    }
+
+    private void cacheIds(Map<String, Integer> ids) {
+        if (cache.size() > cacheLimit) {
+            cache.clear();
+        }
+        cache.putAll(ids);
+    }
+}
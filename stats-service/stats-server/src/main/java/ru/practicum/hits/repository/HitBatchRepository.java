@@ -0,0 +1,11 @@
+package ru.practicum.hits.repository;
+
+import ru.practicum.hits.model.Hit;
+
+import java.util.List;
+
+public interface HitBatchRepository {
+
+    // Сохранение пачки хитов одним JDBC batch, без поштучных save() через EntityManager
+    void insertAll(List<Hit> hits);
+}
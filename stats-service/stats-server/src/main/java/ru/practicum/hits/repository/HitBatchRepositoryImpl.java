@@ -0,0 +1,37 @@
+package ru.practicum.hits.repository;
+
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.hits.mapper.IpAddresses;
+import ru.practicum.hits.model.Hit;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+public class HitBatchRepositoryImpl implements HitBatchRepository {
+
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, timestamp) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public HitBatchRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                  @Value("${stats.hits.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    @Transactional
+    public void insertAll(List<Hit> hits) {
+        // Hibernate не умеет батчить вставки при GenerationType.IDENTITY, поэтому пишем напрямую через JDBC.
+        // Для Postgres драйвер с reWriteBatchedInserts=true склеивает пачку в многострочный INSERT
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getApp().getId());
+            ps.setInt(2, hit.getUri().getId());
+            ps.setBytes(3, IpAddresses.encode(hit.getIp()));
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+}
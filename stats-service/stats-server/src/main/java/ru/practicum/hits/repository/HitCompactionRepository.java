@@ -0,0 +1,58 @@
+package ru.practicum.hits.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+// Граница сжатия хитов и пакетное удаление сжатых сырых данных
+@Repository
+public class HitCompactionRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public HitCompactionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Первые несжатые сутки или пусто, если сжатие еще не выполнялось
+    public Optional<LocalDate> findCompactedBefore() {
+        return jdbcTemplate.queryForList("SELECT compacted_before FROM hit_compaction WHERE id = 1", LocalDate.class)
+                .stream()
+                .findFirst();
+    }
+
+    public void saveCompactedBefore(LocalDate day) {
+        jdbcTemplate.update("INSERT INTO hit_compaction (id, compacted_before) VALUES (1, ?) " +
+                "ON CONFLICT (id) DO UPDATE SET compacted_before = EXCLUDED.compacted_before", day);
+    }
+
+    // Время самого раннего хита или пусто, если хитов нет
+    public Optional<LocalDateTime> findFirstHit() {
+        Timestamp first = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM hits", Timestamp.class);
+        return Optional.ofNullable(first).map(Timestamp::toLocalDateTime);
+    }
+
+    // Время самого раннего хита не раньше from или пусто, если таких хитов нет
+    public Optional<LocalDateTime> findFirstHitFrom(LocalDateTime from) {
+        Timestamp first = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM hits WHERE timestamp >= ?",
+                Timestamp.class, Timestamp.valueOf(from));
+        return Optional.ofNullable(first).map(Timestamp::toLocalDateTime);
+    }
+
+    // Удаляет не больше limit сырых хитов раньше before и возвращает их число. Вне транзакции каждый вызов
+    // фиксируется сам, поэтому блокировки строк держатся только на время одной пачки
+    public int deleteHitsBefore(LocalDateTime before, int limit) {
+        return jdbcTemplate.update("DELETE FROM hits WHERE (id, timestamp) IN " +
+                "(SELECT id, timestamp FROM hits WHERE timestamp < ? LIMIT ?)", Timestamp.valueOf(before), limit);
+    }
+
+    // То же для поминутных и почасовых агрегатов: посуточные остаются единственным источником сжатых суток
+    public int deleteFineRollupsBefore(LocalDateTime before, int limit) {
+        return jdbcTemplate.update("DELETE FROM hit_rollups WHERE ctid IN (SELECT ctid FROM hit_rollups " +
+                "WHERE granularity <> 'DAY' AND bucket_start < ? LIMIT ?)", Timestamp.valueOf(before), limit);
+    }
+}
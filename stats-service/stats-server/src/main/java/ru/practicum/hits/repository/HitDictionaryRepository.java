@@ -0,0 +1,14 @@
+package ru.practicum.hits.repository;
+
+import ru.practicum.hits.model.Hit;
+
+import java.util.List;
+
+public interface HitDictionaryRepository {
+
+    // Проставляет хитам id приложений и uri из словарей hit_apps и hit_uris, добавляя в них новые значения
+    void resolveDictionary(List<Hit> hits);
+
+    // Все значения словаря hit_uris
+    List<String> findAllUris();
+}
@@ -0,0 +1,47 @@
+package ru.practicum.hits.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.hits.model.Hit;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class HitDictionaryRepositoryImpl implements HitDictionaryRepository {
+
+    private static final int CACHE_LIMIT = 100_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DictionaryTable apps;
+    private final DictionaryTable uris;
+
+    public HitDictionaryRepositoryImpl(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.apps = new DictionaryTable(jdbcTemplate, namedJdbcTemplate, "hit_apps", "name", CACHE_LIMIT);
+        this.uris = new DictionaryTable(jdbcTemplate, namedJdbcTemplate, "hit_uris", "uri", CACHE_LIMIT);
+    }
+
+    @Override
+    public void resolveDictionary(List<Hit> hits) {
+        Set<String> appNames = new HashSet<>();
+        Set<String> uriValues = new HashSet<>();
+        for (Hit hit : hits) {
+            appNames.add(hit.getApp().getName());
+            uriValues.add(hit.getUri().getUri());
+        }
+
+        Map<String, Integer> appIds = apps.resolve(appNames);
+        Map<String, Integer> uriIds = uris.resolve(uriValues);
+        for (Hit hit : hits) {
+            hit.getApp().setId(appIds.get(hit.getApp().getName()));
+            hit.getUri().setId(uriIds.get(hit.getUri().getUri()));
+        }
+    }
+
+    @Override
+    public List<String> findAllUris() {
+        return jdbcTemplate.queryForList("SELECT uri FROM hit_uris", String.class);
+    }
+}
@@ -0,0 +1,32 @@
+package ru.practicum.hits.repository;
+
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.HitIpBitmap;
+import ru.practicum.hits.sketch.UniqueIpSet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface HitIpBitmapJdbcRepository {
+
+    // Id словаря для адресов, не являющихся IPv4; отсутствующие адреса добавляются в словарь
+    Map<String, Integer> resolveIpIds(Collection<String> ips);
+
+    // Объединяет переданные множества с хранимыми под блокировкой строк
+    void mergeAll(Map<HitIpBitmap.Key, UniqueIpSet> sets);
+
+    // Суточные множества за [fromDay, toDay) по app+uri
+    Map<AppUri, List<UniqueIpSet>> findDaily(LocalDate fromDay, LocalDate toDay, List<String> uris);
+
+    // Добавляет ip сырых хитов из [from, to) или [from, to] при inclusiveTo
+    void addRawIps(Map<AppUri, UniqueIpSet> sets, LocalDateTime from, LocalDateTime to, boolean inclusiveTo, List<String> uris);
+
+    // Пересчитывает все битмапы по сырым hits
+    void rebuildFromHits();
+
+    // Пересчитывает битмапы суток [fromDay, toDay) по сырым hits
+    void rebuildDays(LocalDate fromDay, LocalDate toDay);
+}
@@ -0,0 +1,231 @@
+package ru.practicum.hits.repository;
+
+import jakarta.transaction.Transactional;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.HitIpBitmap;
+import ru.practicum.hits.mapper.IpAddresses;
+import ru.practicum.hits.sketch.UniqueIpSet;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class HitIpBitmapJdbcRepositoryImpl implements HitIpBitmapJdbcRepository {
+
+    private static final Comparator<HitIpBitmap.Key> KEY_ORDER = Comparator.comparing(HitIpBitmap.Key::getDay)
+            .thenComparing(HitIpBitmap.Key::getApp)
+            .thenComparing(HitIpBitmap.Key::getUri);
+
+    private static final String INSERT_BITMAP = "INSERT INTO hit_ip_bitmaps (app, uri, bucket_day, ipv4, ip_ids) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT (app, uri, bucket_day) DO NOTHING";
+    // Строки блокируются в порядке KEY_ORDER: COLLATE "C" сравнивает строки так же, как String.compareTo
+    private static final String LOCK_BITMAPS = "SELECT app, uri, bucket_day, ipv4, ip_ids FROM hit_ip_bitmaps " +
+            "WHERE (app, uri, bucket_day) IN (:keys) " +
+            "ORDER BY bucket_day, app COLLATE \"C\", uri COLLATE \"C\" FOR UPDATE";
+    private static final String UPDATE_BITMAP = "UPDATE hit_ip_bitmaps SET ipv4 = ?, ip_ids = ? " +
+            "WHERE app = ? AND uri = ? AND bucket_day = ?";
+    private static final int IP_ID_CACHE_LIMIT = 100_000;
+    private static final String LOCK_TABLE = "LOCK TABLE hit_ip_bitmaps IN EXCLUSIVE MODE";
+    private static final int REBUILD_FETCH_SIZE = 10_000;
+    // Ключей в одном запросе блокировки: три параметра на ключ при пределе протокола Postgres в 65535 параметров
+    private static final int LOCK_CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final DictionaryTable ipIds;
+
+    public HitIpBitmapJdbcRepositoryImpl(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.ipIds = new DictionaryTable(jdbcTemplate, namedJdbcTemplate, "hit_ip_ids", "ip", IP_ID_CACHE_LIMIT);
+    }
+
+    @Override
+    public Map<String, Integer> resolveIpIds(Collection<String> ips) {
+        return ipIds.resolve(ips);
+    }
+
+    @Override
+    @Transactional
+    public void mergeAll(Map<HitIpBitmap.Key, UniqueIpSet> sets) {
+        // Аналогично скетчам: пустые строки создаются заранее, затем читаются под блокировкой одним запросом
+        // на LOCK_CHUNK_SIZE ключей в порядке ключей и перезаписываются
+        List<HitIpBitmap.Key> keys = new ArrayList<>(sets.keySet());
+        keys.sort(KEY_ORDER);
+        byte[] empty = new byte[0];
+        jdbcTemplate.batchUpdate(INSERT_BITMAP, keys, keys.size(), (ps, key) -> {
+            ps.setString(1, key.getApp());
+            ps.setString(2, key.getUri());
+            ps.setDate(3, Date.valueOf(key.getDay()));
+            ps.setBytes(4, empty);
+            ps.setBytes(5, empty);
+        });
+
+        List<Object[]> updates = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK_SIZE) {
+            List<HitIpBitmap.Key> chunk = keys.subList(from, Math.min(from + LOCK_CHUNK_SIZE, keys.size()));
+            Map<HitIpBitmap.Key, UniqueIpSet> stored = lockAll(chunk);
+            for (HitIpBitmap.Key key : chunk) {
+                UniqueIpSet merged = stored.getOrDefault(key, new UniqueIpSet());
+                merged.merge(sets.get(key));
+                updates.add(new Object[]{merged.ipv4Bytes(), merged.ipIdsBytes(),
+                        key.getApp(), key.getUri(), Date.valueOf(key.getDay())});
+            }
+        }
+        jdbcTemplate.batchUpdate(UPDATE_BITMAP, updates);
+    }
+
+    private Map<HitIpBitmap.Key, UniqueIpSet> lockAll(List<HitIpBitmap.Key> keys) {
+        List<Object[]> tuples = keys.stream()
+                .map(key -> new Object[]{key.getApp(), key.getUri(), Date.valueOf(key.getDay())})
+                .toList();
+        Map<HitIpBitmap.Key, UniqueIpSet> stored = new HashMap<>();
+        namedJdbcTemplate.query(LOCK_BITMAPS, Map.of("keys", tuples), rs -> {
+            HitIpBitmap.Key key = new HitIpBitmap.Key();
+            key.setApp(rs.getString("app"));
+            key.setUri(rs.getString("uri"));
+            key.setDay(rs.getDate("bucket_day").toLocalDate());
+            stored.put(key, UniqueIpSet.fromBytes(rs.getBytes("ipv4"), rs.getBytes("ip_ids")));
+        });
+        return stored;
+    }
+
+    @Override
+    public Map<AppUri, List<UniqueIpSet>> findDaily(LocalDate fromDay, LocalDate toDay, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("fromDay", fromDay)
+                .addValue("toDay", toDay);
+        String sql = "SELECT app, uri, ipv4, ip_ids FROM hit_ip_bitmaps WHERE bucket_day >= :fromDay AND bucket_day < :toDay";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            sql += " AND uri IN (:uris)";
+        }
+
+        Map<AppUri, List<UniqueIpSet>> daily = new HashMap<>();
+        namedJdbcTemplate.query(sql, params, rs -> {
+            daily.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")), key -> new ArrayList<>())
+                    .add(UniqueIpSet.fromBytes(rs.getBytes("ipv4"), rs.getBytes("ip_ids")));
+        });
+        return daily;
+    }
+
+    @Override
+    public void addRawIps(Map<AppUri, UniqueIpSet> sets, LocalDateTime from, LocalDateTime to,
+                          boolean inclusiveTo, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        String uriFilter = "";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            uriFilter = " AND uri_id IN (SELECT id FROM hit_uris WHERE uri IN (:uris))";
+        }
+        String sql = "SELECT a.name AS app, u.uri, d.ip FROM (SELECT DISTINCT app_id, uri_id, ip FROM hits " +
+                "WHERE timestamp >= :from AND timestamp " + (inclusiveTo ? "<=" : "<") + " :to" + uriFilter + ") d " +
+                "JOIN hit_apps a ON a.id = d.app_id JOIN hit_uris u ON u.id = d.uri_id";
+
+        // Адреса, отличные от IPv4, сопоставляются со словарем одним запросом после чтения хитов
+        Map<AppUri, Set<String>> others = new HashMap<>();
+        namedJdbcTemplate.query(sql, params, rs -> {
+            AppUri key = new AppUri(rs.getString("app"), rs.getString("uri"));
+            byte[] ip = rs.getBytes("ip");
+            long ipv4 = IpAddresses.ipv4(ip);
+            if (ipv4 != IpAddresses.NOT_IPV4) {
+                sets.computeIfAbsent(key, k -> new UniqueIpSet()).addIpv4(ipv4);
+            } else {
+                others.computeIfAbsent(key, k -> new HashSet<>()).add(IpAddresses.decode(ip));
+            }
+        });
+        if (others.isEmpty()) {
+            return;
+        }
+
+        Set<String> all = new HashSet<>();
+        others.values().forEach(all::addAll);
+        Map<String, Integer> ids = ipIds.find(all);
+        others.forEach((key, ips) -> {
+            UniqueIpSet set = sets.computeIfAbsent(key, k -> new UniqueIpSet());
+            for (String ip : ips) {
+                Integer id = ids.get(ip);
+                if (id != null) {
+                    set.addIpId(id);
+                } else {
+                    set.addUnresolved(ip);
+                }
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public void rebuildFromHits() {
+        // Как и при пересчете агрегатов, запись битмапов блокируется до конца пересчета
+        jdbcTemplate.execute(LOCK_TABLE);
+        jdbcTemplate.update("DELETE FROM hit_ip_bitmaps");
+        rebuild("");
+    }
+
+    @Override
+    @Transactional
+    public void rebuildDays(LocalDate fromDay, LocalDate toDay) {
+        jdbcTemplate.execute(LOCK_TABLE);
+        jdbcTemplate.update("DELETE FROM hit_ip_bitmaps WHERE bucket_day >= ? AND bucket_day < ?", fromDay, toDay);
+        rebuild("WHERE h.timestamp >= ? AND h.timestamp < ? ",
+                Timestamp.valueOf(fromDay.atStartOfDay()), Timestamp.valueOf(toDay.atStartOfDay()));
+    }
+
+    private void rebuild(String where, Timestamp... bounds) {
+        // Хиты читаются курсором в порядке суток, в памяти держатся множества только текущих суток
+        Map<HitIpBitmap.Key, Set<String>> day = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement("SELECT a.name AS app, u.uri, CAST(h.timestamp AS DATE) AS bucket_day, h.ip " +
+                    "FROM hits h JOIN hit_apps a ON a.id = h.app_id JOIN hit_uris u ON u.id = h.uri_id " +
+                    where + "ORDER BY bucket_day");
+            for (int i = 0; i < bounds.length; i++) {
+                ps.setTimestamp(i + 1, bounds[i]);
+            }
+            ps.setFetchSize(REBUILD_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            HitIpBitmap.Key key = new HitIpBitmap.Key();
+            key.setApp(rs.getString("app"));
+            key.setUri(rs.getString("uri"));
+            key.setDay(rs.getDate("bucket_day").toLocalDate());
+            if (!day.isEmpty() && !day.keySet().iterator().next().getDay().equals(key.getDay())) {
+                insertAll(day);
+                day.clear();
+            }
+            day.computeIfAbsent(key, k -> new HashSet<>()).add(IpAddresses.decode(rs.getBytes("ip")));
+        });
+        insertAll(day);
+    }
+
+    private void insertAll(Map<HitIpBitmap.Key, Set<String>> ipsByKey) {
+        Set<String> others = new HashSet<>();
+        ipsByKey.values().forEach(ips -> ips.stream()
+                .filter(ip -> IpAddresses.parseIpv4(ip) == IpAddresses.NOT_IPV4)
+                .forEach(others::add));
+        Map<String, Integer> ids = resolveIpIds(others);
+
+        List<Object[]> rows = new ArrayList<>(ipsByKey.size());
+        ipsByKey.forEach((key, ips) -> {
+            UniqueIpSet set = UniqueIpSet.of(ips, ids);
+            rows.add(new Object[]{key.getApp(), key.getUri(), Date.valueOf(key.getDay()),
+                    set.ipv4Bytes(), set.ipIdsBytes()});
+        });
+        jdbcTemplate.batchUpdate("INSERT INTO hit_ip_bitmaps (app, uri, bucket_day, ipv4, ip_ids) VALUES (?, ?, ?, ?, ?)",
+                rows);
+    }
+}
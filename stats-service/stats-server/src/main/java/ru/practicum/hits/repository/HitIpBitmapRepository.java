@@ -0,0 +1,11 @@
+package ru.practicum.hits.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import ru.practicum.hits.model.HitIpBitmap;
+
+public interface HitIpBitmapRepository extends JpaRepository<HitIpBitmap, HitIpBitmap.Key>, HitIpBitmapJdbcRepository {
+
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM hit_ip_bitmaps)", nativeQuery = true)
+    boolean existsAnyBitmap();
+}
@@ -0,0 +1,87 @@
+package ru.practicum.hits.repository;
+
+import jakarta.transaction.Transactional;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Секции таблицы hits. Имена секций подставляются в DDL литералом, поэтому принимаются только вида hits_p<цифры>
+@Repository
+public class HitPartitionRepository {
+
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('([^']+)'\\) TO \\('([^']+)'\\)");
+    private static final Pattern PARTITION_NAME = Pattern.compile("hits_p\\d+");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public HitPartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Секции по диапазонам, без секции по умолчанию, в порядке времени
+    public List<Partition> findRangePartitions() {
+        return jdbcTemplate.query("SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound FROM pg_inherits i " +
+                        "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'hits'::regclass",
+                        (rs, rowNum) -> {
+                            Matcher matcher = RANGE_BOUND.matcher(rs.getString("bound"));
+                            if (!matcher.find()) {
+                                return null;
+                            }
+                            return new Partition(rs.getString("relname"),
+                                    Timestamp.valueOf(matcher.group(1)).toLocalDateTime(),
+                                    Timestamp.valueOf(matcher.group(2)).toLocalDateTime());
+                        }).stream()
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(Partition::from))
+                .toList();
+    }
+
+    // Новая секция собирается отдельной таблицей, в нее переносятся подходящие хиты из секции по умолчанию,
+    // и только затем она присоединяется: иначе присоединение упадет на строках, уже лежащих в hits_default
+    @Transactional
+    public void createPartition(String name, LocalDateTime from, LocalDateTime to) {
+        checkName(name);
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        jdbcTemplate.update("WITH moved AS (DELETE FROM hits_default WHERE timestamp >= ? AND timestamp < ? " +
+                        "RETURNING id, timestamp, app_id, uri_id, ip) " +
+                        "INSERT INTO " + name + " (id, timestamp, app_id, uri_id, ip) SELECT * FROM moved",
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+        jdbcTemplate.execute("ALTER TABLE hits ATTACH PARTITION " + name +
+                " FOR VALUES FROM ('" + Timestamp.valueOf(from) + "') TO ('" + Timestamp.valueOf(to) + "')");
+    }
+
+    @Transactional
+    public void detachPartition(String name, boolean drop) {
+        checkName(name);
+        jdbcTemplate.execute("ALTER TABLE hits DETACH PARTITION " + name);
+        if (drop) {
+            jdbcTemplate.execute("DROP TABLE " + name);
+        }
+    }
+
+    // Хиты старше границы хранения, попавшие в секцию по умолчанию, и производные данные за тот же период
+    @Transactional
+    public void deleteBefore(LocalDateTime cutoff) {
+        Timestamp time = Timestamp.valueOf(cutoff);
+        jdbcTemplate.update("DELETE FROM hits_default WHERE timestamp < ?", time);
+        jdbcTemplate.update("DELETE FROM hit_rollups WHERE bucket_start < ?", time);
+        jdbcTemplate.update("DELETE FROM hit_sketches WHERE bucket_day < ?", cutoff.toLocalDate());
+        jdbcTemplate.update("DELETE FROM hit_ip_bitmaps WHERE bucket_day < ?", cutoff.toLocalDate());
+    }
+
+    private static void checkName(String name) {
+        if (!PARTITION_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Недопустимое имя секции " + name);
+        }
+    }
+
+    public record Partition(String name, LocalDateTime from, LocalDateTime to) {
+    }
+}
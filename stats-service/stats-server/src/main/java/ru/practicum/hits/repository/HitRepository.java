@@ -1,44 +1,101 @@
 package ru.practicum.hits.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import ru.practicum.ViewStatsDto;
 import ru.practicum.hits.model.Hit;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface HitRepository extends JpaRepository<Hit, Long> {
+public interface HitRepository extends JpaRepository<Hit, Long>, HitBatchRepository, HitDictionaryRepository,
+        HitTransferRepository {
 
-    @Query("SELECT new ru.practicum.ViewStatsDto(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
-            "FROM Hit h WHERE h.timestamp BETWEEN :start AND :end AND h.uri IN :uris " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(DISTINCT h.ip) DESC")
+    // Хиты сначала агрегируются по id словарей, названия приложений и uri подставляются уже к готовым строкам
+    // Запросы обходятся колонками покрывающих индексов idx_hit_uri_timestamp и idx_hit_timestamp (миграция V4),
+    // поэтому хиты считаются COUNT(*): COUNT(h) превращается в count(id), а id в индексах нет
+    String UNIQUE_HITS_URIS = "SELECT new ru.practicum.ViewStatsDto(a.name, u.uri, c.hits) FROM " +
+            "(SELECT h.app.id AS appId, h.uri.id AS uriId, COUNT(DISTINCT h.ip) AS hits FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "AND h.uri.id IN (SELECT d.id FROM HitUri d WHERE d.uri IN :uris) " +
+            "GROUP BY h.app.id, h.uri.id) c " +
+            "JOIN HitApp a ON a.id = c.appId JOIN HitUri u ON u.id = c.uriId " +
+            "ORDER BY c.hits DESC";
+
+    String UNIQUE_HITS = "SELECT new ru.practicum.ViewStatsDto(a.name, u.uri, c.hits) FROM " +
+            "(SELECT h.app.id AS appId, h.uri.id AS uriId, COUNT(DISTINCT h.ip) AS hits FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY h.app.id, h.uri.id) c " +
+            "JOIN HitApp a ON a.id = c.appId JOIN HitUri u ON u.id = c.uriId " +
+            "ORDER BY c.hits DESC";
+
+    String HITS_URIS = "SELECT new ru.practicum.ViewStatsDto(a.name, u.uri, c.hits) FROM " +
+            "(SELECT h.app.id AS appId, h.uri.id AS uriId, COUNT(*) AS hits FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "AND h.uri.id IN (SELECT d.id FROM HitUri d WHERE d.uri IN :uris) " +
+            "GROUP BY h.app.id, h.uri.id) c " +
+            "JOIN HitApp a ON a.id = c.appId JOIN HitUri u ON u.id = c.uriId " +
+            "ORDER BY c.hits DESC";
+
+    String HITS = "SELECT new ru.practicum.ViewStatsDto(a.name, u.uri, c.hits) FROM " +
+            "(SELECT h.app.id AS appId, h.uri.id AS uriId, COUNT(*) AS hits FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY h.app.id, h.uri.id) c " +
+            "JOIN HitApp a ON a.id = c.appId JOIN HitUri u ON u.id = c.uriId " +
+            "ORDER BY c.hits DESC";
+
+    // Строк, которые драйвер Postgres забирает из курсора за раз при потоковом чтении
+    String STREAM_FETCH_SIZE = "1000";
+
+    @Query(UNIQUE_HITS_URIS)
     List<ViewStatsDto> findUniqueHitsUris(@Param("start") LocalDateTime start,
                                           @Param("end") LocalDateTime end,
                                           @Param("uris") List<String> uris);
 
-    @Query("SELECT new ru.practicum.ViewStatsDto(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
-            "FROM Hit h WHERE h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(DISTINCT h.ip) DESC")
+    @Query(UNIQUE_HITS)
     List<ViewStatsDto> findUniqueHits(@Param("start") LocalDateTime start,
                                       @Param("end") LocalDateTime end);
 
-    @Query("SELECT new ru.practicum.ViewStatsDto(h.app, h.uri, COUNT(h)) " +
-            "FROM Hit h WHERE h.timestamp BETWEEN :start AND :end AND h.uri IN :uris " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h) DESC")
+    @Query(HITS_URIS)
     List<ViewStatsDto> findHitsUris(@Param("start") LocalDateTime start,
                                     @Param("end") LocalDateTime end,
                                     @Param("uris") List<String> uris);
 
-    @Query("SELECT new ru.practicum.ViewStatsDto(h.app, h.uri, COUNT(h)) " +
-            "FROM Hit h WHERE h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h) DESC")
+    @Query(HITS)
     List<ViewStatsDto> findHits(@Param("start") LocalDateTime start,
                                 @Param("end") LocalDateTime end);
 
+    // Потоковые варианты тех же запросов: строки читаются курсором по мере потребления.
+    // Поток нужно закрыть, вызывать только внутри транзакции - иначе драйвер Postgres прочитает весь результат сразу
+    @Query(UNIQUE_HITS_URIS)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    Stream<ViewStatsDto> streamUniqueHitsUris(@Param("start") LocalDateTime start,
+                                              @Param("end") LocalDateTime end,
+                                              @Param("uris") List<String> uris);
+
+    @Query(UNIQUE_HITS)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    Stream<ViewStatsDto> streamUniqueHits(@Param("start") LocalDateTime start,
+                                          @Param("end") LocalDateTime end);
+
+    @Query(HITS_URIS)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    Stream<ViewStatsDto> streamHitsUris(@Param("start") LocalDateTime start,
+                                        @Param("end") LocalDateTime end,
+                                        @Param("uris") List<String> uris);
+
+    @Query(HITS)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    Stream<ViewStatsDto> streamHits(@Param("start") LocalDateTime start,
+                                    @Param("end") LocalDateTime end);
+
+    // В отличие от count() не обходит таблицу: достаточно найти одну строку
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM hits)", nativeQuery = true)
+    boolean existsAnyHit();
+
 }
@@ -0,0 +1,35 @@
+package ru.practicum.hits.repository;
+
+import ru.practicum.HistogramDto;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.HitRollup;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.TimeSlice;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface HitRollupJdbcRepository {
+
+    // Прибавляет счетчики к корзинам, создавая недостающие
+    void increment(List<HitRollup> deltas);
+
+    // Полностью пересчитывает корзины по сырым hits
+    void rebuildFromHits();
+
+    // Пересчитывает корзины суток [fromDay, toDay) по сырым hits
+    void rebuildDays(LocalDate fromDay, LocalDate toDay);
+
+    // Статистика без учета уникальности: сумма по корзинам плюс сырые края диапазона, конец диапазона включительно
+    List<ViewStatsDto> findStats(List<TimeSlice> slices, LocalDateTime end, List<String> uris);
+
+    // То же, но строки читаются курсором и передаются consumer по одной. Вызывать внутри транзакции
+    void streamStats(List<TimeSlice> slices, LocalDateTime end, List<String> uris, Consumer<ViewStatsDto> consumer);
+
+    // Гистограмма по интервалам interval: корзины не крупнее interval и сырые края, ряды по app+uri.
+    // При unique считается COUNT(DISTINCT ip) по сырым hits, поэтому кусок диапазона должен быть один и сырой
+    List<HistogramDto> findHistogram(List<TimeSlice> slices, LocalDateTime end, List<String> uris,
+                                     RollupGranularity interval, boolean unique);
+}
@@ -0,0 +1,213 @@
+package ru.practicum.hits.repository;
+
+import jakarta.transaction.Transactional;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.HistogramBucketDto;
+import ru.practicum.HistogramDto;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.HitRollup;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.TimeSlice;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class HitRollupJdbcRepositoryImpl implements HitRollupJdbcRepository {
+
+    private static final String UPSERT_ROLLUP = "INSERT INTO hit_rollups (granularity, bucket_start, app, uri, hits) " +
+            "VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (granularity, bucket_start, app, uri) DO UPDATE SET hits = hit_rollups.hits + EXCLUDED.hits";
+
+    // Поле date_trunc подставляется литералом: с параметром Postgres не считает выражения SELECT и GROUP BY одинаковыми
+    private static final String REBUILD_ROLLUP = "INSERT INTO hit_rollups (granularity, bucket_start, app, uri, hits) " +
+            "SELECT ?, c.bucket_start, a.name, u.uri, c.hits FROM (SELECT date_trunc('%s', timestamp) AS bucket_start, " +
+            "app_id, uri_id, COUNT(*) AS hits FROM hits %s GROUP BY date_trunc('%s', timestamp), app_id, uri_id) c " +
+            "JOIN hit_apps a ON a.id = c.app_id JOIN hit_uris u ON u.id = c.uri_id";
+
+    private static final String LOCK_ROLLUPS = "LOCK TABLE hit_rollups IN EXCLUSIVE MODE";
+
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    private static final RowMapper<ViewStatsDto> STATS_MAPPER = (rs, rowNum) -> ViewStatsDto.builder()
+            .app(rs.getString("app"))
+            .uri(rs.getString("uri"))
+            .hits(rs.getLong("hits"))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    // Шаблон с fetch size: внутри транзакции драйвер Postgres читает результат курсором, а не целиком
+    private final NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    public HitRollupJdbcRepositoryImpl(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursorTemplate.setFetchSize(STREAM_FETCH_SIZE);
+        this.streamingJdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+    }
+
+    @Override
+    public void increment(List<HitRollup> deltas) {
+        jdbcTemplate.batchUpdate(UPSERT_ROLLUP, deltas, deltas.size(), (ps, rollup) -> {
+            ps.setString(1, rollup.getGranularity().name());
+            ps.setTimestamp(2, Timestamp.valueOf(rollup.getBucketStart()));
+            ps.setString(3, rollup.getApp());
+            ps.setString(4, rollup.getUri());
+            ps.setLong(5, rollup.getHits());
+        });
+    }
+
+    // Запись в hit_rollups блокируется до конца пересчета: иначе слушатель записи параллельно прибавит к корзинам
+    // хиты, которые пересчет тоже увидит, или создаст строку раньше него. Чтение /stats не блокируется
+    @Override
+    @Transactional
+    public void rebuildFromHits() {
+        jdbcTemplate.execute(LOCK_ROLLUPS);
+        jdbcTemplate.update("DELETE FROM hit_rollups");
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            String field = granularity.name().toLowerCase();
+            jdbcTemplate.update(REBUILD_ROLLUP.formatted(field, "", field), granularity.name());
+        }
+    }
+
+    @Override
+    @Transactional
+    public void rebuildDays(LocalDate fromDay, LocalDate toDay) {
+        jdbcTemplate.execute(LOCK_ROLLUPS);
+        Timestamp from = Timestamp.valueOf(fromDay.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(toDay.atStartOfDay());
+        // Границы выровнены по суткам, поэтому все корзины внутри них пересчитываются целиком
+        jdbcTemplate.update("DELETE FROM hit_rollups WHERE bucket_start >= ? AND bucket_start < ?", from, to);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            String field = granularity.name().toLowerCase();
+            jdbcTemplate.update(REBUILD_ROLLUP.formatted(field, "WHERE timestamp >= ? AND timestamp < ?", field),
+                    granularity.name(), from, to);
+        }
+    }
+
+    @Override
+    public List<ViewStatsDto> findStats(List<TimeSlice> slices, LocalDateTime end, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        return namedJdbcTemplate.query(statsSql(slices, end, uris, params), params, STATS_MAPPER);
+    }
+
+    @Override
+    public void streamStats(List<TimeSlice> slices, LocalDateTime end, List<String> uris,
+                            Consumer<ViewStatsDto> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        streamingJdbcTemplate.query(statsSql(slices, end, uris, params), params,
+                rs -> {
+                    consumer.accept(STATS_MAPPER.mapRow(rs, 0));
+                });
+    }
+
+    @Override
+    public List<HistogramDto> findHistogram(List<TimeSlice> slices, LocalDateTime end, List<String> uris,
+                                            RollupGranularity interval, boolean unique) {
+        if (unique && (slices.size() != 1 || !slices.get(0).isRaw())) {
+            throw new IllegalArgumentException("Уникальные ip в гистограмме считаются только по одному сырому куску");
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        List<HistogramDto> histogram = new ArrayList<>();
+        // Строки упорядочены по app, uri и интервалу, поэтому ряд собирается, пока не сменится app+uri
+        namedJdbcTemplate.query(histogramSql(slices, end, uris, interval, unique, params), params, rs -> {
+            String app = rs.getString("app");
+            String uri = rs.getString("uri");
+            HistogramDto series = histogram.isEmpty() ? null : histogram.get(histogram.size() - 1);
+            if (series == null || !series.getApp().equals(app) || !series.getUri().equals(uri)) {
+                series = HistogramDto.builder().app(app).uri(uri).buckets(new ArrayList<>()).build();
+                histogram.add(series);
+            }
+            series.getBuckets().add(HistogramBucketDto.builder()
+                    .start(rs.getTimestamp("bucket").toLocalDateTime())
+                    .hits(rs.getLong("hits"))
+                    .build());
+        });
+        return histogram;
+    }
+
+    // Как statsSql, но каждый кусок группируется еще и по началу интервала. Поле date_trunc подставляется литералом
+    private static String histogramSql(List<TimeSlice> slices, LocalDateTime end, List<String> uris,
+                                       RollupGranularity interval, boolean unique, MapSqlParameterSource params) {
+        String field = interval.name().toLowerCase();
+        String uriFilter = "";
+        String rawUriFilter = "";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            uriFilter = " AND uri IN (:uris)";
+            rawUriFilter = " AND uri_id IN (SELECT id FROM hit_uris WHERE uri IN (:uris))";
+        }
+
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < slices.size(); i++) {
+            TimeSlice slice = slices.get(i);
+            params.addValue("from" + i, slice.from());
+            if (slice.isRaw()) {
+                boolean last = i == slices.size() - 1;
+                params.addValue("to" + i, last ? end : slice.to());
+                String bucket = "date_trunc('" + field + "', timestamp)";
+                parts.add("SELECT c.bucket, a.name AS app, u.uri, c.hits FROM (SELECT " + bucket + " AS bucket, " +
+                        "app_id, uri_id, " + (unique ? "COUNT(DISTINCT ip)" : "COUNT(*)") + " AS hits FROM hits " +
+                        "WHERE timestamp >= :from" + i + " AND timestamp " + (last ? "<= :to" : "< :to") + i +
+                        rawUriFilter + " GROUP BY " + bucket + ", app_id, uri_id) c " +
+                        "JOIN hit_apps a ON a.id = c.app_id JOIN hit_uris u ON u.id = c.uri_id");
+            } else {
+                params.addValue("granularity" + i, slice.granularity().name());
+                params.addValue("to" + i, slice.to());
+                String bucket = "date_trunc('" + field + "', bucket_start)";
+                parts.add("SELECT " + bucket + " AS bucket, app, uri, SUM(hits) AS hits FROM hit_rollups " +
+                        "WHERE granularity = :granularity" + i +
+                        " AND bucket_start >= :from" + i + " AND bucket_start < :to" + i +
+                        uriFilter + " GROUP BY " + bucket + ", app, uri");
+            }
+        }
+
+        return "SELECT bucket, app, uri, SUM(hits) AS hits FROM (" + String.join(" UNION ALL ", parts) + ") slices " +
+                "GROUP BY bucket, app, uri ORDER BY app, uri, bucket";
+    }
+
+    private static String statsSql(List<TimeSlice> slices, LocalDateTime end, List<String> uris,
+                                   MapSqlParameterSource params) {
+        String uriFilter = "";
+        String rawUriFilter = "";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            uriFilter = " AND uri IN (:uris)";
+            rawUriFilter = " AND uri_id IN (SELECT id FROM hit_uris WHERE uri IN (:uris))";
+        }
+
+        // Каждый кусок диапазона дает частичные суммы по app+uri, которые складываются одним внешним GROUP BY
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < slices.size(); i++) {
+            TimeSlice slice = slices.get(i);
+            params.addValue("from" + i, slice.from());
+            if (slice.isRaw()) {
+                boolean last = i == slices.size() - 1;
+                params.addValue("to" + i, last ? end : slice.to());
+                parts.add("SELECT a.name AS app, u.uri, c.hits FROM (SELECT app_id, uri_id, COUNT(*) AS hits FROM hits " +
+                        "WHERE timestamp >= :from" + i + " AND timestamp " + (last ? "<= :to" : "< :to") + i +
+                        rawUriFilter + " GROUP BY app_id, uri_id) c " +
+                        "JOIN hit_apps a ON a.id = c.app_id JOIN hit_uris u ON u.id = c.uri_id");
+            } else {
+                params.addValue("granularity" + i, slice.granularity().name());
+                params.addValue("to" + i, slice.to());
+                parts.add("SELECT app, uri, SUM(hits) AS hits FROM hit_rollups " +
+                        "WHERE granularity = :granularity" + i +
+                        " AND bucket_start >= :from" + i + " AND bucket_start < :to" + i +
+                        uriFilter + " GROUP BY app, uri");
+            }
+        }
+
+        return "SELECT app, uri, SUM(hits) AS hits FROM (" + String.join(" UNION ALL ", parts) + ") slices " +
+                "GROUP BY app, uri ORDER BY SUM(hits) DESC";
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.hits.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import ru.practicum.hits.model.HitRollup;
+
+public interface HitRollupRepository extends JpaRepository<HitRollup, HitRollup.Key>, HitRollupJdbcRepository {
+
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM hit_rollups)", nativeQuery = true)
+    boolean existsAnyRollup();
+}
@@ -0,0 +1,35 @@
+package ru.practicum.hits.repository;
+
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.HitSketch;
+import ru.practicum.hits.sketch.HyperLogLog;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public interface HitSketchJdbcRepository {
+
+    // Объединяет переданные скетчи с хранимыми под блокировкой строк
+    void mergeAll(Map<HitSketch.Key, HyperLogLog> sketches);
+
+    // Объединение суточных скетчей за [fromDay, toDay) по app+uri
+    Map<AppUri, HyperLogLog> findMerged(LocalDate fromDay, LocalDate toDay, List<String> uris);
+
+    // Добавляет в скетчи ip сырых хитов из [from, to) или [from, to] при inclusiveTo
+    void addRawIps(Map<AppUri, HyperLogLog> sketches, int precision,
+                   LocalDateTime from, LocalDateTime to, boolean inclusiveTo, List<String> uris);
+
+    // Пересчитывает все скетчи по сырым hits с заданной точностью
+    void rebuildFromHits(int precision);
+
+    // Пересчитывает скетчи суток [fromDay, toDay) по сырым hits
+    void rebuildDays(int precision, LocalDate fromDay, LocalDate toDay);
+
+    // Размер любого хранимого скетча в байтах или null, если скетчей нет
+    Integer findAnySketchSize();
+
+    // Есть ли скетчи за сутки, сырых хитов которых уже нет (сутки сжаты): такие скетчи пересчитать нельзя
+    boolean hasDaysWithoutHits();
+}
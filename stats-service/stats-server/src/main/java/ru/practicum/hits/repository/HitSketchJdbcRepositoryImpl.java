@@ -0,0 +1,209 @@
+package ru.practicum.hits.repository;
+
+import jakarta.transaction.Transactional;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.hits.mapper.IpAddresses;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.HitSketch;
+import ru.practicum.hits.sketch.HyperLogLog;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class HitSketchJdbcRepositoryImpl implements HitSketchJdbcRepository {
+
+    private static final Comparator<HitSketch.Key> KEY_ORDER = Comparator.comparing(HitSketch.Key::getDay)
+            .thenComparing(HitSketch.Key::getApp)
+            .thenComparing(HitSketch.Key::getUri);
+
+    private static final String INSERT_SKETCH = "INSERT INTO hit_sketches (app, uri, bucket_day, sketch) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (app, uri, bucket_day) DO NOTHING";
+    // Строки блокируются в порядке KEY_ORDER: COLLATE "C" сравнивает строки так же, как String.compareTo
+    private static final String LOCK_SKETCHES = "SELECT app, uri, bucket_day, sketch FROM hit_sketches " +
+            "WHERE (app, uri, bucket_day) IN (:keys) " +
+            "ORDER BY bucket_day, app COLLATE \"C\", uri COLLATE \"C\" FOR UPDATE";
+    private static final String UPDATE_SKETCH = "UPDATE hit_sketches SET sketch = ? WHERE app = ? AND uri = ? AND bucket_day = ?";
+    private static final String LOCK_TABLE = "LOCK TABLE hit_sketches IN EXCLUSIVE MODE";
+    private static final int REBUILD_FETCH_SIZE = 10_000;
+    // Ключей в одном запросе блокировки: три параметра на ключ при пределе протокола Postgres в 65535 параметров
+    private static final int LOCK_CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public HitSketchJdbcRepositoryImpl(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public void mergeAll(Map<HitSketch.Key, HyperLogLog> sketches) {
+        // Скетч нельзя сложить средствами SQL, поэтому строки читаются под блокировкой и перезаписываются объединением.
+        // Отсутствующие строки сначала создаются пустыми, чтобы параллельные вставки не конфликтовали.
+        // Блокировка берется одним запросом на LOCK_CHUNK_SIZE ключей и всегда в порядке ключей,
+        // чтобы параллельные сбросы не ждали друг друга по кругу
+        List<HitSketch.Key> keys = new ArrayList<>(sketches.keySet());
+        keys.sort(KEY_ORDER);
+        byte[] empty = new byte[0];
+        jdbcTemplate.batchUpdate(INSERT_SKETCH, keys, keys.size(), (ps, key) -> {
+            ps.setString(1, key.getApp());
+            ps.setString(2, key.getUri());
+            ps.setDate(3, Date.valueOf(key.getDay()));
+            ps.setBytes(4, empty);
+        });
+
+        List<Object[]> updates = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK_SIZE) {
+            List<HitSketch.Key> chunk = keys.subList(from, Math.min(from + LOCK_CHUNK_SIZE, keys.size()));
+            Map<HitSketch.Key, byte[]> stored = lockAll(chunk);
+            for (HitSketch.Key key : chunk) {
+                byte[] bytes = stored.get(key);
+                HyperLogLog merged = sketches.get(key);
+                if (bytes != null && bytes.length > 0) {
+                    HyperLogLog current = HyperLogLog.fromBytes(bytes);
+                    current.merge(merged);
+                    merged = current;
+                }
+                updates.add(new Object[]{merged.toBytes(), key.getApp(), key.getUri(), Date.valueOf(key.getDay())});
+            }
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SKETCH, updates);
+    }
+
+    private Map<HitSketch.Key, byte[]> lockAll(List<HitSketch.Key> keys) {
+        List<Object[]> tuples = keys.stream()
+                .map(key -> new Object[]{key.getApp(), key.getUri(), Date.valueOf(key.getDay())})
+                .toList();
+        Map<HitSketch.Key, byte[]> stored = new HashMap<>();
+        namedJdbcTemplate.query(LOCK_SKETCHES, Map.of("keys", tuples), rs -> {
+            HitSketch.Key key = new HitSketch.Key();
+            key.setApp(rs.getString("app"));
+            key.setUri(rs.getString("uri"));
+            key.setDay(rs.getDate("bucket_day").toLocalDate());
+            stored.put(key, rs.getBytes("sketch"));
+        });
+        return stored;
+    }
+
+    @Override
+    public Map<AppUri, HyperLogLog> findMerged(LocalDate fromDay, LocalDate toDay, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("fromDay", fromDay)
+                .addValue("toDay", toDay);
+        String sql = "SELECT app, uri, sketch FROM hit_sketches WHERE bucket_day >= :fromDay AND bucket_day < :toDay";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            sql += " AND uri IN (:uris)";
+        }
+
+        Map<AppUri, HyperLogLog> merged = new HashMap<>();
+        namedJdbcTemplate.query(sql, params, rs -> {
+            byte[] bytes = rs.getBytes("sketch");
+            if (bytes.length == 0) {
+                return;
+            }
+            HyperLogLog sketch = HyperLogLog.fromBytes(bytes);
+            merged.merge(new AppUri(rs.getString("app"), rs.getString("uri")), sketch, (left, right) -> {
+                left.merge(right);
+                return left;
+            });
+        });
+        return merged;
+    }
+
+    @Override
+    public void addRawIps(Map<AppUri, HyperLogLog> sketches, int precision,
+                          LocalDateTime from, LocalDateTime to, boolean inclusiveTo, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        String uriFilter = "";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            uriFilter = " AND uri_id IN (SELECT id FROM hit_uris WHERE uri IN (:uris))";
+        }
+        String sql = "SELECT a.name AS app, u.uri, d.ip FROM (SELECT DISTINCT app_id, uri_id, ip FROM hits " +
+                "WHERE timestamp >= :from AND timestamp " + (inclusiveTo ? "<=" : "<") + " :to" + uriFilter + ") d " +
+                "JOIN hit_apps a ON a.id = d.app_id JOIN hit_uris u ON u.id = d.uri_id";
+
+        namedJdbcTemplate.query(sql, params, rs -> {
+            sketches.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")), key -> new HyperLogLog(precision))
+                    .add(IpAddresses.decode(rs.getBytes("ip")));
+        });
+    }
+
+    @Override
+    @Transactional
+    public void rebuildFromHits(int precision) {
+        // Как и при пересчете агрегатов, запись скетчей блокируется до конца пересчета
+        jdbcTemplate.execute(LOCK_TABLE);
+        jdbcTemplate.update("DELETE FROM hit_sketches");
+        rebuild(precision, "");
+    }
+
+    @Override
+    @Transactional
+    public void rebuildDays(int precision, LocalDate fromDay, LocalDate toDay) {
+        jdbcTemplate.execute(LOCK_TABLE);
+        jdbcTemplate.update("DELETE FROM hit_sketches WHERE bucket_day >= ? AND bucket_day < ?", fromDay, toDay);
+        rebuild(precision, "WHERE h.timestamp >= ? AND h.timestamp < ? ",
+                Timestamp.valueOf(fromDay.atStartOfDay()), Timestamp.valueOf(toDay.atStartOfDay()));
+    }
+
+    private void rebuild(int precision, String where, Timestamp... bounds) {
+        // Хиты читаются курсором в порядке суток, в памяти держатся скетчи только текущих суток
+        Map<HitSketch.Key, HyperLogLog> day = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement("SELECT a.name AS app, u.uri, CAST(h.timestamp AS DATE) AS bucket_day, h.ip " +
+                    "FROM hits h JOIN hit_apps a ON a.id = h.app_id JOIN hit_uris u ON u.id = h.uri_id " +
+                    where + "ORDER BY bucket_day");
+            for (int i = 0; i < bounds.length; i++) {
+                ps.setTimestamp(i + 1, bounds[i]);
+            }
+            ps.setFetchSize(REBUILD_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            HitSketch.Key key = new HitSketch.Key();
+            key.setApp(rs.getString("app"));
+            key.setUri(rs.getString("uri"));
+            key.setDay(rs.getDate("bucket_day").toLocalDate());
+            if (!day.isEmpty() && !day.keySet().iterator().next().getDay().equals(key.getDay())) {
+                insertAll(day);
+                day.clear();
+            }
+            day.computeIfAbsent(key, k -> new HyperLogLog(precision)).add(IpAddresses.decode(rs.getBytes("ip")));
+        });
+        insertAll(day);
+    }
+
+    @Override
+    public Integer findAnySketchSize() {
+        List<Integer> sizes = jdbcTemplate.queryForList(
+                "SELECT LENGTH(sketch) FROM hit_sketches WHERE LENGTH(sketch) > 0 LIMIT 1", Integer.class);
+        return sizes.isEmpty() ? null : sizes.get(0);
+    }
+
+    @Override
+    public boolean hasDaysWithoutHits() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " +
+                "(SELECT DISTINCT bucket_day FROM hit_sketches) s WHERE NOT EXISTS (SELECT 1 FROM hits h " +
+                "WHERE h.timestamp >= s.bucket_day AND h.timestamp < s.bucket_day + 1))", Boolean.class));
+    }
+
+    private void insertAll(Map<HitSketch.Key, HyperLogLog> sketches) {
+        List<Object[]> rows = new ArrayList<>(sketches.size());
+        sketches.forEach((key, sketch) -> rows.add(new Object[]{
+                key.getApp(), key.getUri(), Date.valueOf(key.getDay()), sketch.toBytes()}));
+        jdbcTemplate.batchUpdate("INSERT INTO hit_sketches (app, uri, bucket_day, sketch) VALUES (?, ?, ?, ?)", rows);
+    }
+}
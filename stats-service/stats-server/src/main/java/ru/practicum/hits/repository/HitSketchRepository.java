@@ -0,0 +1,7 @@
+package ru.practicum.hits.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import ru.practicum.hits.model.HitSketch;
+
+public interface HitSketchRepository extends JpaRepository<HitSketch, HitSketch.Key>, HitSketchJdbcRepository {
+}
@@ -0,0 +1,19 @@
+package ru.practicum.hits.repository;
+
+import ru.practicum.hits.model.Hit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface HitTransferRepository {
+
+    // Запись пачки хитов с уже выданными id словарей одной командой COPY, без разбора INSERT на каждую строку
+    void copyAll(List<Hit> hits);
+
+    // Хиты из [start, end] читаются курсором и передаются consumer по одному. Вызывать внутри транзакции
+    void streamRange(LocalDateTime start, LocalDateTime end, Consumer<Hit> consumer);
+
+    // Обновляет статистику планировщика по hits после массовой загрузки
+    void analyzeHits();
+}
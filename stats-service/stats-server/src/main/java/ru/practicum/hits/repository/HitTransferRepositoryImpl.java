@@ -0,0 +1,88 @@
+package ru.practicum.hits.repository;
+
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import ru.practicum.hits.mapper.IpAddresses;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.HitApp;
+import ru.practicum.hits.model.HitUri;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class HitTransferRepositoryImpl implements HitTransferRepository {
+
+    private static final String COPY_HITS = "COPY hits (timestamp, app_id, uri_id, ip) FROM STDIN";
+    private static final String SELECT_RANGE = "SELECT a.name AS app, u.uri, h.ip, h.timestamp " +
+            "FROM hits h JOIN hit_apps a ON a.id = h.app_id JOIN hit_uris u ON u.id = h.uri_id " +
+            "WHERE h.timestamp >= ? AND h.timestamp <= ?";
+    private static final int EXPORT_FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public HitTransferRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Строки в текстовом формате COPY: поля через табуляцию, bytea в виде \\x<hex>. Значения полей не содержат
+    // табуляций и переводов строк: это id, метка времени и шестнадцатеричная строка
+    @Override
+    public void copyAll(List<Hit> hits) {
+        HexFormat hex = HexFormat.of();
+        StringBuilder rows = new StringBuilder(hits.size() * 64);
+        for (Hit hit : hits) {
+            rows.append(hit.getTimestamp()).append('\t')
+                    .append(hit.getApp().getId()).append('\t')
+                    .append(hit.getUri().getId()).append('\t')
+                    .append("\\\\x").append(hex.formatHex(IpAddresses.encode(hit.getIp()))).append('\n');
+        }
+
+        // Соединение берется из текущей транзакции, чтобы COPY откатывался вместе с остальным импортом
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            connection.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn(COPY_HITS, new ByteArrayInputStream(rows.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Ошибка записи хитов командой COPY", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    @Override
+    public void streamRange(LocalDateTime start, LocalDateTime end, Consumer<Hit> consumer) {
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(SELECT_RANGE);
+            ps.setTimestamp(1, Timestamp.valueOf(start));
+            ps.setTimestamp(2, Timestamp.valueOf(end));
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            Hit hit = new Hit();
+            hit.setApp(new HitApp(rs.getString("app")));
+            hit.setUri(new HitUri(rs.getString("uri")));
+            hit.setIp(IpAddresses.decode(rs.getBytes("ip")));
+            hit.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+            consumer.accept(hit);
+        });
+    }
+
+    @Override
+    public void analyzeHits() {
+        jdbcTemplate.execute("ANALYZE hits");
+    }
+}
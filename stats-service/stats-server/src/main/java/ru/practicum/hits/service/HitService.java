@@ -1,15 +1,38 @@
 package ru.practicum.hits.service;
 
+import ru.practicum.HistogramDto;
 import ru.practicum.HitDto;
+import ru.practicum.LiveHitsDto;
 import ru.practicum.NewHitRequest;
+import ru.practicum.TopHitsDto;
 import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.TopWindow;
+import ru.practicum.hits.model.UniqueMode;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface HitService {
 
     HitDto addHit(NewHitRequest request);
 
-    List<ViewStatsDto> getStats(LocalDateTime startDate, LocalDateTime endDate, List<String> uris, boolean unique);
+    void addHits(List<NewHitRequest> requests);
+
+    List<ViewStatsDto> getStats(LocalDateTime startDate, LocalDateTime endDate, List<String> uris, UniqueMode unique);
+
+    // Потоковая выдача статистики: строки передаются consumer по мере чтения из хранилища
+    void streamStats(LocalDateTime startDate, LocalDateTime endDate, List<String> uris, UniqueMode unique,
+                     Consumer<ViewStatsDto> consumer);
+
+    // Число хитов по интервалам interval для каждого uri за один запрос к хранилищу
+    List<HistogramDto> getHistogram(LocalDateTime startDate, LocalDateTime endDate, List<String> uris,
+                                    RollupGranularity interval, UniqueMode unique);
+
+    // Самые посещаемые uri за скользящее окно, по оценкам в памяти
+    TopHitsDto getTopHits(TopWindow window, int n);
+
+    // Число хитов uri за последнюю минуту, пять минут и час, по счетчикам в памяти
+    List<LiveHitsDto> getLiveHits(List<String> uris, int n);
 }
@@ -1,18 +1,38 @@
 package ru.practicum.hits.service;
 
 
-import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import ru.practicum.HistogramDto;
 import ru.practicum.HitDto;
+import ru.practicum.LiveHitsDto;
 import ru.practicum.NewHitRequest;
+import ru.practicum.TopHitsDto;
 import ru.practicum.ViewStatsDto;
-import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.cache.StatsQueryCache;
+import ru.practicum.hits.index.UriPrefixIndex;
+import ru.practicum.hits.ingest.HitStoredListener;
+import ru.practicum.hits.ingest.HitWriteBuffer;
+import ru.practicum.hits.ingest.LiveHitsTracker;
+import ru.practicum.hits.ingest.TopHitsTracker;
+import ru.practicum.hits.mapper.HitMapper;
 import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.TopWindow;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.store.HitStore;
+import ru.practicum.validation.ConstraintViolationException;
 
 import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static ru.practicum.hits.mapper.HitMapper.mapToHit;
 import static ru.practicum.hits.mapper.HitMapper.mapToHitDto;
@@ -21,28 +41,224 @@ import static ru.practicum.hits.mapper.HitMapper.mapToHitDto;
 @Service
 public class HitServiceImpl implements HitService {
 
-    private final HitRepository hitRepository;
+    private final HitStore hitStore;
+    // Присутствует только при stats.ingest.mode=async
+    private final HitWriteBuffer writeBuffer;
+    // Присутствует только при stats.cache.enabled=true
+    private final StatsQueryCache statsCache;
+    // Присутствует только при stats.top.enabled=true
+    private final TopHitsTracker topHitsTracker;
+    // Присутствует только при stats.live.enabled=true
+    private final LiveHitsTracker liveHitsTracker;
+    // Присутствует только при stats.uri-prefix.enabled=true
+    private final UriPrefixIndex uriPrefixIndex;
+    // Уведомляются о записанных хитах в синхронном режиме; в асинхронном их вызывает буфер записи
+    private final List<HitStoredListener> storedListeners;
+    private final long histogramMaxBuckets;
 
     @Autowired
-    public HitServiceImpl(HitRepository hitRepository) {
-        this.hitRepository = hitRepository;
+    public HitServiceImpl(HitStore hitStore, ObjectProvider<HitWriteBuffer> writeBuffer,
+                          ObjectProvider<StatsQueryCache> statsCache, ObjectProvider<TopHitsTracker> topHitsTracker,
+                          ObjectProvider<LiveHitsTracker> liveHitsTracker, ObjectProvider<UriPrefixIndex> uriPrefixIndex,
+                          List<HitStoredListener> storedListeners,
+                          @Value("${stats.histogram.max-buckets:10000}") long histogramMaxBuckets) {
+        this.hitStore = hitStore;
+        this.writeBuffer = writeBuffer.getIfAvailable();
+        this.statsCache = statsCache.getIfAvailable();
+        this.topHitsTracker = topHitsTracker.getIfAvailable();
+        this.liveHitsTracker = liveHitsTracker.getIfAvailable();
+        this.uriPrefixIndex = uriPrefixIndex.getIfAvailable();
+        this.storedListeners = storedListeners;
+        this.histogramMaxBuckets = histogramMaxBuckets;
     }
 
+    // Транзакцию открывает само хранилище: в асинхронном режиме HTTP-поток не должен занимать соединение с БД
     @Override
-    @Transactional
     public HitDto addHit(NewHitRequest request) {
         log.debug("Начинается сохранение информации о том, что к эндпоинту был запрос по запросу {}", request);
         Hit hit = mapToHit(request);
         log.debug("Запрос на сохранение информации о том, что к эндпоинту был запрос по запросу конвертирован в объект класса Hit {}", hit);
-        hit = hitRepository.save(hit);
+        if (writeBuffer != null) {
+            if (!writeBuffer.offer(hit)) {
+                throw bufferRejected();
+            }
+            log.debug("Хит передан в буфер асинхронной записи {}", hit);
+            return mapToHitDto(hit);
+        }
+        hit = hitStore.save(hit);
+        notifyStored(List.of(hit));
         log.debug("Сохранена информации о том, что к эндпоинту был запрос {}", hit);
        return mapToHitDto(hit);
     }
 
     @Override
-    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+    public void addHits(List<NewHitRequest> requests) {
+        log.debug("Начинается пакетное сохранение {} хитов", requests.size());
+        List<Hit> hits = requests.stream()
+                .map(HitMapper::mapToHit)
+                .toList();
+        if (writeBuffer != null) {
+            if (!writeBuffer.offerAll(hits)) {
+                throw bufferRejected();
+            }
+            log.debug("{} хитов передано в буфер асинхронной записи", hits.size());
+            return;
+        }
+        hitStore.saveAll(hits);
+        notifyStored(hits);
+        log.debug("Сохранено {} хитов", hits.size());
+    }
+
+    @Override
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
         log.debug("Начинается получение статистики по посещениям");
+        validatePeriod(start, end);
+        if (hasPatterns(uris)) {
+            uris = expandPatterns(uris);
+            if (uris != null && uris.isEmpty()) {
+                log.debug("Ни один uri не подходит под шаблоны запроса");
+                return List.of();
+            }
+        }
+
+        if (statsCache != null) {
+            return statsCache.getStats(start, end, uris, unique);
+        }
+        return hitStore.getStats(start, end, uris, unique);
+    }
+
+    // Потоковый режим предназначен для больших ответов, поэтому идет мимо кэша
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                            Consumer<ViewStatsDto> consumer) {
+        log.debug("Начинается потоковое получение статистики по посещениям");
+        validatePeriod(start, end);
+        if (hasPatterns(uris)) {
+            uris = expandPatterns(uris);
+            if (uris != null && uris.isEmpty()) {
+                log.debug("Ни один uri не подходит под шаблоны запроса");
+                return;
+            }
+        }
+
+        hitStore.streamStats(start, end, uris, unique, consumer);
+    }
+
+    // Гистограмма строится по хранилищу напрямую: кэш хранит только итоги за весь диапазон
+    @Override
+    public List<HistogramDto> getHistogram(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                           RollupGranularity interval, UniqueMode unique) {
+        log.debug("Начинается получение гистограммы посещений по интервалам {}", interval);
+        validatePeriod(start, end);
+        if (unique == UniqueMode.APPROX) {
+            log.warn("Запрошена гистограмма с приблизительным подсчетом уникальных посещений");
+            throw new ConstraintViolationException("Гистограмма поддерживает только unique=true или unique=false");
+        }
+
+        long buckets = interval.bucketsBetween(start, end);
+        if (buckets > histogramMaxBuckets) {
+            log.warn("Гистограмма за [{}, {}] по интервалам {} содержит {} интервалов", start, end, interval, buckets);
+            throw new ConstraintViolationException("Гистограмма не может содержать больше "
+                    + histogramMaxBuckets + " интервалов");
+        }
+
+        if (hasPatterns(uris)) {
+            uris = expandPatterns(uris);
+            if (uris != null && uris.isEmpty()) {
+                log.debug("Ни один uri не подходит под шаблоны запроса");
+                return List.of();
+            }
+        }
+        return hitStore.getHistogram(start, end, uris, interval, unique);
+    }
+
+    @Override
+    public TopHitsDto getTopHits(TopWindow window, int n) {
+        log.debug("Начинается получение самых посещаемых uri за окно {}", window);
+        if (topHitsTracker == null) {
+            log.warn("Запрошены самые посещаемые uri, но их подсчет отключен");
+            throw new ConstraintViolationException("Подсчет самых посещаемых uri отключен");
+        }
+
+        if (n < 1 || n > topHitsTracker.capacity()) {
+            log.warn("Параметр n {} вне допустимого диапазона", n);
+            throw new ConstraintViolationException("Параметр n должен быть от 1 до " + topHitsTracker.capacity());
+        }
+        return topHitsTracker.getTop(window, n);
+    }
+
+    @Override
+    public List<LiveHitsDto> getLiveHits(List<String> uris, int n) {
+        log.debug("Начинается получение числа хитов uri за последние минуты");
+        if (liveHitsTracker == null) {
+            log.warn("Запрошены счетчики посещений, но они отключены");
+            throw new ConstraintViolationException("Счетчики посещений в реальном времени отключены");
+        }
+
+        if (n < 1) {
+            log.warn("Параметр n {} вне допустимого диапазона", n);
+            throw new ConstraintViolationException("Параметр n должен быть больше 0");
+        }
+        if (hasPatterns(uris)) {
+            uris = expandPatterns(uris);
+            if (uris != null && uris.isEmpty()) {
+                log.debug("Ни один uri не подходит под шаблоны запроса");
+                return List.of();
+            }
+        }
+        return liveHitsTracker.getLive(uris, n);
+    }
+
+    private static boolean hasPatterns(List<String> uris) {
+        return uris != null && uris.stream().anyMatch(UriPrefixIndex::isPattern);
+    }
+
+    // Шаблоны с '*' заменяются подходящими uri из индекса префиксов. Шаблон "*" означает все uri - возвращается null
+    private List<String> expandPatterns(List<String> uris) {
+        if (uriPrefixIndex == null) {
+            log.warn("Запрошены шаблоны uri {}, но индекс префиксов отключен", uris);
+            throw new ConstraintViolationException("Шаблоны uri не поддерживаются: индекс префиксов отключен");
+        }
+
+        Set<String> expanded = new LinkedHashSet<>();
+        for (String uri : uris) {
+            if (uri.equals(String.valueOf(UriPrefixIndex.WILDCARD))) {
+                return null;
+            }
+            if (UriPrefixIndex.isPattern(uri)) {
+                expanded.addAll(uriPrefixIndex.expand(uri));
+            } else {
+                expanded.add(uri);
+            }
+        }
+        if (expanded.size() > uriPrefixIndex.maxExpansion()) {
+            log.warn("Шаблоны uri {} раскрываются в {} uri", uris, expanded.size());
+            throw new ConstraintViolationException("Шаблоны uri соответствуют больше чем "
+                    + uriPrefixIndex.maxExpansion() + " uri");
+        }
+        log.debug("Шаблоны uri {} раскрыты в {} uri", uris, expanded.size());
+        return List.copyOf(expanded);
+    }
+
+    // Буфер не принял хиты (переполнен при overflow=drop или остановлен): 503, чтобы клиент повторил запрос,
+    // а не счел хиты записанными. Пачка не принимается частично, поэтому повтор не создаст дублей
+    private static ResponseStatusException bufferRejected() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Буфер записи хитов не принял хиты");
+    }
+
+    // Хиты уже записаны: ошибка слушателя не должна превращать ответ в 500 и мешать остальным слушателям
+    private void notifyStored(List<Hit> hits) {
+        for (HitStoredListener listener : storedListeners) {
+            try {
+                listener.onHitsStored(hits);
+            } catch (RuntimeException e) {
+                log.error("Ошибка обработки записанной пачки из {} хитов в {}: {}", hits.size(),
+                        listener.getClass().getSimpleName(), e.getMessage(), e);
+            }
+        }
+    }
 
+    private void validatePeriod(LocalDateTime start, LocalDateTime end) {
         if (start == null) {
             log.warn("Начальная дата не может быть null");
             throw new IllegalArgumentException("Начальная дата не может быть null");
@@ -58,23 +274,5 @@ public class HitServiceImpl implements HitService {
             log.warn("Начальная дата {} не может быть позже конечной даты {}", start, end);
             throw new IllegalArgumentException("Начальная дата не может быть позже конечной даты");
         }
-
-        if (unique) {
-            if (uris != null && !uris.isEmpty()) {
-                log.debug("Получение уникальных хитов по заданному Uri при unique=true");
-                return hitRepository.findUniqueHitsUris(start, end, uris);
-            } else {
-                log.debug("Получение всех уникальных хитов при unique=true");
-                return hitRepository.findUniqueHits(start, end);
-            }
-        } else {
-            if (uris != null && !uris.isEmpty()) {
-                log.debug("Получение уникальных хитов по заданному Uri при unique=false");
-                return hitRepository.findHitsUris(start, end, uris);
-            } else {
-                log.debug("Получение всех уникальных хитов при unique=false");
-                return hitRepository.findHits(start, end);
-            }
-        }
     }
 }
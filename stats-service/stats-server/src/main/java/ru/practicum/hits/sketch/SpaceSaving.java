@@ -0,0 +1,244 @@
+package ru.practicum.hits.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Space-Saving (Metwally и др.): самые частые элементы потока на capacity счетчиках.
+// Оценка count завышает истинное число появлений элемента не больше чем на его error, а error не больше
+// total / capacity. Элемент, которого нет среди счетчиков, встречался не больше floor() раз.
+// Скетчи объединяются по схеме Agarwal и др.: отсутствующему в скетче элементу приписывается floor этого скетча
+public final class SpaceSaving<K> {
+
+    private static final Comparator<Counter<?>> BY_COUNT_DESC =
+            Comparator.comparingLong((Counter<?> counter) -> counter.count).reversed();
+
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    // Min-куча по count: в корне счетчик, который вытесняется новым элементом
+    private final Counter<K>[] heap;
+    // Нижняя граница floor у объединенного скетча: столько мог набрать элемент, не попавший в объединение
+    private final long baseFloor;
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        this(capacity, 0, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private SpaceSaving(int capacity, long baseFloor, long total) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Число счетчиков Space-Saving должно быть больше 0, получено " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>();
+        this.heap = (Counter<K>[]) new Counter[capacity];
+        this.baseFloor = baseFloor;
+        this.total = total;
+    }
+
+    public void offer(K key) {
+        offer(key, 1);
+    }
+
+    // Учитывает weight появлений элемента сразу, например уже подсчитанное число хитов uri
+    public void offer(K key, long weight) {
+        total += weight;
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.index);
+            return;
+        }
+
+        // Новый элемент мог встречаться раньше до floor раз, не попав в счетчики
+        long floor = floor();
+        if (size < capacity) {
+            counter = new Counter<>(key, floor + weight, floor);
+            counter.index = size;
+            heap[size++] = counter;
+            counters.put(key, counter);
+            siftUp(counter.index);
+        } else {
+            counter = heap[0];
+            counters.remove(counter.key);
+            counter.key = key;
+            counter.count = floor + weight;
+            counter.error = floor;
+            counters.put(key, counter);
+            siftDown(0);
+        }
+    }
+
+    // Сколько раз мог встретиться элемент, которого нет среди счетчиков
+    public long floor() {
+        return Math.max(baseFloor, size == capacity ? heap[0].count : 0);
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // До n элементов объединения скетчей с наибольшей оценкой, по убыванию оценки. Объединенный скетч не строится:
+    // оценка элемента - сумма его счетчиков, а в скетчах, где его нет, - их floor
+    public static <K> Top<K> top(List<SpaceSaving<K>> sketches, int n) {
+        long[] floors = new long[sketches.size()];
+        long floorSum = 0;
+        long total = 0;
+        for (int i = 0; i < sketches.size(); i++) {
+            floors[i] = sketches.get(i).floor();
+            floorSum += floors[i];
+            total += sketches.get(i).total;
+        }
+
+        // Min-куча из n + 1 лучших оценок: (n + 1)-я ограничивает сверху всех, кто не вошел в первые n
+        PriorityQueue<Estimate<K>> best = new PriorityQueue<>(n + 2, Comparator.comparingLong(Estimate::count));
+        for (int i = 0; i < sketches.size(); i++) {
+            SpaceSaving<K> sketch = sketches.get(i);
+            for (int c = 0; c < sketch.size; c++) {
+                K key = sketch.heap[c].key;
+                if (seenBefore(sketches, i, key)) {
+                    continue;
+                }
+                long count = 0;
+                long error = 0;
+                for (int j = 0; j < sketches.size(); j++) {
+                    Counter<K> counter = j < i ? null : sketches.get(j).counters.get(key);
+                    count += counter != null ? counter.count : floors[j];
+                    error += counter != null ? counter.error : floors[j];
+                }
+                if (best.size() <= n) {
+                    best.add(new Estimate<>(key, count, error));
+                } else if (count > best.peek().count()) {
+                    best.poll();
+                    best.add(new Estimate<>(key, count, error));
+                }
+            }
+        }
+
+        List<Estimate<K>> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.comparingLong(Estimate<K>::count).reversed());
+        long otherMax = Math.max(floorSum, sorted.size() > n ? sorted.get(n).count() : 0);
+        return new Top<>(sorted.subList(0, Math.min(n, sorted.size())), total, otherMax);
+    }
+
+    private static <K> boolean seenBefore(List<SpaceSaving<K>> sketches, int index, K key) {
+        for (int j = 0; j < index; j++) {
+            if (sketches.get(j).counters.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Объединение скетчей в новый скетч на capacity счетчиков, исходные скетчи не меняются
+    public static <K> SpaceSaving<K> merge(List<SpaceSaving<K>> sketches, int capacity) {
+        long floors = 0;
+        long total = 0;
+        // Для каждого элемента: сумма count, сумма error и сумма floor тех скетчей, где он есть
+        Map<K, long[]> sums = new HashMap<>();
+        for (SpaceSaving<K> sketch : sketches) {
+            long floor = sketch.floor();
+            floors += floor;
+            total += sketch.total;
+            for (int i = 0; i < sketch.size; i++) {
+                Counter<K> counter = sketch.heap[i];
+                long[] sum = sums.computeIfAbsent(counter.key, key -> new long[3]);
+                sum[0] += counter.count;
+                sum[1] += counter.error;
+                sum[2] += floor;
+            }
+        }
+
+        List<Counter<K>> merged = new ArrayList<>(sums.size());
+        for (Map.Entry<K, long[]> entry : sums.entrySet()) {
+            long[] sum = entry.getValue();
+            long missing = floors - sum[2];
+            merged.add(new Counter<>(entry.getKey(), sum[0] + missing, sum[1] + missing));
+        }
+        long baseFloor = floors;
+        if (merged.size() > capacity) {
+            merged.sort(BY_COUNT_DESC);
+            baseFloor = Math.max(floors, merged.get(capacity).count);
+            merged.subList(capacity, merged.size()).clear();
+        }
+
+        SpaceSaving<K> result = new SpaceSaving<>(capacity, baseFloor, total);
+        for (Counter<K> counter : merged) {
+            counter.index = result.size;
+            result.heap[result.size++] = counter;
+            result.counters.put(counter.key, counter);
+        }
+        for (int i = result.size / 2 - 1; i >= 0; i--) {
+            result.siftDown(i);
+        }
+        return result;
+    }
+
+    private void siftUp(int index) {
+        Counter<K> counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter<K> counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter<K> counter, int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    // Оценка числа появлений элемента: истинное значение в [count - error, count]
+    public record Estimate<K>(K key, long count, long error) {
+    }
+
+    // Первые элементы объединения: total - длина потока, любой элемент вне списка встречался не больше otherMax раз
+    public record Top<K>(List<Estimate<K>> estimates, long total, long otherMax) {
+    }
+
+    private static final class Counter<K> {
+
+        private K key;
+        private long count;
+        private long error;
+        private int index;
+
+        private Counter(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
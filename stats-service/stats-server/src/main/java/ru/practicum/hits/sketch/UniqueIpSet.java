@@ -0,0 +1,129 @@
+package ru.practicum.hits.sketch;
+
+import org.roaringbitmap.ParallelAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import ru.practicum.hits.mapper.IpAddresses;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Точное множество ip: IPv4 хранятся как 32-битные числа в сжатом битмапе,
+// остальные адреса - как id из словаря hit_ip_ids во втором битмапе.
+// Адреса, которых еще нет в словаре, учитываются строками (встречаются только в сырых краях диапазона)
+public final class UniqueIpSet {
+
+    private final RoaringBitmap ipv4;
+    private final RoaringBitmap ipIds;
+    private final Set<String> unresolved = new HashSet<>();
+
+    public UniqueIpSet() {
+        this(new RoaringBitmap(), new RoaringBitmap());
+    }
+
+    private UniqueIpSet(RoaringBitmap ipv4, RoaringBitmap ipIds) {
+        this.ipv4 = ipv4;
+        this.ipIds = ipIds;
+    }
+
+    public static UniqueIpSet fromBytes(byte[] ipv4, byte[] ipIds) {
+        return new UniqueIpSet(deserialize(ipv4), deserialize(ipIds));
+    }
+
+    // ids - id словаря для всех адресов из ips, не являющихся IPv4
+    public static UniqueIpSet of(Collection<String> ips, Map<String, Integer> ids) {
+        UniqueIpSet set = new UniqueIpSet();
+        for (String ip : ips) {
+            long ipv4 = IpAddresses.parseIpv4(ip);
+            if (ipv4 != IpAddresses.NOT_IPV4) {
+                set.addIpv4(ipv4);
+            } else {
+                set.addIpId(ids.get(ip));
+            }
+        }
+        return set;
+    }
+
+    // Объединение суточных множеств, битмапы объединяются параллельно
+    public static UniqueIpSet union(List<UniqueIpSet> sets) {
+        if (sets.size() == 1) {
+            return sets.get(0);
+        }
+        UniqueIpSet union = new UniqueIpSet(
+                ParallelAggregation.or(sets.stream().map(set -> set.ipv4).toArray(RoaringBitmap[]::new)),
+                ParallelAggregation.or(sets.stream().map(set -> set.ipIds).toArray(RoaringBitmap[]::new)));
+        sets.forEach(set -> union.unresolved.addAll(set.unresolved));
+        return union;
+    }
+
+    public void addIpv4(long address) {
+        ipv4.add((int) address);
+    }
+
+    public void addIpId(int id) {
+        ipIds.add(id);
+    }
+
+    public void addUnresolved(String ip) {
+        unresolved.add(ip);
+    }
+
+    public void merge(UniqueIpSet other) {
+        ipv4.or(other.ipv4);
+        ipIds.or(other.ipIds);
+        unresolved.addAll(other.unresolved);
+    }
+
+    public long cardinality() {
+        return ipv4.getLongCardinality() + ipIds.getLongCardinality() + unresolved.size();
+    }
+
+    // Мощность объединения с other без изменения обоих множеств
+    public long unionCardinality(UniqueIpSet other) {
+        long shared = unresolved.size() <= other.unresolved.size()
+                ? unresolved.stream().filter(other.unresolved::contains).count()
+                : other.unresolved.stream().filter(unresolved::contains).count();
+        return RoaringBitmap.orCardinality(ipv4, other.ipv4) + RoaringBitmap.orCardinality(ipIds, other.ipIds)
+                + unresolved.size() + other.unresolved.size() - shared;
+    }
+
+    // Примерный объем памяти, занимаемый множеством
+    public long sizeInBytes() {
+        return ipv4.getLongSizeInBytes() + ipIds.getLongSizeInBytes() + unresolved.size() * 64L;
+    }
+
+    public byte[] ipv4Bytes() {
+        return serialize(ipv4);
+    }
+
+    public byte[] ipIdsBytes() {
+        return serialize(ipIds);
+    }
+
+    private static byte[] serialize(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+
+    private static RoaringBitmap deserialize(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        if (bytes == null || bytes.length == 0) {
+            return bitmap;
+        }
+        try {
+            bitmap.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Поврежденный битмап ip", e);
+        }
+        return bitmap;
+    }
+}
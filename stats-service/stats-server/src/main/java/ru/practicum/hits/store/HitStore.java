@@ -0,0 +1,44 @@
+package ru.practicum.hits.store;
+
+import ru.practicum.HistogramDto;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.sketch.UniqueIpSet;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Движок хранения хитов. Реализация выбирается свойством stats.store.engine: postgres (по умолчанию) или segment
+public interface HitStore {
+
+    Hit save(Hit hit);
+
+    void saveAll(List<Hit> hits);
+
+    // Статистика за [start, end], параметры уже проверены сервисом
+    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique);
+
+    // Статистика за [start, end] построчно в порядке убывания хитов, без сборки всего ответа в памяти.
+    // По умолчанию передает строки готового ответа getStats
+    default void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                             Consumer<ViewStatsDto> consumer) {
+        getStats(start, end, uris, unique).forEach(consumer);
+    }
+
+    // Множества уникальных ip по (app, uri) за [start, end]. В отличие от чисел из getStats их можно объединять
+    // между соседними диапазонами, на этом кэш запросов досчитывает уникальные ip только за открытый край
+    Map<AppUri, UniqueIpSet> getUniqueIps(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    // Число хитов (при unique != NONE - уникальных ip) за [start, end] по интервалам interval одним проходом,
+    // ряды по app+uri упорядочены по app и uri, пустые интервалы пропускаются
+    List<HistogramDto> getHistogram(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                    RollupGranularity interval, UniqueMode unique);
+
+    // Все uri из словаря хранилища, в том числе uri хитов, удаленных по сроку хранения
+    List<String> knownUris();
+}
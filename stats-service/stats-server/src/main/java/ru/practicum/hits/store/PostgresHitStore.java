@@ -0,0 +1,364 @@
+package ru.practicum.hits.store;
+
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.HistogramDto;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.ingest.HitWriter;
+import ru.practicum.hits.maintenance.HitCompactionService;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.TimeSlice;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.repository.HitIpBitmapRepository;
+import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.repository.HitRollupRepository;
+import ru.practicum.hits.repository.HitSketchRepository;
+import ru.practicum.hits.sketch.HyperLogLog;
+import ru.practicum.hits.sketch.UniqueIpSet;
+import ru.practicum.validation.ConstraintViolationException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Хранение хитов в Postgres: сырые хиты в hits и производные агрегаты, скетчи и битмапы. Сжатые сутки
+// (stats.compaction.enabled=true) есть только в посуточных агрегатах, скетчах и битмапах, поэтому границы диапазона,
+// попавшие в них, расширяются до границ суток, а при stats.compaction.reject-unaligned=true такой диапазон отклоняется
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.store.engine", havingValue = "postgres", matchIfMissing = true)
+public class PostgresHitStore implements HitStore {
+
+    private final HitRepository hitRepository;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitIpBitmapRepository hitIpBitmapRepository;
+    private final HitWriter hitWriter;
+    // Присутствует только при stats.fan-out.enabled=true
+    private final RangeFanOut fanOut;
+    // Присутствует только при stats.compaction.enabled=true
+    private final HitCompactionService compaction;
+    private final boolean rollupsEnabled;
+    private final boolean sketchesEnabled;
+    private final boolean bitmapsEnabled;
+    private final int sketchPrecision;
+    private final boolean rejectUnaligned;
+
+    @Autowired
+    public PostgresHitStore(HitRepository hitRepository,
+                            HitRollupRepository hitRollupRepository,
+                            HitSketchRepository hitSketchRepository,
+                            HitIpBitmapRepository hitIpBitmapRepository,
+                            HitWriter hitWriter,
+                            ObjectProvider<RangeFanOut> fanOut,
+                            ObjectProvider<HitCompactionService> compaction,
+                            @Value("${stats.rollups.enabled:false}") boolean rollupsEnabled,
+                            @Value("${stats.sketch.enabled:false}") boolean sketchesEnabled,
+                            @Value("${stats.sketch.precision:12}") int sketchPrecision,
+                            @Value("${stats.bitmap.enabled:false}") boolean bitmapsEnabled,
+                            @Value("${stats.compaction.reject-unaligned:false}") boolean rejectUnaligned) {
+        this.hitRepository = hitRepository;
+        this.hitRollupRepository = hitRollupRepository;
+        this.hitSketchRepository = hitSketchRepository;
+        this.hitIpBitmapRepository = hitIpBitmapRepository;
+        this.hitWriter = hitWriter;
+        this.fanOut = fanOut.getIfAvailable();
+        this.compaction = compaction.getIfAvailable();
+        this.rollupsEnabled = rollupsEnabled;
+        this.sketchesEnabled = sketchesEnabled;
+        this.sketchPrecision = sketchPrecision;
+        this.bitmapsEnabled = bitmapsEnabled;
+        this.rejectUnaligned = rejectUnaligned;
+    }
+
+    @Override
+    public Hit save(Hit hit) {
+        return hitWriter.write(hit);
+    }
+
+    @Override
+    public void saveAll(List<Hit> hits) {
+        hitWriter.writeAll(hits);
+    }
+
+    @Override
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
+        LocalDateTime compactedBefore = compactedBefore();
+        if (compactedBefore != null && start.isBefore(compactedBefore)) {
+            checkDayAligned(start, end, compactedBefore);
+            start = alignStart(start);
+            end = alignEnd(end, compactedBefore);
+        }
+        if (unique == UniqueMode.APPROX) {
+            return getApproxUniqueStats(start, end, uris);
+        } else if (unique == UniqueMode.EXACT && bitmapsEnabled) {
+            return getBitmapUniqueStats(start, end, uris);
+        } else if (unique == UniqueMode.EXACT && splitRange(start, end, true)) {
+            return sortByHits(getRawUniqueIps(start, end, uris), UniqueIpSet::cardinality);
+        } else if (unique == UniqueMode.EXACT) {
+            if (uris != null && !uris.isEmpty()) {
+                log.debug("Получение уникальных хитов по заданному Uri при unique=true");
+                return hitRepository.findUniqueHitsUris(start, end, uris);
+            } else {
+                log.debug("Получение всех уникальных хитов при unique=true");
+                return hitRepository.findUniqueHits(start, end);
+            }
+        } else if (rollupsEnabled) {
+            // Метки времени хитов с точностью до секунды, поэтому [start, end] == [start, end + 1 сек)
+            LocalDateTime endExclusive = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+            List<TimeSlice> slices = TimeSlice.split(start, endExclusive);
+            log.debug("Получение хитов при unique=false из агрегатов по кускам диапазона {}", slices);
+            return hitRollupRepository.findStats(slices, end, uris);
+        } else if (splitRange(start, end, false)) {
+            return getRawStatsInParallel(start, end, uris);
+        } else {
+            if (uris != null && !uris.isEmpty()) {
+                log.debug("Получение уникальных хитов по заданному Uri при unique=false");
+                return hitRepository.findHitsUris(start, end, uris);
+            } else {
+                log.debug("Получение всех уникальных хитов при unique=false");
+                return hitRepository.findHits(start, end);
+            }
+        }
+    }
+
+    // Строки читаются курсором в открытой транзакции и сразу передаются consumer. Скетчи и битмапы объединяются
+    // в памяти по всем парам app+uri, поэтому уникальные ip в потоковом режиме (в том числе approx) точно считает
+    // сам Postgres через COUNT(DISTINCT ip), сортируя при необходимости на диске
+    @Override
+    @Transactional
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                            Consumer<ViewStatsDto> consumer) {
+        LocalDateTime compactedBefore = compactedBefore();
+        if (compactedBefore != null && start.isBefore(compactedBefore)) {
+            if (unique != UniqueMode.NONE) {
+                // Сырых ip за сжатые сутки нет, уникальные ip считаются по суточным структурам в памяти
+                log.debug("Диапазон задевает сжатые сутки, уникальные хиты собираются целиком");
+                getStats(start, end, uris, unique).forEach(consumer);
+                return;
+            }
+            checkDayAligned(start, end, compactedBefore);
+            start = alignStart(start);
+            end = alignEnd(end, compactedBefore);
+        }
+        boolean filtered = uris != null && !uris.isEmpty();
+        if (unique == UniqueMode.NONE && rollupsEnabled) {
+            LocalDateTime endExclusive = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+            List<TimeSlice> slices = TimeSlice.split(start, endExclusive);
+            log.debug("Потоковое получение хитов при unique=false из агрегатов по кускам диапазона {}", slices);
+            hitRollupRepository.streamStats(slices, end, uris, consumer);
+            return;
+        }
+
+        log.debug("Потоковое получение хитов по сырым данным при unique={}", unique);
+        try (Stream<ViewStatsDto> stats = unique == UniqueMode.NONE
+                ? (filtered ? hitRepository.streamHitsUris(start, end, uris) : hitRepository.streamHits(start, end))
+                : (filtered ? hitRepository.streamUniqueHitsUris(start, end, uris)
+                : hitRepository.streamUniqueHits(start, end))) {
+            stats.forEach(consumer);
+        }
+    }
+
+    // Оценка уникальных ip: объединение суточных скетчей для целых суток и сырые ip неполных суток по краям
+    private List<ViewStatsDto> getApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        if (!sketchesEnabled) {
+            log.warn("Запрошен unique=approx при отключенных скетчах");
+            throw new ConstraintViolationException("Приблизительный подсчет уникальных посещений отключен");
+        }
+
+        LocalDateTime endExclusive = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        List<TimeSlice> slices = TimeSlice.splitByDays(start, endExclusive);
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        for (TimeSlice slice : slices) {
+            if (!slice.isRaw()) {
+                log.debug("Получение оценки уникальных хитов по скетчам за сутки с {} по {}", slice.from(), slice.to());
+                sketches = hitSketchRepository.findMerged(slice.from().toLocalDate(), slice.to().toLocalDate(), uris);
+            }
+        }
+        for (TimeSlice slice : slices) {
+            if (slice.isRaw()) {
+                boolean last = slice.to().equals(endExclusive);
+                hitSketchRepository.addRawIps(sketches, sketchPrecision, slice.from(), last ? end : slice.to(), last, uris);
+            }
+        }
+
+        return sortByHits(sketches, HyperLogLog::estimate);
+    }
+
+    // Точное число уникальных ip: параллельное объединение суточных битмапов и сырые ip неполных суток по краям
+    private List<ViewStatsDto> getBitmapUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return sortByHits(getUniqueIps(start, end, uris), UniqueIpSet::cardinality);
+    }
+
+    @Override
+    public Map<AppUri, UniqueIpSet> getUniqueIps(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        LocalDateTime compactedBefore = compactedBefore();
+        if (compactedBefore != null && start.isBefore(compactedBefore)) {
+            checkDayAligned(start, end, compactedBefore);
+            start = alignStart(start);
+            end = alignEnd(end, compactedBefore);
+        }
+        if (!bitmapsEnabled) {
+            return getRawUniqueIps(start, end, uris);
+        }
+
+        Map<AppUri, UniqueIpSet> sets = new HashMap<>();
+        LocalDateTime endExclusive = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        List<TimeSlice> slices = TimeSlice.splitByDays(start, endExclusive);
+        for (TimeSlice slice : slices) {
+            if (!slice.isRaw()) {
+                log.debug("Получение уникальных хитов по битмапам за сутки с {} по {}", slice.from(), slice.to());
+                Map<AppUri, List<UniqueIpSet>> daily = hitIpBitmapRepository.findDaily(
+                        slice.from().toLocalDate(), slice.to().toLocalDate(), uris);
+                sets = daily.entrySet().parallelStream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, entry -> UniqueIpSet.union(entry.getValue())));
+            }
+        }
+        for (TimeSlice slice : slices) {
+            if (slice.isRaw()) {
+                boolean last = slice.to().equals(endExclusive);
+                hitIpBitmapRepository.addRawIps(sets, slice.from(), last ? end : slice.to(), last, uris);
+            }
+        }
+        return sets;
+    }
+
+    private LocalDateTime compactedBefore() {
+        return compaction == null ? null : compaction.compactedBefore();
+    }
+
+    // По сжатым суткам хиты считаются только целыми сутками, и по умолчанию граница внутри них расширяется до
+    // границы суток: крайние сжатые сутки попадают в ответ целиком. С reject-unaligned такой диапазон отклоняется,
+    // чтобы ответ не включал хиты вне запрошенного диапазона. Конец в несжатых сутках любой
+    private void checkDayAligned(LocalDateTime start, LocalDateTime end, LocalDateTime compactedBefore) {
+        if (!rejectUnaligned) {
+            return;
+        }
+        LocalDateTime endExclusive = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        boolean endInCompacted = endExclusive.isBefore(compactedBefore);
+        if (!RollupGranularity.DAY.floor(start).equals(start)
+                || endInCompacted && !RollupGranularity.DAY.floor(endExclusive).equals(endExclusive)) {
+            log.warn("Диапазон с {} по {} задевает сжатые сутки и не выровнен по суткам", start, end);
+            throw new ConstraintViolationException("Хиты до " + compactedBefore.toLocalDate()
+                    + " сжаты: диапазон за эти сутки должен начинаться в 00:00:00 и заканчиваться в 23:59:59");
+        }
+    }
+
+    // Начало диапазона внутри сжатых суток сдвигается к их началу
+    private static LocalDateTime alignStart(LocalDateTime start) {
+        LocalDateTime aligned = RollupGranularity.DAY.floor(start);
+        if (!aligned.equals(start)) {
+            log.debug("Начало диапазона {} внутри сжатых суток сдвинуто к {}", start, aligned);
+        }
+        return aligned;
+    }
+
+    // Конец диапазона внутри сжатых суток сдвигается к их последней секунде, конец в несжатых сутках не меняется
+    private static LocalDateTime alignEnd(LocalDateTime end, LocalDateTime compactedBefore) {
+        LocalDateTime endExclusive = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        if (!endExclusive.isBefore(compactedBefore)) {
+            return end;
+        }
+        LocalDateTime aligned = RollupGranularity.DAY.ceil(endExclusive).minusSeconds(1);
+        if (!aligned.equals(end)) {
+            log.debug("Конец диапазона {} внутри сжатых суток сдвинут к {}", end, aligned);
+        }
+        return aligned;
+    }
+
+    private boolean splitRange(LocalDateTime start, LocalDateTime end, boolean unique) {
+        return fanOut != null && fanOut.worthSplitting(start, end, unique);
+    }
+
+    // Число хитов по кускам диапазона складывается
+    private List<ViewStatsDto> getRawStatsInParallel(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        boolean filtered = uris != null && !uris.isEmpty();
+        List<List<ViewStatsDto>> pieces = fanOut.map(start, end, (from, to) -> filtered
+                ? hitRepository.findHitsUris(from, to, uris)
+                : hitRepository.findHits(from, to));
+        Map<AppUri, Long> hits = new HashMap<>();
+        for (List<ViewStatsDto> piece : pieces) {
+            for (ViewStatsDto stat : piece) {
+                hits.merge(new AppUri(stat.getApp(), stat.getUri()), stat.getHits(), Long::sum);
+            }
+        }
+        return sortByHits(hits, Long::longValue);
+    }
+
+    // Уникальные ip не складываются, поэтому по кускам диапазона собираются множества ip и затем объединяются
+    private Map<AppUri, UniqueIpSet> getRawUniqueIps(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        if (!splitRange(start, end, true)) {
+            log.debug("Получение множеств уникальных ip по сырым хитам с {} по {}", start, end);
+            Map<AppUri, UniqueIpSet> sets = new HashMap<>();
+            hitIpBitmapRepository.addRawIps(sets, start, end, true, uris);
+            return sets;
+        }
+
+        List<Map<AppUri, UniqueIpSet>> pieces = fanOut.map(start, end, (from, to) -> {
+            Map<AppUri, UniqueIpSet> sets = new HashMap<>();
+            hitIpBitmapRepository.addRawIps(sets, from, to, true, uris);
+            return sets;
+        });
+        Map<AppUri, UniqueIpSet> sets = new HashMap<>();
+        for (Map<AppUri, UniqueIpSet> piece : pieces) {
+            piece.forEach((key, set) -> sets.merge(key, set, (merged, other) -> {
+                merged.merge(other);
+                return merged;
+            }));
+        }
+        return sets;
+    }
+
+    // Хиты берутся из агрегатов с корзинами не крупнее интервала, уникальные ip и хиты без агрегатов -
+    // одним GROUP BY по сырым hits за весь диапазон
+    @Override
+    public List<HistogramDto> getHistogram(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                           RollupGranularity interval, UniqueMode unique) {
+        LocalDateTime compactedBefore = compactedBefore();
+        if (compactedBefore != null && start.isBefore(compactedBefore)) {
+            if (interval != RollupGranularity.DAY || unique != UniqueMode.NONE) {
+                throw new ConstraintViolationException("Хиты до " + compactedBefore.toLocalDate()
+                        + " сжаты: гистограмма за эти сутки строится только с interval=day и unique=false");
+            }
+            checkDayAligned(start, end, compactedBefore);
+            start = alignStart(start);
+            end = alignEnd(end, compactedBefore);
+        }
+        LocalDateTime endExclusive = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        List<TimeSlice> slices = unique == UniqueMode.NONE && rollupsEnabled
+                ? TimeSlice.split(start, endExclusive, interval)
+                : List.of(new TimeSlice(null, start, endExclusive));
+        log.debug("Получение гистограммы по интервалам {} по кускам диапазона {}", interval, slices);
+        return hitRollupRepository.findHistogram(slices, end, uris, interval, unique != UniqueMode.NONE);
+    }
+
+    @Override
+    public List<String> knownUris() {
+        return hitRepository.findAllUris();
+    }
+
+    private static <T> List<ViewStatsDto> sortByHits(Map<AppUri, T> counters, ToLongFunction<T> count) {
+        return counters.entrySet().stream()
+                .map(entry -> ViewStatsDto.builder()
+                        .app(entry.getKey().app())
+                        .uri(entry.getKey().uri())
+                        .hits(count.applyAsLong(entry.getValue()))
+                        .build())
+                .sorted(Comparator.comparing(ViewStatsDto::getHits).reversed())
+                .toList();
+    }
+}
@@ -0,0 +1,109 @@
+package ru.practicum.hits.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.hits.model.PartitionGranularity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+
+// Параллельное чтение длинных диапазонов сырых hits (stats.fan-out.enabled=true). Диапазон режется по периодам секций
+// hits, так что каждый кусок читает одну секцию. Куски выполняются в виртуальных потоках, но одновременно не больше
+// parallelism: каждый запрос занимает соединение из пула
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.fan-out.enabled", havingValue = "true")
+public class RangeFanOut implements DisposableBean {
+
+    // Метки времени хранятся с точностью до микросекунды: [from, to) == [from, to - 1 мкс]
+    private static final long MICROSECOND = 1_000;
+
+    private final PartitionGranularity granularity;
+    private final int minPeriods;
+    private final boolean uniqueEnabled;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public RangeFanOut(@Value("${stats.partitions.granularity:month}") String granularity,
+                       @Value("${stats.fan-out.parallelism:4}") int parallelism,
+                       @Value("${stats.fan-out.min-periods:2}") int minPeriods,
+                       @Value("${stats.fan-out.unique:false}") boolean uniqueEnabled) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("stats.fan-out.parallelism должен быть больше 0");
+        }
+        this.granularity = PartitionGranularity.valueOf(granularity.toUpperCase());
+        this.minPeriods = minPeriods;
+        this.uniqueEnabled = uniqueEnabled;
+        this.permits = new Semaphore(parallelism);
+    }
+
+    // Диапазон короче minPeriods периодов читается одним запросом. Для уникальных ip куски возвращают не числа,
+    // а все различные пары uri+ip, поэтому разбиение для них включается отдельно
+    public boolean worthSplitting(LocalDateTime start, LocalDateTime end, boolean unique) {
+        if (unique && !uniqueEnabled) {
+            return false;
+        }
+        LocalDate period = granularity.floor(start.toLocalDate());
+        for (int periods = 1; periods < minPeriods; periods++) {
+            period = granularity.next(period);
+            if (period.atStartOfDay().isAfter(end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Вызывает query для каждого куска [from, to] (обе границы включительно) и возвращает результаты в порядке кусков
+    public <R> List<R> map(LocalDateTime start, LocalDateTime end, BiFunction<LocalDateTime, LocalDateTime, R> query) {
+        List<Callable<R>> tasks = new ArrayList<>();
+        LocalDateTime from = start;
+        while (!from.isAfter(end)) {
+            LocalDateTime next = granularity.next(granularity.floor(from.toLocalDate())).atStartOfDay();
+            LocalDateTime to = next.isAfter(end) ? end : next.minusNanos(MICROSECOND);
+            LocalDateTime pieceFrom = from;
+            tasks.add(() -> {
+                permits.acquire();
+                try {
+                    return query.apply(pieceFrom, to);
+                } finally {
+                    permits.release();
+                }
+            });
+            from = next;
+        }
+        log.debug("Диапазон с {} по {} читается параллельно по {} кускам", start, end, tasks.size());
+
+        List<R> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<R> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Получение статистики прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка параллельного чтения хитов", e.getCause());
+        }
+        return results;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,250 @@
+package ru.practicum.hits.store.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Сегмент журнала хитов: файл фиксированного размера, целиком отображенный в память.
+// Заголовок 64 байта (magic, версия, емкость, число зафиксированных записей), затем записи по 24 байта:
+// время в микросекундах (8), id приложения (4), id uri (4), ip (8: IPv4 как беззнаковое число или -(id + 1) словаря).
+// Записи идут в порядке поступления, поэтому для поиска по времени на каждый блок из BLOCK_SIZE записей
+// хранится минимальное и максимальное время - разреженный индекс, который пишется в .idx при закрытии сегмента
+@Slf4j
+class HitSegment implements AutoCloseable {
+
+    static final int RECORD_SIZE = 24;
+    static final int BLOCK_SIZE = 4096;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x48495453;
+    private static final int VERSION = 1;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+
+    private final int number;
+    private final Path indexFile;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long[] blockMin;
+    private final long[] blockMax;
+
+    // Граница видимости для читателей: записи до count полностью записаны, как и их блоки индекса
+    private volatile int count;
+    private volatile long minTime = Long.MAX_VALUE;
+    private volatile long maxTime = Long.MIN_VALUE;
+    // Число записанных, но еще не зафиксированных записей; меняется только пишущим потоком
+    private int written;
+
+    private HitSegment(int number, Path file, Path indexFile, int requestedCapacity) throws IOException {
+        this.number = number;
+        this.indexFile = indexFile;
+        boolean exists = Files.exists(file);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (exists) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                channel.close();
+                throw new IllegalStateException("Файл " + file + " не является сегментом хитов");
+            }
+            this.capacity = header.getInt(CAPACITY_OFFSET);
+        } else {
+            this.capacity = requestedCapacity;
+        }
+
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int blocks = (capacity + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+        if (exists) {
+            this.written = (int) buffer.getLong(COUNT_OFFSET);
+            if (!loadIndex()) {
+                rebuildIndex();
+            }
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putLong(COUNT_OFFSET, 0);
+        }
+        this.count = written;
+    }
+
+    static HitSegment open(Path dir, int number, int capacity) {
+        Path file = dir.resolve(String.format("hits-%08d.seg", number));
+        Path indexFile = dir.resolve(String.format("hits-%08d.idx", number));
+        try {
+            return new HitSegment(number, file, indexFile, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть сегмент " + file, e);
+        }
+    }
+
+    int number() {
+        return number;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int blocks() {
+        return (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    boolean isFull() {
+        return written == capacity;
+    }
+
+    // Пересекается ли сегмент с диапазоном [from, to]
+    boolean overlaps(long from, long to) {
+        return count > 0 && minTime <= to && maxTime >= from;
+    }
+
+    // Возвращает номер записи в сегменте. Запись станет видна читателям после commit()
+    int append(long time, int app, int uri, long ip) {
+        int index = written;
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        buffer.putLong(offset, time);
+        buffer.putInt(offset + 8, app);
+        buffer.putInt(offset + 12, uri);
+        buffer.putLong(offset + 16, ip);
+        indexRecord(index, time);
+        written++;
+        return index;
+    }
+
+    private void indexRecord(int index, long time) {
+        int block = index / BLOCK_SIZE;
+        if (index % BLOCK_SIZE == 0) {
+            blockMin[block] = time;
+            blockMax[block] = time;
+        } else {
+            blockMin[block] = Math.min(blockMin[block], time);
+            blockMax[block] = Math.max(blockMax[block], time);
+        }
+        minTime = Math.min(minTime, time);
+        maxTime = Math.max(maxTime, time);
+    }
+
+    // Фиксирует записанное: число записей в заголовке - граница, до которой сегмент читается после перезапуска
+    void commit(boolean force) {
+        if (written == count) {
+            return;
+        }
+        if (force) {
+            buffer.force(HEADER_SIZE + count * RECORD_SIZE, (written - count) * RECORD_SIZE);
+        }
+        buffer.putLong(COUNT_OFFSET, written);
+        if (force) {
+            buffer.force(0, HEADER_SIZE);
+        }
+        count = written;
+    }
+
+    // Обход записей блоков [fromBlock, toBlock) со временем в [from, to] и uri из uris (null - любые).
+    // Поля читаются прямо из отображенного файла, без копирования и создания объектов на запись
+    void scan(int fromBlock, int toBlock, long from, long to, BitSet uris, RecordVisitor visitor) {
+        int limit = count;
+        for (int block = fromBlock; block < toBlock; block++) {
+            int first = block * BLOCK_SIZE;
+            if (first >= limit) {
+                break;
+            }
+            if (blockMax[block] < from || blockMin[block] > to) {
+                continue;
+            }
+            int last = Math.min(first + BLOCK_SIZE, limit);
+            for (int i = first; i < last; i++) {
+                int offset = HEADER_SIZE + i * RECORD_SIZE;
+                long time = buffer.getLong(offset);
+                if (time < from || time > to) {
+                    continue;
+                }
+                int uri = buffer.getInt(offset + 12);
+                if (uris != null && !uris.get(uri)) {
+                    continue;
+                }
+                visitor.visit(time, buffer.getInt(offset + 8), uri, buffer.getLong(offset + 16));
+            }
+        }
+    }
+
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(indexFile))) {
+            if (in.readInt() != written) {
+                return false;
+            }
+            int blocks = in.readInt();
+            for (int block = 0; block < blocks; block++) {
+                blockMin[block] = in.readLong();
+                blockMax[block] = in.readLong();
+            }
+            if (blocks > 0) {
+                minTime = Arrays.stream(blockMin, 0, blocks).min().getAsLong();
+                maxTime = Arrays.stream(blockMax, 0, blocks).max().getAsLong();
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Индекс сегмента {} поврежден и будет построен заново", indexFile, e);
+            return false;
+        }
+    }
+
+    private void rebuildIndex() {
+        log.info("Построение индекса сегмента {} по {} записям", number, written);
+        for (int i = 0; i < written; i++) {
+            indexRecord(i, buffer.getLong(HEADER_SIZE + i * RECORD_SIZE));
+        }
+    }
+
+    // Индекс пишется через временный файл, чтобы при сбое не остался наполовину записанный .idx
+    void writeIndex() {
+        int blocks = blocks();
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeInt(count);
+            out.writeInt(blocks);
+            for (int block = 0; block < blocks; block++) {
+                out.writeLong(blockMin[block]);
+                out.writeLong(blockMax[block]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать индекс сегмента " + indexFile, e);
+        }
+        try {
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать индекс сегмента " + indexFile, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        writeIndex();
+        channel.close();
+    }
+
+    interface RecordVisitor {
+        void visit(long time, int app, int uri, long ip);
+    }
+}
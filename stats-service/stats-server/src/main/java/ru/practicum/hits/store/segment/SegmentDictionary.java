@@ -0,0 +1,131 @@
+package ru.practicum.hits.store.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Словарь строк сегментного хранилища (приложения, uri, адреса не IPv4): id - порядковый номер строки в файле.
+// Файл только дописывается записями [длина int][UTF-8], недописанный при сбое хвост отрезается при открытии.
+// Доступ идет под ReentrantLock, а не synchronized: resolve пишет в файл, и читатели не должны ждать его на мониторе
+@Slf4j
+class SegmentDictionary implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final boolean forceOnWrite;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    SegmentDictionary(Path file, boolean forceOnWrite) {
+        this.forceOnWrite = forceOnWrite;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            load(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть словарь " + file, e);
+        }
+    }
+
+    private void load(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // FileChannel может вернуть файл за несколько чтений
+        }
+        buffer.flip();
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 0 || buffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            buffer.position(buffer.position() + Integer.BYTES);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            ids.put(value, values.size());
+            values.add(value);
+        }
+        if (buffer.position() < channel.size()) {
+            log.warn("Словарь {} содержит недописанную запись, хвост длиной {} байт отброшен",
+                    file, channel.size() - buffer.position());
+            channel.truncate(buffer.position());
+        }
+    }
+
+    // Id значения или -1, если значения нет в словаре
+    int find(String value) {
+        lock.lock();
+        try {
+            return ids.getOrDefault(value, -1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Id значения, отсутствующее значение дописывается в файл
+    int resolve(String value) {
+        lock.lock();
+        try {
+            Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+            record.putInt(bytes.length).put(bytes).flip();
+            try {
+                long position = channel.size();
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+                if (forceOnWrite) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось дописать словарь", e);
+            }
+
+            ids.put(value, values.size());
+            values.add(value);
+            return values.size() - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String valueOf(int id) {
+        lock.lock();
+        try {
+            return values.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    List<String> values() {
+        lock.lock();
+        try {
+            return new ArrayList<>(values);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,423 @@
+package ru.practicum.hits.store.segment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.HistogramBucketDto;
+import ru.practicum.HistogramDto;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.mapper.IpAddresses;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.sketch.UniqueIpSet;
+import ru.practicum.hits.store.HitStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Хранение хитов в журнале сегментов, отображенных в память (stats.store.engine=segment).
+// Запись - последовательное дописывание в активный сегмент; /stats - параллельный обход блоков тех сегментов,
+// чей диапазон времени пересекается с запрошенным. Производные структуры Postgres (агрегаты, скетчи, битмапы)
+// этим движком не используются: unique=approx отвечает точным числом
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.store.engine", havingValue = "segment")
+public class SegmentHitStore implements HitStore, DisposableBean {
+
+    // Максимальная емкость, при которой смещения записей умещаются в int
+    private static final int MAX_RECORDS_PER_SEGMENT = (Integer.MAX_VALUE - 64) / HitSegment.RECORD_SIZE;
+    // Сколько блоков разреженного индекса обходит одна задача
+    private static final int BLOCKS_PER_TASK = 64;
+
+    private final Path dir;
+    private final int recordsPerSegment;
+    private final boolean forceOnWrite;
+    private final SegmentDictionary apps;
+    private final SegmentDictionary uris;
+    private final SegmentDictionary ips;
+    private final List<HitSegment> segments = new CopyOnWriteArrayList<>();
+    private final ExecutorService scanPool;
+    // Запись и закрытие идут под блокировкой, а не synchronized: внутри ввод-вывод в файлы сегментов и словарей,
+    // и виртуальный поток, ожидающий монитор, занимал бы поток-носитель (pinning)
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private HitSegment active;
+
+    public SegmentHitStore(@Value("${stats.store.segment.dir:data/hits}") String dir,
+                           @Value("${stats.store.segment.records-per-segment:1048576}") int recordsPerSegment,
+                           @Value("${stats.store.segment.force-on-write:false}") boolean forceOnWrite,
+                           @Value("${stats.store.segment.scan-threads:0}") int scanThreads) {
+        if (recordsPerSegment <= 0 || recordsPerSegment > MAX_RECORDS_PER_SEGMENT) {
+            throw new IllegalArgumentException("stats.store.segment.records-per-segment должен быть от 1 до "
+                    + MAX_RECORDS_PER_SEGMENT);
+        }
+        this.dir = Path.of(dir);
+        this.recordsPerSegment = recordsPerSegment;
+        this.forceOnWrite = forceOnWrite;
+        try {
+            Files.createDirectories(this.dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать каталог сегментов " + dir, e);
+        }
+        this.apps = new SegmentDictionary(this.dir.resolve("apps.dict"), forceOnWrite);
+        this.uris = new SegmentDictionary(this.dir.resolve("uris.dict"), forceOnWrite);
+        this.ips = new SegmentDictionary(this.dir.resolve("ips.dict"), forceOnWrite);
+
+        for (int number : existingSegments()) {
+            segments.add(HitSegment.open(this.dir, number, recordsPerSegment));
+        }
+        if (segments.isEmpty() || segments.get(segments.size() - 1).isFull()) {
+            int next = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).number() + 1;
+            segments.add(HitSegment.open(this.dir, next, recordsPerSegment));
+        }
+        this.active = segments.get(segments.size() - 1);
+
+        int threads = scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scanPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "hit-scan-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Сегментное хранилище хитов открыто в {}: сегментов {}, записей {}", this.dir, segments.size(),
+                segments.stream().mapToLong(HitSegment::count).sum());
+    }
+
+    private List<Integer> existingSegments() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("hits-\\d{8}\\.seg"))
+                    .map(name -> Integer.parseInt(name.substring(5, 13)))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать каталог сегментов " + dir, e);
+        }
+    }
+
+    @Override
+    public Hit save(Hit hit) {
+        saveAll(List.of(hit));
+        return hit;
+    }
+
+    @Override
+    public void saveAll(List<Hit> hits) {
+        writeLock.lock();
+        try {
+            for (Hit hit : hits) {
+                if (active.isFull()) {
+                    rollSegment();
+                }
+                int app = apps.resolve(hit.getApp().getName());
+                int uri = uris.resolve(hit.getUri().getUri());
+                long ipv4 = IpAddresses.parseIpv4(hit.getIp());
+                long ip = ipv4 != IpAddresses.NOT_IPV4 ? ipv4 : -(ips.resolve(hit.getIp()) + 1L);
+                int index = active.append(toMicros(hit.getTimestamp()), app, uri, ip);
+                hit.setId(((long) active.number() << 32) + index + 1);
+            }
+            active.commit(forceOnWrite);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Заполненный сегмент фиксируется вместе с индексом, дальнейшая запись идет в новый файл
+    private void rollSegment() {
+        active.commit(forceOnWrite);
+        active.writeIndex();
+        HitSegment next = HitSegment.open(dir, active.number() + 1, recordsPerSegment);
+        segments.add(next);
+        active = next;
+        log.info("Открыт новый сегмент хитов {}", next.number());
+    }
+
+    @Override
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uriFilter,
+                                       UniqueMode unique) {
+        Counters counters = scan(start, end, uriFilter, () -> new Counters(unique != UniqueMode.NONE));
+        return counters == null ? List.of() : counters.toStats();
+    }
+
+    @Override
+    public Map<AppUri, UniqueIpSet> getUniqueIps(LocalDateTime start, LocalDateTime end, List<String> uriFilter) {
+        Counters counters = scan(start, end, uriFilter, () -> new Counters(true));
+        return counters == null ? Map.of() : counters.toSets();
+    }
+
+    // Тот же параллельный обход, но счетчики ведутся отдельно для каждого интервала
+    @Override
+    public List<HistogramDto> getHistogram(LocalDateTime start, LocalDateTime end, List<String> uriFilter,
+                                           RollupGranularity interval, UniqueMode unique) {
+        BucketCounters buckets = scan(start, end, uriFilter,
+                () -> new BucketCounters(interval.micros(), unique != UniqueMode.NONE));
+        return buckets == null ? List.of() : buckets.toHistogram();
+    }
+
+    @Override
+    public List<String> knownUris() {
+        return uris.values();
+    }
+
+    // Параллельный обход сегментов: каждая задача копит свои счетчики, затем они объединяются.
+    // null, если ни один из запрошенных uri не встречался
+    private <C extends ScanResult<C>> C scan(LocalDateTime start, LocalDateTime end, List<String> uriFilter,
+                                              Supplier<C> results) {
+        BitSet uriIds = null;
+        if (uriFilter != null && !uriFilter.isEmpty()) {
+            uriIds = new BitSet();
+            for (String uri : uriFilter) {
+                int id = uris.find(uri);
+                if (id >= 0) {
+                    uriIds.set(id);
+                }
+            }
+            if (uriIds.isEmpty()) {
+                return null;
+            }
+        }
+
+        long from = toMicros(start);
+        long to = toMicros(end);
+        List<Callable<C>> tasks = new ArrayList<>();
+        for (HitSegment segment : segments) {
+            if (!segment.overlaps(from, to)) {
+                continue;
+            }
+            int blocks = segment.blocks();
+            for (int block = 0; block < blocks; block += BLOCKS_PER_TASK) {
+                int fromBlock = block;
+                int toBlock = Math.min(block + BLOCKS_PER_TASK, blocks);
+                BitSet filter = uriIds;
+                tasks.add(() -> {
+                    C result = results.get();
+                    segment.scan(fromBlock, toBlock, from, to, filter, result);
+                    return result;
+                });
+            }
+        }
+        log.debug("Получение статистики из сегментов: {} задач обхода", tasks.size());
+
+        C total = results.get();
+        try {
+            for (Future<C> future : scanPool.invokeAll(tasks)) {
+                total.merge(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Получение статистики прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка чтения сегментов хитов", e.getCause());
+        }
+        return total;
+    }
+
+    // Метки времени хранятся как микросекунды от эпохи без учета часового пояса, как и TIMESTAMP в Postgres
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        writeLock.lock();
+        try {
+            scanPool.shutdownNow();
+            for (HitSegment segment : segments) {
+                segment.close();
+            }
+            apps.close();
+            uris.close();
+            ips.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private interface ScanResult<C> extends HitSegment.RecordVisitor {
+        void merge(C other);
+    }
+
+    // Счетчики одной задачи обхода. Id словарей плотные, поэтому вместо хэш-таблиц используются массивы [app][uri]
+    private final class Counters implements ScanResult<Counters> {
+
+        private final boolean distinct;
+        private long[][] hits = new long[0][];
+        private UniqueIpSet[][] sets = new UniqueIpSet[0][];
+
+        private Counters(boolean distinct) {
+            this.distinct = distinct;
+        }
+
+        @Override
+        public void visit(long time, int app, int uri, long ip) {
+            if (distinct) {
+                UniqueIpSet set = set(app, uri);
+                if (ip >= 0) {
+                    set.addIpv4(ip);
+                } else {
+                    set.addIpId((int) (-ip - 1));
+                }
+            } else {
+                hitsRow(app, uri)[uri]++;
+            }
+        }
+
+        private long[] hitsRow(int app, int uri) {
+            if (app >= hits.length) {
+                hits = Arrays.copyOf(hits, app + 1);
+            }
+            long[] row = hits[app];
+            if (row == null || uri >= row.length) {
+                row = row == null ? new long[uri + 1] : Arrays.copyOf(row, Math.max(uri + 1, row.length * 2));
+                hits[app] = row;
+            }
+            return row;
+        }
+
+        private UniqueIpSet set(int app, int uri) {
+            if (app >= sets.length) {
+                sets = Arrays.copyOf(sets, app + 1);
+            }
+            UniqueIpSet[] row = sets[app];
+            if (row == null || uri >= row.length) {
+                row = row == null ? new UniqueIpSet[uri + 1] : Arrays.copyOf(row, Math.max(uri + 1, row.length * 2));
+                sets[app] = row;
+            }
+            if (row[uri] == null) {
+                row[uri] = new UniqueIpSet();
+            }
+            return row[uri];
+        }
+
+        @Override
+        public void merge(Counters other) {
+            for (int app = 0; app < other.hits.length; app++) {
+                long[] row = other.hits[app];
+                for (int uri = 0; row != null && uri < row.length; uri++) {
+                    if (row[uri] > 0) {
+                        hitsRow(app, uri)[uri] += row[uri];
+                    }
+                }
+            }
+            for (int app = 0; app < other.sets.length; app++) {
+                UniqueIpSet[] row = other.sets[app];
+                for (int uri = 0; row != null && uri < row.length; uri++) {
+                    if (row[uri] != null) {
+                        set(app, uri).merge(row[uri]);
+                    }
+                }
+            }
+        }
+
+        private List<ViewStatsDto> toStats() {
+            List<ViewStatsDto> stats = new ArrayList<>();
+            int apps = distinct ? sets.length : hits.length;
+            for (int app = 0; app < apps; app++) {
+                int rowLength = distinct ? (sets[app] == null ? 0 : sets[app].length)
+                        : (hits[app] == null ? 0 : hits[app].length);
+                for (int uri = 0; uri < rowLength; uri++) {
+                    long count = distinct ? (sets[app][uri] == null ? 0 : sets[app][uri].cardinality()) : hits[app][uri];
+                    if (count > 0) {
+                        stats.add(ViewStatsDto.builder()
+                                .app(SegmentHitStore.this.apps.valueOf(app))
+                                .uri(SegmentHitStore.this.uris.valueOf(uri))
+                                .hits(count)
+                                .build());
+                    }
+                }
+            }
+            stats.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+            return stats;
+        }
+
+        private Map<AppUri, UniqueIpSet> toSets() {
+            Map<AppUri, UniqueIpSet> result = new HashMap<>();
+            for (int app = 0; app < sets.length; app++) {
+                for (int uri = 0; sets[app] != null && uri < sets[app].length; uri++) {
+                    if (sets[app][uri] != null) {
+                        result.put(new AppUri(SegmentHitStore.this.apps.valueOf(app),
+                                SegmentHitStore.this.uris.valueOf(uri)), sets[app][uri]);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    // Счетчики по интервалам гистограммы. Записи в сегменте идут почти по порядку времени,
+    // поэтому счетчики текущего интервала запоминаются и поиск в карте нужен только при смене интервала
+    private final class BucketCounters implements ScanResult<BucketCounters> {
+
+        private final long intervalMicros;
+        private final boolean distinct;
+        private final TreeMap<Long, Counters> buckets = new TreeMap<>();
+        private long lastBucket = Long.MIN_VALUE;
+        private Counters last;
+
+        private BucketCounters(long intervalMicros, boolean distinct) {
+            this.intervalMicros = intervalMicros;
+            this.distinct = distinct;
+        }
+
+        @Override
+        public void visit(long time, int app, int uri, long ip) {
+            long bucket = Math.floorDiv(time, intervalMicros);
+            if (bucket != lastBucket) {
+                last = buckets.computeIfAbsent(bucket, key -> new Counters(distinct));
+                lastBucket = bucket;
+            }
+            last.visit(time, app, uri, ip);
+        }
+
+        @Override
+        public void merge(BucketCounters other) {
+            other.buckets.forEach((bucket, counters) ->
+                    buckets.computeIfAbsent(bucket, key -> new Counters(distinct)).merge(counters));
+        }
+
+        private List<HistogramDto> toHistogram() {
+            Map<AppUri, HistogramDto> series = new TreeMap<>(Comparator.comparing(AppUri::app)
+                    .thenComparing(AppUri::uri));
+            buckets.forEach((bucket, counters) -> {
+                long micros = bucket * intervalMicros;
+                LocalDateTime bucketStart = LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), 0,
+                        ZoneOffset.UTC);
+                for (ViewStatsDto stat : counters.toStats()) {
+                    series.computeIfAbsent(new AppUri(stat.getApp(), stat.getUri()), key -> HistogramDto.builder()
+                                    .app(key.app())
+                                    .uri(key.uri())
+                                    .buckets(new ArrayList<>())
+                                    .build())
+                            .getBuckets()
+                            .add(HistogramBucketDto.builder().start(bucketStart).hits(stat.getHits()).build());
+                }
+            });
+            return new ArrayList<>(series.values());
+        }
+    }
+}
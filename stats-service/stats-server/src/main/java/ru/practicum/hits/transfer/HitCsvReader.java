@@ -0,0 +1,125 @@
+package ru.practicum.hits.transfer;
+
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.HitApp;
+import ru.practicum.hits.model.HitUri;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+// Чтение CSV хитов в формате HitCsvWriter. Бросает IllegalArgumentException с номером строки, если файл не подходит
+public class HitCsvReader {
+
+    static final String HEADER = "app,uri,ip,timestamp";
+    // Доли секунды пишутся, только если они не нулевые; при чтении допустимы от 0 до 9 знаков и отбрасываются,
+    // как в HitMapper
+    static final DateTimeFormatter TIMESTAMP_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd HH:mm:ss")
+            .optionalStart()
+            .appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true)
+            .optionalEnd()
+            .toFormatter();
+
+    private static final int FIELDS = 4;
+
+    private final Reader in;
+    private final List<String> fields = new ArrayList<>(FIELDS);
+    private final StringBuilder field = new StringBuilder();
+    private long line = 1;
+
+    public HitCsvReader(Reader in) throws IOException {
+        this.in = in;
+        if (!readRecord() || !String.join(",", fields).equals(HEADER)) {
+            throw new IllegalArgumentException("CSV хитов должен начинаться с заголовка " + HEADER);
+        }
+    }
+
+    // Следующий хит или null в конце файла
+    public Hit next() throws IOException {
+        long recordLine = line;
+        if (!readRecord()) {
+            return null;
+        }
+        if (fields.size() != FIELDS || fields.stream().anyMatch(String::isEmpty)) {
+            throw new IllegalArgumentException("Строка " + recordLine + " CSV хитов должна содержать " + FIELDS
+                    + " непустых поля");
+        }
+
+        Hit hit = new Hit();
+        hit.setApp(new HitApp(fields.get(0)));
+        hit.setUri(new HitUri(fields.get(1)));
+        hit.setIp(fields.get(2));
+        try {
+            hit.setTimestamp(LocalDateTime.parse(fields.get(3), TIMESTAMP_FORMATTER).truncatedTo(ChronoUnit.SECONDS));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Строка " + recordLine + " CSV хитов: неверный timestamp "
+                    + fields.get(3));
+        }
+        return hit;
+    }
+
+    // Читает запись в fields; false в конце файла. Пустые строки пропускаются, перевод строки \r\n допустим
+    private boolean readRecord() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean empty = true;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    int next = in.read();
+                    if (next == '"') {
+                        field.append('"');
+                        continue;
+                    }
+                    quoted = false;
+                    if (next == -1) {
+                        break;
+                    }
+                    c = next;
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                    continue;
+                }
+            }
+
+            if (c == '\n') {
+                line++;
+                if (!empty) {
+                    fields.add(field.toString());
+                    return true;
+                }
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                empty = false;
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+                empty = false;
+            } else if (c != '\r') {
+                field.append((char) c);
+                empty = false;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Строка " + line + " CSV хитов: не закрыта кавычка");
+        }
+        if (empty) {
+            return false;
+        }
+        fields.add(field.toString());
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.practicum.hits.transfer;
+
+import ru.practicum.hits.model.Hit;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Запись хитов в CSV выгрузки: заголовок app,uri,ip,timestamp и по строке на хит (RFC 4180).
+// Файл читается psql: \copy <таблица> (app, uri, ip, timestamp) FROM 'hits.csv' CSV HEADER
+public class HitCsvWriter {
+
+    private final Writer out;
+
+    public HitCsvWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write(HitCsvReader.HEADER);
+        out.write('\n');
+    }
+
+    public void write(Hit hit) throws IOException {
+        writeField(hit.getApp().getName());
+        out.write(',');
+        writeField(hit.getUri().getUri());
+        out.write(',');
+        writeField(hit.getIp());
+        out.write(',');
+        out.write(HitCsvReader.TIMESTAMP_FORMATTER.format(hit.getTimestamp()));
+        out.write('\n');
+    }
+
+    // Поле с запятой, кавычкой или переводом строки заключается в кавычки, кавычки внутри удваиваются
+    private void writeField(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,222 @@
+package ru.practicum.hits.transfer;
+
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.HitImportDto;
+import ru.practicum.hits.cache.StatsQueryCache;
+import ru.practicum.hits.index.UriPrefixIndex;
+import ru.practicum.hits.maintenance.HitCompactionService;
+import ru.practicum.hits.maintenance.HitPartitionMaintenance;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.repository.HitIpBitmapRepository;
+import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.repository.HitRollupRepository;
+import ru.practicum.hits.repository.HitSketchRepository;
+import ru.practicum.validation.ConstraintViolationException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Выгрузка и загрузка хитов файлом CSV в gzip (stats.transfer.enabled=true, только при хранении в Postgres).
+// Загрузка пишет хиты командой COPY пачками по chunk-size мимо слушателей записи, а агрегаты, скетчи и битмапы
+// пересчитываются один раз в конце за затронутые сутки. Хиты, которые пишутся в эти же сутки во время загрузки,
+// могут не попасть в пересчитанные агрегаты, поэтому загружать стоит прошлые периоды. Сжатых суток
+// (stats.compaction.enabled=true) в выгрузке нет, а загрузка хитов за них отклоняется: пересчет по сырым хитам
+// заменил бы их посуточные данные одними загруженными хитами
+@Slf4j
+@Service
+@ConditionalOnExpression("${stats.transfer.enabled:false} and '${stats.store.engine:postgres}' == 'postgres'")
+public class HitTransferService {
+
+    private static final int GZIP_MAGIC_FIRST = 0x1f;
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final HitRepository hitRepository;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitIpBitmapRepository hitIpBitmapRepository;
+    // Присутствует только при stats.partitions.enabled=true
+    private final HitPartitionMaintenance partitionMaintenance;
+    // Присутствует только при stats.cache.enabled=true
+    private final StatsQueryCache statsCache;
+    // Присутствует только при stats.uri-prefix.enabled=true
+    private final UriPrefixIndex uriPrefixIndex;
+    // Присутствует только при stats.compaction.enabled=true
+    private final HitCompactionService compaction;
+    private final boolean rollupsEnabled;
+    private final boolean sketchesEnabled;
+    private final boolean bitmapsEnabled;
+    private final int sketchPrecision;
+    private final int chunkSize;
+
+    public HitTransferService(HitRepository hitRepository,
+                              HitRollupRepository hitRollupRepository,
+                              HitSketchRepository hitSketchRepository,
+                              HitIpBitmapRepository hitIpBitmapRepository,
+                              ObjectProvider<HitPartitionMaintenance> partitionMaintenance,
+                              ObjectProvider<StatsQueryCache> statsCache,
+                              ObjectProvider<UriPrefixIndex> uriPrefixIndex,
+                              ObjectProvider<HitCompactionService> compaction,
+                              @Value("${stats.rollups.enabled:false}") boolean rollupsEnabled,
+                              @Value("${stats.sketch.enabled:false}") boolean sketchesEnabled,
+                              @Value("${stats.sketch.precision:12}") int sketchPrecision,
+                              @Value("${stats.bitmap.enabled:false}") boolean bitmapsEnabled,
+                              @Value("${stats.transfer.chunk-size:50000}") int chunkSize) {
+        this.hitRepository = hitRepository;
+        this.hitRollupRepository = hitRollupRepository;
+        this.hitSketchRepository = hitSketchRepository;
+        this.hitIpBitmapRepository = hitIpBitmapRepository;
+        this.partitionMaintenance = partitionMaintenance.getIfAvailable();
+        this.statsCache = statsCache.getIfAvailable();
+        this.uriPrefixIndex = uriPrefixIndex.getIfAvailable();
+        this.compaction = compaction.getIfAvailable();
+        this.rollupsEnabled = rollupsEnabled;
+        this.sketchesEnabled = sketchesEnabled;
+        this.sketchPrecision = sketchPrecision;
+        this.bitmapsEnabled = bitmapsEnabled;
+        this.chunkSize = chunkSize;
+    }
+
+    // Хиты из [start, end] пишутся в out курсором, весь диапазон в памяти не собирается. Возвращает число хитов
+    @Transactional
+    public long exportHits(LocalDateTime start, LocalDateTime end, OutputStream out) throws IOException {
+        log.debug("Начинается выгрузка хитов с {} по {}", start, end);
+        GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), BUFFER_SIZE);
+        HitCsvWriter csv = new HitCsvWriter(writer);
+        long[] exported = new long[1];
+        hitRepository.streamRange(start, end, hit -> {
+            try {
+                csv.write(hit);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось передать хит в выгрузку", e);
+            }
+            exported[0]++;
+        });
+        writer.flush();
+        gzip.finish();
+        log.debug("Выгружено {} хитов", exported[0]);
+        return exported[0];
+    }
+
+    // Загрузка в одной транзакции: при ошибке в файле не остается ни хитов, ни пересчитанных агрегатов.
+    // Тело может быть как в gzip, так и несжатым CSV - формат определяется по первым байтам. Оборванный gzip
+    // дает IOException, поэтому откат включен и для него
+    @Transactional(rollbackOn = IOException.class)
+    public HitImportDto importHits(InputStream body) throws IOException {
+        log.debug("Начинается загрузка хитов");
+        HitCsvReader csv = new HitCsvReader(new BufferedReader(
+                new InputStreamReader(decompress(body), StandardCharsets.UTF_8), BUFFER_SIZE));
+        List<Hit> chunk = new ArrayList<>(chunkSize);
+        Set<String> uris = new HashSet<>();
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        long imported = 0;
+        LocalDateTime compactedBefore = compaction == null ? null : compaction.compactedBefore();
+        for (Hit hit = csv.next(); hit != null; hit = csv.next()) {
+            if (compactedBefore != null && hit.getTimestamp().isBefore(compactedBefore)) {
+                throw new ConstraintViolationException("Хиты до " + compactedBefore.toLocalDate()
+                        + " сжаты, загрузить хит за " + hit.getTimestamp() + " нельзя");
+            }
+            chunk.add(hit);
+            uris.add(hit.getUri().getUri());
+            from = from == null || hit.getTimestamp().isBefore(from) ? hit.getTimestamp() : from;
+            to = to == null || hit.getTimestamp().isAfter(to) ? hit.getTimestamp() : to;
+            if (chunk.size() == chunkSize) {
+                imported += writeChunk(chunk);
+            }
+        }
+        imported += writeChunk(chunk);
+        if (imported == 0) {
+            return HitImportDto.builder().imported(0L).build();
+        }
+
+        LocalDate fromDay = from.toLocalDate();
+        LocalDate toDay = to.toLocalDate().plusDays(1);
+        rebuildDerived(fromDay, toDay);
+        hitRepository.analyzeHits();
+        log.info("Загружено {} хитов с {} по {}", imported, from, to);
+
+        LocalDateTime invalidateFrom = from;
+        LocalDateTime invalidateTo = to;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (statsCache != null) {
+                    statsCache.invalidate(invalidateFrom, invalidateTo);
+                }
+                if (uriPrefixIndex != null) {
+                    uriPrefixIndex.addAll(uris);
+                }
+            }
+        });
+        return HitImportDto.builder().imported(imported).from(from).to(to).build();
+    }
+
+    private int writeChunk(List<Hit> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        if (partitionMaintenance != null) {
+            LocalDate first = chunk.get(0).getTimestamp().toLocalDate();
+            LocalDate last = first;
+            for (Hit hit : chunk) {
+                LocalDate day = hit.getTimestamp().toLocalDate();
+                first = day.isBefore(first) ? day : first;
+                last = day.isAfter(last) ? day : last;
+            }
+            partitionMaintenance.createPartitions(first, last);
+        }
+        hitRepository.resolveDictionary(chunk);
+        hitRepository.copyAll(chunk);
+        int written = chunk.size();
+        chunk.clear();
+        return written;
+    }
+
+    private void rebuildDerived(LocalDate fromDay, LocalDate toDay) {
+        if (rollupsEnabled) {
+            log.debug("Пересчет агрегатов за сутки с {} по {}", fromDay, toDay);
+            hitRollupRepository.rebuildDays(fromDay, toDay);
+        }
+        if (sketchesEnabled) {
+            log.debug("Пересчет скетчей за сутки с {} по {}", fromDay, toDay);
+            hitSketchRepository.rebuildDays(sketchPrecision, fromDay, toDay);
+        }
+        if (bitmapsEnabled) {
+            log.debug("Пересчет битмапов за сутки с {} по {}", fromDay, toDay);
+            hitIpBitmapRepository.rebuildDays(fromDay, toDay);
+        }
+    }
+
+    private static InputStream decompress(InputStream body) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(body, BUFFER_SIZE);
+        in.mark(2);
+        boolean gzip = in.read() == GZIP_MAGIC_FIRST && in.read() == GZIP_MAGIC_SECOND;
+        in.reset();
+        return gzip ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+}
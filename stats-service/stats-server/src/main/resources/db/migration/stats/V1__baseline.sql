@@ -0,0 +1,48 @@
+-- Схема на момент перехода на Flyway: до этого таблицы создавались Hibernate (ddl-auto=update),
+-- поэтому на существующей базе все CREATE пропускаются
+CREATE TABLE IF NOT EXISTS hits
+(
+     id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+     app VARCHAR(100) NOT NULL,
+     uri VARCHAR(100) NOT NULL,
+     ip VARCHAR(100) NOT NULL,
+     timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     CONSTRAINT pk_hit PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_rollups
+(
+     granularity VARCHAR(8) NOT NULL,
+     bucket_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     app VARCHAR(100) NOT NULL,
+     uri VARCHAR(100) NOT NULL,
+     hits BIGINT NOT NULL,
+     CONSTRAINT pk_hit_rollup PRIMARY KEY (granularity, bucket_start, app, uri)
+);
+
+CREATE TABLE IF NOT EXISTS hit_sketches
+(
+     app VARCHAR(100) NOT NULL,
+     uri VARCHAR(100) NOT NULL,
+     bucket_day DATE NOT NULL,
+     sketch BYTEA NOT NULL,
+     CONSTRAINT pk_hit_sketch PRIMARY KEY (app, uri, bucket_day)
+);
+
+CREATE TABLE IF NOT EXISTS hit_ip_bitmaps
+(
+     app VARCHAR(100) NOT NULL,
+     uri VARCHAR(100) NOT NULL,
+     bucket_day DATE NOT NULL,
+     ipv4 BYTEA NOT NULL,
+     ip_ids BYTEA NOT NULL,
+     CONSTRAINT pk_hit_ip_bitmap PRIMARY KEY (app, uri, bucket_day)
+);
+
+CREATE TABLE IF NOT EXISTS hit_ip_ids
+(
+     id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+     ip VARCHAR(100) NOT NULL,
+     CONSTRAINT pk_hit_ip_id PRIMARY KEY (id),
+     CONSTRAINT uq_hit_ip_id_ip UNIQUE (ip)
+);
@@ -0,0 +1,54 @@
+-- Компактный формат hits: app и uri заменяются id из словарей, ip хранится в бинарном виде.
+-- Кодировка ip совпадает с IpAddresses.encode: каноническая запись IPv4 - байт 4 и 4 байта адреса,
+-- любая другая строка - байт 0 и UTF-8 текст
+CREATE TABLE hit_apps
+(
+     id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+     name VARCHAR(100) NOT NULL,
+     CONSTRAINT pk_hit_app PRIMARY KEY (id),
+     CONSTRAINT uq_hit_app_name UNIQUE (name)
+);
+
+CREATE TABLE hit_uris
+(
+     id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+     uri VARCHAR(100) NOT NULL,
+     CONSTRAINT pk_hit_uri PRIMARY KEY (id),
+     CONSTRAINT uq_hit_uri_uri UNIQUE (uri)
+);
+
+INSERT INTO hit_apps (name) SELECT DISTINCT app FROM hits;
+INSERT INTO hit_uris (uri) SELECT DISTINCT uri FROM hits;
+
+-- Колонки фиксированной длины идут первыми и по убыванию выравнивания, чтобы в строке не было пустот
+CREATE TABLE hits_compact
+(
+     id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+     timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     app_id INTEGER NOT NULL,
+     uri_id INTEGER NOT NULL,
+     ip BYTEA NOT NULL,
+     CONSTRAINT pk_hits_compact PRIMARY KEY (id)
+);
+
+-- Таблица переписывается целиком, а не через UPDATE: так не остается мертвых версий строк
+INSERT INTO hits_compact (id, timestamp, app_id, uri_id, ip)
+SELECT h.id, h.timestamp, a.id, u.id,
+       CASE WHEN h.ip ~ '^(25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])(\.(25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])){3}$'
+            THEN '\x04'::bytea || decode(lpad(to_hex(split_part(h.ip, '.', 1)::bigint * 16777216
+                                                    + split_part(h.ip, '.', 2)::bigint * 65536
+                                                    + split_part(h.ip, '.', 3)::bigint * 256
+                                                    + split_part(h.ip, '.', 4)::bigint), 8, '0'), 'hex')
+            ELSE '\x00'::bytea || convert_to(h.ip, 'UTF8')
+       END
+FROM hits h
+JOIN hit_apps a ON a.name = h.app
+JOIN hit_uris u ON u.uri = h.uri;
+
+DROP TABLE hits;
+ALTER TABLE hits_compact RENAME TO hits;
+ALTER TABLE hits RENAME CONSTRAINT pk_hits_compact TO pk_hit;
+ALTER SEQUENCE hits_compact_id_seq RENAME TO hits_id_seq;
+ALTER TABLE hits ADD CONSTRAINT fk_hit_app FOREIGN KEY (app_id) REFERENCES hit_apps (id);
+ALTER TABLE hits ADD CONSTRAINT fk_hit_uri FOREIGN KEY (uri_id) REFERENCES hit_uris (id);
+SELECT setval(pg_get_serial_sequence('hits', 'id'), COALESCE(MAX(id), 0) + 1, false) FROM hits;
@@ -0,0 +1,41 @@
+-- hits секционируется по timestamp. Первичный ключ секционированной таблицы обязан включать ключ секционирования,
+-- а identity-колонки в секционированных таблицах Postgres 16 не поддерживает, поэтому id берется из обычной последовательности
+ALTER TABLE hits RENAME TO hits_unpartitioned;
+ALTER TABLE hits_unpartitioned RENAME CONSTRAINT pk_hit TO pk_hit_unpartitioned;
+
+CREATE SEQUENCE hit_id_seq;
+SELECT setval('hit_id_seq', COALESCE(MAX(id), 0) + 1, false) FROM hits_unpartitioned;
+
+CREATE TABLE hits
+(
+     id BIGINT NOT NULL DEFAULT nextval('hit_id_seq'),
+     timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     app_id INTEGER NOT NULL,
+     uri_id INTEGER NOT NULL,
+     ip BYTEA NOT NULL,
+     CONSTRAINT pk_hit PRIMARY KEY (id, timestamp),
+     CONSTRAINT fk_hit_app FOREIGN KEY (app_id) REFERENCES hit_apps (id),
+     CONSTRAINT fk_hit_uri FOREIGN KEY (uri_id) REFERENCES hit_uris (id)
+) PARTITION BY RANGE (timestamp);
+
+ALTER SEQUENCE hit_id_seq OWNED BY hits.id;
+
+-- Хиты с метками времени вне созданных секций попадают сюда и переносятся при создании подходящей секции
+CREATE TABLE hits_default PARTITION OF hits DEFAULT;
+
+-- Накопленные хиты раскладываются по месячным секциям; новые секции создает HitPartitionMaintenance
+-- с настроенной гранулярностью
+DO $$
+DECLARE
+    month DATE;
+BEGIN
+    FOR month IN SELECT DISTINCT date_trunc('month', timestamp)::DATE FROM hits_unpartitioned LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF hits FOR VALUES FROM (%L) TO (%L)',
+                       'hits_p' || to_char(month, 'YYYYMM'), month, (month + INTERVAL '1 month')::DATE);
+    END LOOP;
+END $$;
+
+INSERT INTO hits (id, timestamp, app_id, uri_id, ip)
+SELECT id, timestamp, app_id, uri_id, ip FROM hits_unpartitioned;
+
+DROP TABLE hits_unpartitioned;
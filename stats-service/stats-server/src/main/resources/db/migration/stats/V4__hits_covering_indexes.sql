@@ -0,0 +1,10 @@
+-- Покрывающие индексы для запросов /stats по сырым хитам (HitRepository): каждый запрос читает только индекс
+-- (index-only scan), не обращаясь к строкам таблицы. Индексы создаются на секционированной hits, поэтому Postgres
+-- строит их во всех существующих секциях и сам добавляет в секции, присоединяемые позже.
+-- Построение блокирует запись в hits на время миграции: на большой базе ее стоит применять в окно обслуживания
+
+-- Запросы с фильтром по uri: диапазон времени внутри каждого uri из списка
+CREATE INDEX idx_hit_uri_timestamp ON hits (uri_id, timestamp) INCLUDE (app_id, ip);
+
+-- Запросы по всем uri: диапазон времени, остальные колонки для группировки и подсчета ip
+CREATE INDEX idx_hit_timestamp ON hits (timestamp) INCLUDE (app_id, uri_id, ip);
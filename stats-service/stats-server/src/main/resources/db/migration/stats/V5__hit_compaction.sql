@@ -0,0 +1,9 @@
+-- Граница сжатия старых хитов (HitCompaction): сырых хитов раньше compacted_before в hits нет, за эти сутки
+-- остались только посуточные агрегаты, скетчи и битмапы. Таблица из одной строки, до первого сжатия она пуста
+CREATE TABLE hit_compaction
+(
+     id SMALLINT NOT NULL,
+     compacted_before DATE NOT NULL,
+     CONSTRAINT pk_hit_compaction PRIMARY KEY (id),
+     CONSTRAINT ck_hit_compaction_single CHECK (id = 1)
+);
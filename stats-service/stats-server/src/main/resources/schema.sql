@@ -1,11 +1,85 @@
 DROP TABLE IF EXISTS hits;
 
+DROP TABLE IF EXISTS hit_apps;
+
+CREATE TABLE IF NOT EXISTS hit_apps
+(
+     id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+     name VARCHAR(100) NOT NULL,
+     CONSTRAINT pk_hit_app PRIMARY KEY (id),
+     CONSTRAINT uq_hit_app_name UNIQUE (name)
+);
+
+DROP TABLE IF EXISTS hit_uris;
+
+CREATE TABLE IF NOT EXISTS hit_uris
+(
+     id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+     uri VARCHAR(100) NOT NULL,
+     CONSTRAINT pk_hit_uri PRIMARY KEY (id),
+     CONSTRAINT uq_hit_uri_uri UNIQUE (uri)
+);
+
 CREATE TABLE IF NOT EXISTS hits
 (
      id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+     timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+     app_id INTEGER NOT NULL,
+     uri_id INTEGER NOT NULL,
+     ip BYTEA NOT NULL,
+     CONSTRAINT pk_hit PRIMARY KEY (id),
+     CONSTRAINT fk_hit_app FOREIGN KEY (app_id) REFERENCES hit_apps (id),
+     CONSTRAINT fk_hit_uri FOREIGN KEY (uri_id) REFERENCES hit_uris (id)
+);
+
+DROP TABLE IF EXISTS hit_rollups;
+
+CREATE TABLE IF NOT EXISTS hit_rollups
+(
+     granularity VARCHAR(8) NOT NULL,
+     bucket_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
      app VARCHAR(100) NOT NULL,
      uri VARCHAR(100) NOT NULL,
+     hits BIGINT NOT NULL,
+     CONSTRAINT pk_hit_rollup PRIMARY KEY (granularity, bucket_start, app, uri)
+)
+;
+
+DROP TABLE IF EXISTS hit_sketches;
+
+CREATE TABLE IF NOT EXISTS hit_sketches
+(
+     app VARCHAR(100) NOT NULL,
+     uri VARCHAR(100) NOT NULL,
+     bucket_day DATE NOT NULL,
+     sketch BYTEA NOT NULL,
+     CONSTRAINT pk_hit_sketch PRIMARY KEY (app, uri, bucket_day)
+)
+;
+
+DROP TABLE IF EXISTS hit_ip_bitmaps;
+
+CREATE TABLE IF NOT EXISTS hit_ip_bitmaps
+(
+     app VARCHAR(100) NOT NULL,
+     uri VARCHAR(100) NOT NULL,
+     bucket_day DATE NOT NULL,
+     ipv4 BYTEA NOT NULL,
+     ip_ids BYTEA NOT NULL,
+     CONSTRAINT pk_hit_ip_bitmap PRIMARY KEY (app, uri, bucket_day)
+);
+
+DROP TABLE IF EXISTS hit_ip_ids;
+
+CREATE TABLE IF NOT EXISTS hit_ip_ids
+(
+     id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
      ip VARCHAR(100) NOT NULL,
-     timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
-     CONSTRAINT pk_hit PRIMARY KEY (id)
-)
\ No newline at end of file
+     CONSTRAINT pk_hit_ip_id PRIMARY KEY (id),
+     CONSTRAINT uq_hit_ip_id_ip UNIQUE (ip)
+);
+
+-- Те же индексы, что в миграции V4, но без INCLUDE: H2 его не поддерживает
+CREATE INDEX IF NOT EXISTS idx_hit_uri_timestamp ON hits (uri_id, timestamp);
+
+CREATE INDEX IF NOT EXISTS idx_hit_timestamp ON hits (timestamp);
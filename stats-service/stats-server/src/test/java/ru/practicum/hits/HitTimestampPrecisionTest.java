@@ -0,0 +1,67 @@
+package ru.practicum.hits;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.HitBinaryCodec;
+import ru.practicum.NewHitRequest;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.store.HitStore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Хит с миллисекундами сохраняется с точностью до секунды, поэтому сырые хиты и агрегаты считают его одинаково
+// на границе end
+@AutoConfigureMockMvc
+class HitTimestampPrecisionTest extends PostgresTestBase {
+
+    private static final String URI = "/precision/1";
+    private static final LocalDateTime END = LocalDateTime.of(2025, 3, 10, 12, 0, 0);
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private HitRepository hitRepository;
+    @Autowired
+    private HitStore hitStore;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void binaryHitWithMillisecondsCountsTheSameInRawAndRollupPaths() throws Exception {
+        byte[] body = HitBinaryCodec.encode(List.of(
+                new NewHitRequest("ewm-service", URI, "10.0.0.1", END.minusSeconds(30)),
+                new NewHitRequest("ewm-service", URI, "10.0.0.2", END.plusNanos(500_000_000))));
+        mockMvc.perform(post("/hits/batch")
+                        .contentType(HitBinaryCodec.MEDIA_TYPE_VALUE)
+                        .content(body))
+                .andExpect(status().isCreated());
+
+        assertThat(jdbcTemplate.queryForList("SELECT h.timestamp FROM hits h JOIN hit_uris u ON u.id = h.uri_id "
+                + "WHERE u.uri = ? ORDER BY h.timestamp", LocalDateTime.class, URI))
+                .containsExactly(END.minusSeconds(30), END);
+
+        LocalDateTime start = END.minusMinutes(5);
+        List<ViewStatsDto> raw = hitRepository.findHitsUris(start, END, List.of(URI));
+        List<ViewStatsDto> rollups = hitStore.getStats(start, END, List.of(URI), UniqueMode.NONE);
+        assertThat(hits(raw)).isEqualTo(2L);
+        assertThat(hits(rollups)).isEqualTo(hits(raw));
+
+        List<ViewStatsDto> rawUnique = hitRepository.findUniqueHitsUris(start, END, List.of(URI));
+        List<ViewStatsDto> bitmaps = hitStore.getStats(start, END, List.of(URI), UniqueMode.EXACT);
+        assertThat(hits(bitmaps)).isEqualTo(hits(rawUnique)).isEqualTo(2L);
+    }
+
+    private static long hits(List<ViewStatsDto> stats) {
+        return stats.stream().mapToLong(ViewStatsDto::getHits).sum();
+    }
+}
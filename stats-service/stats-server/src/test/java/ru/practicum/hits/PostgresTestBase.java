@@ -0,0 +1,34 @@
+package ru.practicum.hits;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+// Тесты на Postgres в контейнере: схема из миграций Flyway, агрегаты, скетчи, битмапы и секционирование включены,
+// как в application.properties. Контейнер общий для всех тестов и запускается один раз; без Docker тесты пропускаются
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class PostgresTestBase {
+
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16.1");
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        POSTGRES.start();
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+        registry.add("spring.jpa.properties.hibernate.dialect", () -> "org.hibernate.dialect.PostgreSQLDialect");
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "validate");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("spring.sql.init.mode", () -> "never");
+        registry.add("spring.flyway.enabled", () -> "true");
+        registry.add("stats.rollups.enabled", () -> "true");
+        registry.add("stats.sketch.enabled", () -> "true");
+        registry.add("stats.bitmap.enabled", () -> "true");
+        registry.add("stats.partitions.enabled", () -> "true");
+    }
+}
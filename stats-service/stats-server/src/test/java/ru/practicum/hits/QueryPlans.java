@@ -0,0 +1,66 @@
+package ru.practicum.hits;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Узлы плана Postgres, читающие hits или ее секции, в виде "<тип узла> on <таблица> [using <индекс>]"
+public class QueryPlans {
+
+    private static final Pattern HITS_RELATION = Pattern.compile("hits(_p\\d+|_default)?");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public QueryPlans(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // План, который Postgres выбрал бы сам; запрос не выполняется
+    public List<String> hitScans(String sql, Object... params) {
+        return hitScans(explain(sql, params));
+    }
+
+    // Сам запрос не выполняется. Последовательное и bitmap-чтение запрещены до конца транзакции: план показывает,
+    // может ли запрос обойтись индексами, а не то, что дешевле на почти пустой таблице
+    public List<String> indexedHitScans(String sql, Object... params) {
+        return hitScans(transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+            jdbcTemplate.execute("SET LOCAL enable_bitmapscan = off");
+            return explain(sql, params);
+        }));
+    }
+
+    private String explain(String sql, Object... params) {
+        return jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class, params);
+    }
+
+    private List<String> hitScans(String plan) {
+        List<String> scans = new ArrayList<>();
+        try {
+            collectScans(objectMapper.readTree(plan).path(0).path("Plan"), scans);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось разобрать план запроса", e);
+        }
+        return scans;
+    }
+
+    private static void collectScans(JsonNode plan, List<String> scans) {
+        String relation = plan.path("Relation Name").asText(null);
+        if (relation != null && HITS_RELATION.matcher(relation).matches()) {
+            String index = plan.path("Index Name").asText(null);
+            scans.add(plan.path("Node Type").asText() + " on " + relation + (index == null ? "" : " using " + index));
+        }
+        for (JsonNode child : plan.path("Plans")) {
+            collectScans(child, scans);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.practicum.hits;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.TestComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Запоминает SQL, который Hibernate отправляет в базу из текущего потока во время record. Так тесты планов
+// объясняют ровно те запросы, которые Hibernate строит из JPQL, а не их копии. Подключается через @Import
+@TestComponent
+public class SqlRecorder implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private final ThreadLocal<List<String>> recorded = new ThreadLocal<>();
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        List<String> statements = recorded.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+
+    public List<String> record(Runnable action) {
+        List<String> statements = new ArrayList<>();
+        recorded.set(statements);
+        try {
+            action.run();
+        } finally {
+            recorded.remove();
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,185 @@
+package ru.practicum.hits.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ViewStatsDto;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.sketch.UniqueIpSet;
+import ru.practicum.hits.store.HitStore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Граница закрытия - начало текущих суток (seal-delay 0, seal-step сутки), поэтому не сдвигается внутри теста
+class StatsQueryCacheTest {
+
+    private static final long DAY = 86_400;
+    private static final List<String> URIS = List.of("/events/1");
+    private static final AppUri EVENT = new AppUri("ewm-service", "/events/1");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HitStore hitStore;
+    private StatsQueryCache cache;
+    private LocalDateTime sealed;
+
+    @BeforeEach
+    void setUp() {
+        hitStore = mock(HitStore.class);
+        when(hitStore.getStats(any(), any(), any(), any())).thenReturn(List.of(stat(5)));
+        cache = new StatsQueryCache(hitStore, meterRegistry, 0, DAY, 64);
+        sealed = LocalDateTime.now().toLocalDate().atStartOfDay();
+    }
+
+    @Test
+    void sealedRangeIsLoadedOnce() {
+        LocalDateTime start = sealed.minusDays(10);
+        LocalDateTime end = sealed.minusSeconds(1);
+
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.NONE)).containsExactly(stat(5));
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.NONE)).containsExactly(stat(5));
+
+        verify(hitStore, times(1)).getStats(start, end, URIS, UniqueMode.NONE);
+        assertThat(counter("stats.cache.misses")).isEqualTo(1);
+        assertThat(counter("stats.cache.hits")).isEqualTo(1);
+    }
+
+    @Test
+    void rangeStartingAtSealBoundaryIsNotCached() {
+        LocalDateTime end = sealed.plusHours(1);
+
+        cache.getStats(sealed, end, URIS, UniqueMode.NONE);
+        cache.getStats(sealed, end, URIS, UniqueMode.NONE);
+
+        verify(hitStore, times(2)).getStats(sealed, end, URIS, UniqueMode.NONE);
+        assertThat(counter("stats.cache.bypassed")).isEqualTo(2);
+    }
+
+    @Test
+    void growingRangeReloadsOnlyOpenEdge() {
+        LocalDateTime start = sealed.minusDays(10);
+        LocalDateTime end = sealed.plusHours(1);
+
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.NONE)).containsExactly(stat(10));
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.NONE)).containsExactly(stat(10));
+
+        LocalDateTime lastSealed = sealed.minusNanos(1_000);
+        verify(hitStore, times(1)).getStats(start, lastSealed, URIS, UniqueMode.NONE);
+        verify(hitStore, times(2)).getStats(sealed, end, URIS, UniqueMode.NONE);
+    }
+
+    @Test
+    void lateHitInvalidatesCoveringEntries() {
+        LocalDateTime start = sealed.minusDays(10);
+        LocalDateTime end = sealed.minusDays(5);
+        cache.getStats(start, end, URIS, UniqueMode.NONE);
+
+        // Хит в открытой части кэш не трогает
+        cache.onHitsStored(List.of(hit(sealed.plusMinutes(1))));
+        cache.getStats(start, end, URIS, UniqueMode.NONE);
+        // Хит после конца закрытого диапазона его не касается
+        cache.onHitsStored(List.of(hit(end.plusDays(1))));
+        cache.getStats(start, end, URIS, UniqueMode.NONE);
+        verify(hitStore, times(1)).getStats(start, end, URIS, UniqueMode.NONE);
+
+        cache.onHitsStored(List.of(hit(end)));
+        cache.getStats(start, end, URIS, UniqueMode.NONE);
+        verify(hitStore, times(2)).getStats(start, end, URIS, UniqueMode.NONE);
+        assertThat(counter("stats.cache.invalidations")).isEqualTo(1);
+    }
+
+    @Test
+    void resultLoadedDuringInvalidationIsNotCached() {
+        LocalDateTime start = sealed.minusDays(10);
+        LocalDateTime end = sealed.minusDays(5);
+        // Поздний хит приходит, пока хранилище считает ответ: посчитанный ответ может его не учитывать
+        doAnswer(invocation -> {
+            cache.invalidate(start, end);
+            return List.of(stat(5));
+        }).doReturn(List.of(stat(6))).when(hitStore).getStats(start, end, URIS, UniqueMode.NONE);
+
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.NONE)).containsExactly(stat(5));
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.NONE)).containsExactly(stat(6));
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.NONE)).containsExactly(stat(6));
+
+        verify(hitStore, times(2)).getStats(start, end, URIS, UniqueMode.NONE);
+    }
+
+    @Test
+    void uniqueGrowingRangeMergesIpSets() {
+        LocalDateTime start = sealed.minusDays(10);
+        LocalDateTime end = sealed.plusHours(1);
+        when(hitStore.getUniqueIps(eq(start), any(), any())).thenReturn(Map.of(EVENT, ips(1, 2, 3)));
+        when(hitStore.getUniqueIps(eq(sealed), any(), any())).thenReturn(Map.of(EVENT, ips(3, 4)));
+
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.EXACT)).containsExactly(stat(4));
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.EXACT)).containsExactly(stat(4));
+
+        verify(hitStore, times(1)).getUniqueIps(eq(start), any(), any());
+        verify(hitStore, times(2)).getUniqueIps(eq(sealed), any(), any());
+    }
+
+    @Test
+    void oversizeEntryIsNotRebuilt() {
+        cache = new StatsQueryCache(hitStore, meterRegistry, 0, DAY, 1);
+        LocalDateTime start = sealed.minusDays(10);
+        LocalDateTime end = sealed.plusHours(1);
+        UniqueIpSet large = new UniqueIpSet();
+        Random random = new Random(42);
+        for (int i = 0; i < 500_000; i++) {
+            large.addIpv4(random.nextInt() & 0xFFFFFFFFL);
+        }
+        assertThat(large.sizeInBytes()).isGreaterThan(1024 * 1024);
+        when(hitStore.getUniqueIps(any(), any(), any())).thenReturn(Map.of(EVENT, large));
+
+        cache.getStats(start, end, URIS, UniqueMode.EXACT);
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.EXACT)).containsExactly(stat(5));
+        assertThat(cache.getStats(start, end, URIS, UniqueMode.EXACT)).containsExactly(stat(5));
+
+        verify(hitStore, times(1)).getUniqueIps(eq(start), any(), any());
+        verify(hitStore, times(2)).getStats(start, end, URIS, UniqueMode.EXACT);
+        assertThat(counter("stats.cache.oversize")).isEqualTo(1);
+
+        // После инвалидации ответ снова пробуется сохранить
+        cache.invalidate(start, start);
+        cache.getStats(start, end, URIS, UniqueMode.EXACT);
+        verify(hitStore, times(2)).getUniqueIps(eq(start), any(), any());
+        verify(hitStore, never()).getStats(eq(start), eq(sealed.minusNanos(1_000)), any(), any());
+    }
+
+    private double counter(String name) {
+        return meterRegistry.counter(name).count();
+    }
+
+    private static ViewStatsDto stat(long hits) {
+        return ViewStatsDto.builder().app(EVENT.app()).uri(EVENT.uri()).hits(hits).build();
+    }
+
+    private static UniqueIpSet ips(long... addresses) {
+        UniqueIpSet set = new UniqueIpSet();
+        for (long address : addresses) {
+            set.addIpv4(address);
+        }
+        return set;
+    }
+
+    private static Hit hit(LocalDateTime timestamp) {
+        Hit hit = new Hit();
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+}
@@ -0,0 +1,84 @@
+package ru.practicum.hits.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.web.server.ResponseStatusException;
+import ru.practicum.HitBinaryCodec;
+import ru.practicum.NewHitRequest;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitBinaryHttpMessageConverterTest {
+
+    private static final MediaType MEDIA_TYPE = MediaType.valueOf(HitBinaryCodec.MEDIA_TYPE_VALUE);
+    private static final Type HIT_LIST = new ParameterizedTypeReference<List<NewHitRequest>>() {
+    }.getType();
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2025, 3, 10, 12, 0, 0);
+
+    private final HitBinaryHttpMessageConverter converter = new HitBinaryHttpMessageConverter(1);
+
+    @Test
+    void readsOnlyHitsAndNeverWrites() {
+        assertThat(converter.canRead(NewHitRequest.class, MEDIA_TYPE)).isTrue();
+        assertThat(converter.canRead(HIT_LIST, null, MEDIA_TYPE)).isTrue();
+        assertThat(converter.canRead(NewHitRequest.class, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.canRead(String.class, MEDIA_TYPE)).isFalse();
+        assertThat(converter.canWrite(NewHitRequest.class, MEDIA_TYPE)).isFalse();
+        assertThat(converter.canWrite(HIT_LIST, List.class, MEDIA_TYPE)).isFalse();
+    }
+
+    @Test
+    void readsSingleHitAndBatch() throws Exception {
+        NewHitRequest hit = new NewHitRequest("ewm-service", "/events/1", "10.0.0.1", TIMESTAMP);
+        assertThat(converter.read(NewHitRequest.class, new MockHttpInputMessage(HitBinaryCodec.encode(hit))))
+                .isEqualTo(hit);
+
+        List<NewHitRequest> hits = List.of(hit, new NewHitRequest("ewm-service", "/events/2", "10.0.0.2", TIMESTAMP));
+        assertThat(converter.read(HIT_LIST, null, new MockHttpInputMessage(HitBinaryCodec.encode(hits))))
+                .isEqualTo(hits);
+        assertThatThrownBy(() -> converter.read(NewHitRequest.class,
+                new MockHttpInputMessage(HitBinaryCodec.encode(hits))))
+                .isInstanceOf(HttpMessageNotReadableException.class);
+    }
+
+    // Заявленная длина больше предела: тело не читается вовсе
+    @Test
+    void rejectsDeclaredOversizeBodyBeforeReading() {
+        ByteArrayInputStream body = new ByteArrayInputStream(new byte[16]);
+        MockHttpInputMessage message = new MockHttpInputMessage(body);
+        message.getHeaders().setContentLength(1024 * 1024 + 1);
+
+        assertThatThrownBy(() -> converter.read(HIT_LIST, null, message))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        assertThat(body.available()).isEqualTo(16);
+    }
+
+    // Без Content-Length читается не больше предела плюс один байт
+    @Test
+    void rejectsOversizeBodyWithoutContentLength() {
+        List<NewHitRequest> hits = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            hits.add(new NewHitRequest("ewm-service", "/events/" + i, "10.0.0.1", TIMESTAMP));
+        }
+        byte[] encoded = HitBinaryCodec.encode(hits);
+        assertThat(encoded.length).isGreaterThan(1024 * 1024 + 1);
+        ByteArrayInputStream body = new ByteArrayInputStream(encoded);
+
+        assertThatThrownBy(() -> converter.read(HIT_LIST, null, new MockHttpInputMessage(body)))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        assertThat(body.available()).isEqualTo(encoded.length - (1024 * 1024 + 1));
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum.hits.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.HitUri;
+import ru.practicum.hits.store.HitStore;
+import ru.practicum.validation.ConstraintViolationException;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UriPrefixIndexTest {
+
+    private HitStore hitStore;
+
+    @BeforeEach
+    void setUp() {
+        hitStore = mock(HitStore.class);
+        when(hitStore.knownUris()).thenReturn(List.of("/events", "/events/1", "/events/10", "/events/2",
+                "/events/1/comments", "/events/2/comments", "/eventsX", "/compilations/1", "/a.b"));
+    }
+
+    @Test
+    void trailingWildcardExpandsPrefixRange() {
+        UriPrefixIndex index = new UriPrefixIndex(hitStore, 100);
+
+        assertThat(index.expand("/events/*"))
+                .containsExactly("/events/1", "/events/1/comments", "/events/10", "/events/2", "/events/2/comments");
+        assertThat(index.expand("/events/1*")).containsExactly("/events/1", "/events/1/comments", "/events/10");
+        assertThat(index.expand("/users/*")).isEmpty();
+        assertThat(index.expand("*")).hasSize(9);
+    }
+
+    @Test
+    void innerWildcardIsMatchedWithinPrefixRange() {
+        UriPrefixIndex index = new UriPrefixIndex(hitStore, 100);
+
+        assertThat(index.expand("/events/*/comments")).containsExactly("/events/1/comments", "/events/2/comments");
+        assertThat(index.expand("*/1")).containsExactly("/compilations/1", "/events/1");
+        assertThat(index.expand("/events*1")).containsExactly("/events/1");
+        // Символы регулярных выражений в шаблоне сравниваются буквально
+        assertThat(index.expand("/a.*")).containsExactly("/a.b");
+        assertThat(index.expand("/?*")).isEmpty();
+    }
+
+    @Test
+    void storedAndLoadedUrisAreIndexed() {
+        UriPrefixIndex index = new UriPrefixIndex(hitStore, 100);
+        Hit hit = new Hit();
+        hit.setUri(new HitUri("/events/3"));
+
+        index.onHitsStored(List.of(hit));
+        index.addAll(List.of("/events/4", "/events/1"));
+
+        assertThat(index.expand("/events/*/")).isEmpty();
+        assertThat(index.expand("/events/*")).contains("/events/3", "/events/4").doesNotHaveDuplicates();
+    }
+
+    @Test
+    void expansionIsLimitedByMaxExpansion() {
+        UriPrefixIndex index = new UriPrefixIndex(hitStore, 3);
+
+        assertThat(index.maxExpansion()).isEqualTo(3);
+        // Ровно maxExpansion uri допустимо
+        assertThat(index.expand("/events/1*")).hasSize(3);
+        assertThatThrownBy(() -> index.expand("/events/*"))
+                .isInstanceOf(ConstraintViolationException.class)
+                .hasMessageContaining("/events/*");
+        // Uri, не подходящие под остаток шаблона, в лимит не входят
+        assertThat(index.expand("/events/*/comments")).hasSize(2);
+    }
+
+    @Test
+    void patternIsRecognizedByWildcard() {
+        assertThat(UriPrefixIndex.isPattern("/events/*")).isTrue();
+        assertThat(UriPrefixIndex.isPattern("/events/1")).isFalse();
+    }
+}
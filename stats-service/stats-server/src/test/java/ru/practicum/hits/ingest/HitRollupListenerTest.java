@@ -0,0 +1,53 @@
+package ru.practicum.hits.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.NewHitRequest;
+import ru.practicum.hits.PostgresTestBase;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.service.HitService;
+import ru.practicum.hits.store.HitStore;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Пустые агрегаты строятся по сырым хитам при запуске, раньше веб-сервера
+class HitRollupListenerTest extends PostgresTestBase {
+
+    private static final String URI = "/backfill/1";
+    private static final LocalDateTime START = LocalDateTime.of(2024, 11, 5, 10, 0);
+
+    @Autowired
+    private HitRollupListener hitRollupListener;
+    @Autowired
+    private HitService hitService;
+    @Autowired
+    private HitStore hitStore;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void emptyRollupsAreRebuiltOnStart() {
+        List<NewHitRequest> hits = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            hits.add(new NewHitRequest("ewm-service", URI, "10.0.0." + i, START.plusMinutes(i * 7L)));
+        }
+        hitService.addHits(hits);
+        jdbcTemplate.update("DELETE FROM hit_rollups");
+
+        hitRollupListener.stop();
+        hitRollupListener.start();
+
+        assertThat(hitRollupListener.isRunning()).isTrue();
+        assertThat(hitStore.getStats(START.minusDays(1), START.plusDays(1), List.of(URI), UniqueMode.NONE))
+                .singleElement()
+                .satisfies(stat -> assertThat(stat.getHits()).isEqualTo(30L));
+        // Веб-сервер Spring Boot запускается в фазе DEFAULT_PHASE - 2048
+        assertThat(hitRollupListener.getPhase()).isLessThan(SmartLifecycle.DEFAULT_PHASE - 2048);
+    }
+}
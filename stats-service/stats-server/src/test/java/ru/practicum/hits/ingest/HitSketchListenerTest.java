@@ -0,0 +1,58 @@
+package ru.practicum.hits.ingest;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.repository.HitSketchRepository;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HitSketchListenerTest {
+
+    private final HitSketchRepository hitSketchRepository = mock(HitSketchRepository.class);
+    private final HitRepository hitRepository = mock(HitRepository.class);
+    private final HitSketchListener listener = new HitSketchListener(hitSketchRepository, hitRepository, 12);
+
+    @Test
+    void emptySketchesAreBuiltFromHits() {
+        when(hitRepository.existsAnyHit()).thenReturn(true);
+
+        listener.start();
+
+        verify(hitSketchRepository).rebuildFromHits(12);
+    }
+
+    @Test
+    void precisionChangeRebuildsSketches() {
+        when(hitSketchRepository.findAnySketchSize()).thenReturn(1 << 10);
+
+        listener.start();
+
+        verify(hitSketchRepository).rebuildFromHits(12);
+    }
+
+    // Скетчи сжатых суток не из чего пересчитать: запуск останавливается, скетчи не удаляются
+    @Test
+    void precisionChangeIsRefusedWhenDaysAreCompacted() {
+        when(hitSketchRepository.findAnySketchSize()).thenReturn(1 << 10);
+        when(hitSketchRepository.hasDaysWithoutHits()).thenReturn(true);
+
+        assertThatThrownBy(listener::start)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("stats.sketch.precision=10");
+        verify(hitSketchRepository, never()).rebuildFromHits(anyInt());
+    }
+
+    @Test
+    void matchingSketchesAreKept() {
+        when(hitSketchRepository.findAnySketchSize()).thenReturn(1 << 12);
+
+        listener.start();
+
+        verify(hitSketchRepository, never()).rebuildFromHits(anyInt());
+    }
+}
@@ -0,0 +1,193 @@
+package ru.practicum.hits.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.store.HitStore;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class HitWriteBufferTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HitStore hitStore = mock(HitStore.class);
+    private final List<Hit> saved = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void acceptedHitsAreWrittenOnStop() {
+        recordSaves();
+        HitWriteBuffer buffer = buffer(1_000, "block");
+        buffer.start();
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            Hit hit = hit();
+            assertThat(buffer.offer(hit)).isTrue();
+            hits.add(hit);
+        }
+
+        buffer.stop();
+
+        assertThat(saved).containsExactlyInAnyOrderElementsOf(hits);
+        assertThat(meterRegistry.counter("stats.ingest.written").count()).isEqualTo(2_500);
+    }
+
+    @Test
+    void offerAfterStopIsRejected() {
+        recordSaves();
+        HitWriteBuffer buffer = buffer(10, "block");
+        buffer.start();
+        buffer.stop();
+
+        assertThat(buffer.offer(hit())).isFalse();
+        assertThat(saved).isEmpty();
+        assertThat(meterRegistry.counter("stats.ingest.dropped").count()).isEqualTo(1);
+    }
+
+    // Писатель занят записью, буфер полон, и HTTP-поток ждет места в момент остановки. Принятый хит должен быть
+    // записан, отвергнутый - нет
+    @Test
+    void hitBlockedDuringStopIsWrittenOrRejected() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            saved.addAll(invocation.getArgument(0));
+            return null;
+        }).when(hitStore).saveAll(anyList());
+        HitWriteBuffer buffer = buffer(1, "block");
+        buffer.start();
+
+        assertThat(buffer.offer(hit())).isTrue();
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(buffer.offer(hit())).isTrue();
+        Hit blocked = hit();
+        CompletableFuture<Boolean> accepted = CompletableFuture.supplyAsync(() -> buffer.offer(blocked));
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(buffer::stop);
+        Thread.sleep(300);
+        release.countDown();
+        stopped.get(10, TimeUnit.SECONDS);
+
+        assertThat(saved.contains(blocked)).isEqualTo(accepted.get(10, TimeUnit.SECONDS));
+        assertThat(saved).hasSizeGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void overflowDropsHitWhenBufferIsFull() {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            saved.addAll(invocation.getArgument(0));
+            return null;
+        }).when(hitStore).saveAll(anyList());
+        HitWriteBuffer buffer = buffer(1, "drop");
+        buffer.start();
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            accepted += buffer.offer(hit()) ? 1 : 0;
+        }
+        release.countDown();
+        buffer.stop();
+
+        assertThat(accepted).isPositive();
+        assertThat(saved).hasSize(accepted);
+        assertThat(meterRegistry.counter("stats.ingest.dropped").count()).isEqualTo(10 - accepted);
+    }
+
+    // Пачка буфера принимается целиком или не принимается вовсе
+    @Test
+    void batchIsAcceptedWholeOrRejected() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            saved.addAll(invocation.getArgument(0));
+            return null;
+        }).when(hitStore).saveAll(anyList());
+        HitWriteBuffer buffer = buffer(3, "drop");
+        buffer.start();
+
+        assertThat(buffer.offer(hit())).isTrue();
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(buffer.offerAll(List.of(hit(), hit()))).isTrue();
+        assertThat(buffer.offerAll(List.of(hit(), hit()))).isFalse();
+        assertThat(buffer.offerAll(List.of(hit(), hit(), hit(), hit()))).isFalse();
+        release.countDown();
+        buffer.stop();
+
+        assertThat(saved).hasSize(3);
+        assertThat(meterRegistry.counter("stats.ingest.dropped").count()).isEqualTo(6);
+    }
+
+    // Пока БД недоступна, пачка не теряется, а повторяется
+    @Test
+    void failedWriteIsRetried() {
+        doThrow(new IllegalStateException("БД недоступна"))
+                .doThrow(new IllegalStateException("БД недоступна"))
+                .doAnswer(invocation -> saved.addAll(invocation.getArgument(0)))
+                .when(hitStore).saveAll(anyList());
+        HitWriteBuffer buffer = buffer(10, "block");
+        buffer.start();
+        Hit hit = hit();
+        assertThat(buffer.offer(hit)).isTrue();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (saved.isEmpty() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        buffer.stop();
+
+        assertThat(saved).containsExactly(hit);
+        assertThat(meterRegistry.counter("stats.ingest.retried").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("stats.ingest.failed").count()).isZero();
+    }
+
+    // Ошибка слушателя не делает записанные хиты неудачными и не мешает остальным слушателям
+    @Test
+    void listenerFailureDoesNotFailWrittenHits() {
+        recordSaves();
+        List<Hit> notified = Collections.synchronizedList(new ArrayList<>());
+        HitStoredListener failing = hits -> {
+            throw new IllegalStateException("ошибка слушателя");
+        };
+        HitWriteBuffer buffer = new HitWriteBuffer(hitStore, List.of(failing, notified::addAll), meterRegistry,
+                10, 100, 20, "block", true);
+        buffer.start();
+        Hit hit = hit();
+        assertThat(buffer.offer(hit)).isTrue();
+        buffer.stop();
+
+        assertThat(saved).containsExactly(hit);
+        assertThat(notified).containsExactly(hit);
+        assertThat(meterRegistry.counter("stats.ingest.written").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("stats.ingest.failed").count()).isZero();
+    }
+
+    private void recordSaves() {
+        doAnswer(invocation -> saved.addAll(invocation.getArgument(0))).when(hitStore).saveAll(anyList());
+    }
+
+    private HitWriteBuffer buffer(int capacity, String overflow) {
+        return new HitWriteBuffer(hitStore, List.of(), meterRegistry, capacity, 100, 20, overflow, true);
+    }
+
+    private static Hit hit() {
+        Hit hit = new Hit();
+        hit.setTimestamp(LocalDateTime.now());
+        return hit;
+    }
+}
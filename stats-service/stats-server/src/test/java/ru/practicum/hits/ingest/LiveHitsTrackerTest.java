@@ -0,0 +1,151 @@
+package ru.practicum.hits.ingest;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.LiveHitsDto;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.Hit;
+import ru.practicum.hits.model.HitApp;
+import ru.practicum.hits.model.HitUri;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Метки времени берутся от текущего момента с запасом в десятки секунд до границ окон,
+// поэтому смена секунды во время теста результат не меняет
+class LiveHitsTrackerTest {
+
+    private static final String APP = "ewm-service";
+
+    private final LiveHitsTracker tracker = new LiveHitsTracker(10_000);
+
+    @Test
+    void hitsAreCountedPerWindow() {
+        LocalDateTime now = LocalDateTime.now();
+        tracker.onHitsStored(List.of(
+                hit("/events/1", now.minusSeconds(10)),
+                hit("/events/1", now.minusSeconds(10)),
+                hit("/events/1", now.minusSeconds(20)),
+                hit("/events/1", now.plusMinutes(5)),
+                hit("/events/1", now.minusMinutes(3)),
+                hit("/events/1", now.minusMinutes(3)),
+                hit("/events/1", now.minusMinutes(30)),
+                hit("/events/1", now.minusHours(2)),
+                hit("/events/2", now.minusMinutes(30)),
+                hit("/events/3", now.minusHours(2))));
+
+        assertThat(tracker.getLive(null, 10)).containsExactly(
+                live("/events/1", 4, 6, 7),
+                live("/events/2", 0, 0, 1));
+        assertThat(tracker.getLive(List.of("/events/2", "/events/3"), 10)).containsExactly(live("/events/2", 0, 0, 1));
+        assertThat(tracker.getLive(null, 1)).containsExactly(live("/events/1", 4, 6, 7));
+    }
+
+    // Секунды now - 250 и now - 550 попадают в одну ячейку посекундного кольца
+    @Test
+    void ringCellKeepsOnlyLatestPeriod() {
+        LocalDateTime now = LocalDateTime.now();
+        tracker.onHitsStored(List.of(hit("/old-first", now.minusSeconds(550)), hit("/old-first", now.minusSeconds(250))));
+        tracker.onHitsStored(List.of(hit("/old-last", now.minusSeconds(250)), hit("/old-last", now.minusSeconds(550))));
+
+        assertThat(tracker.getLive(null, 10)).containsExactlyInAnyOrder(
+                live("/old-first", 0, 1, 2),
+                live("/old-last", 0, 1, 2));
+    }
+
+    // Конкурентные хиты одной секунды срывают CAS, и счетчик переходит на полосы; ни один хит не теряется
+    @Test
+    void concurrentHitsAreNotLost() throws Exception {
+        int threads = 8;
+        int hitsPerThread = 20_000;
+        LocalDateTime second = LocalDateTime.now().minusSeconds(30);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread writer = new Thread(() -> {
+                List<Hit> hits = List.of(hit("/events/1", second));
+                awaitQuietly(start);
+                for (int i = 0; i < hitsPerThread; i++) {
+                    tracker.onHitsStored(hits);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        long total = (long) threads * hitsPerThread;
+        assertThat(tracker.getLive(null, 10)).containsExactly(live("/events/1", total, total, total));
+    }
+
+    // Очистка удаляет счетчик с хитами старше часа, хит, пришедший в это же время, попадает в новый счетчик.
+    // Каждый раунд заводит свои uri со старым хитом и гоняет запись и очистку одновременно
+    @Test
+    void hitRacingWithEvictionIsNotLost() throws Exception {
+        int rounds = 50;
+        int uris = 2_000;
+        LiveHitsTracker racing = new LiveHitsTracker(rounds * uris);
+        long now = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+        for (int round = 0; round < rounds; round++) {
+            List<AppUri> keys = new ArrayList<>();
+            for (int i = 0; i < uris; i++) {
+                AppUri key = new AppUri(APP, "/round/" + round + "/" + i);
+                racing.add(key, now - 7_200);
+                keys.add(key);
+            }
+
+            CountDownLatch start = new CountDownLatch(1);
+            Thread sweeper = new Thread(() -> {
+                awaitQuietly(start);
+                racing.evictIdle();
+            });
+            sweeper.start();
+            start.countDown();
+            for (AppUri key : keys) {
+                racing.add(key, now - 30);
+            }
+            sweeper.join();
+        }
+
+        List<LiveHitsDto> live = racing.getLive(null, rounds * uris);
+        assertThat(live).hasSize(rounds * uris).allSatisfy(row -> assertThat(row.getHour()).isEqualTo(1));
+    }
+
+    @Test
+    void urisOverLimitAreNotTracked() {
+        LiveHitsTracker limited = new LiveHitsTracker(2);
+        LocalDateTime now = LocalDateTime.now();
+        limited.onHitsStored(List.of(hit("/events/1", now), hit("/events/2", now), hit("/events/3", now),
+                hit("/events/1", now)));
+
+        assertThat(limited.getLive(null, 10)).extracting(LiveHitsDto::getUri)
+                .containsExactly("/events/1", "/events/2");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Hit hit(String uri, LocalDateTime timestamp) {
+        Hit hit = new Hit();
+        hit.setApp(new HitApp(APP));
+        hit.setUri(new HitUri(uri));
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+
+    private static LiveHitsDto live(String uri, long minute, long fiveMinutes, long hour) {
+        return LiveHitsDto.builder().app(APP).uri(uri).minute(minute).fiveMinutes(fiveMinutes).hour(hour).build();
+    }
+}
@@ -0,0 +1,84 @@
+package ru.practicum.hits.maintenance;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.HitBinaryCodec;
+import ru.practicum.NewHitRequest;
+import ru.practicum.hits.PostgresTestBase;
+import ru.practicum.hits.QueryPlans;
+import ru.practicum.hits.SqlRecorder;
+import ru.practicum.hits.repository.HitRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Хиты за месяцы без секций оседают в hits_default. createPartitions переносит их в новые месячные секции,
+// после чего запрос /stats по сырым хитам за ограниченный диапазон читает только секцию своего месяца
+@AutoConfigureMockMvc
+@Import(SqlRecorder.class)
+class HitPartitionMaintenanceTest extends PostgresTestBase {
+
+    private static final String URI = "/partitions/1";
+    private static final LocalDateTime JANUARY = LocalDateTime.of(2020, 1, 15, 12, 0, 0);
+    private static final LocalDateTime FEBRUARY = LocalDateTime.of(2020, 2, 15, 12, 0, 0);
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private HitPartitionMaintenance hitPartitionMaintenance;
+    @Autowired
+    private HitRepository hitRepository;
+    @Autowired
+    private SqlRecorder sqlRecorder;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void createdPartitionsTakeOverDefaultRowsAndPruneBoundedQueries() throws Exception {
+        byte[] body = HitBinaryCodec.encode(List.of(
+                new NewHitRequest("ewm-service", URI, "10.0.0.1", JANUARY),
+                new NewHitRequest("ewm-service", URI, "10.0.0.2", JANUARY.plusDays(1)),
+                new NewHitRequest("ewm-service", URI, "10.0.0.3", FEBRUARY)));
+        mockMvc.perform(post("/hits/batch")
+                        .contentType(HitBinaryCodec.MEDIA_TYPE_VALUE)
+                        .content(body))
+                .andExpect(status().isCreated());
+        assertThat(count("hits_default")).isEqualTo(3L);
+
+        hitPartitionMaintenance.createPartitions(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 2, 1));
+
+        assertThat(count("hits_default")).isZero();
+        assertThat(count("hits_p202001")).isEqualTo(2L);
+        assertThat(count("hits_p202002")).isEqualTo(1L);
+
+        LocalDateTime start = JANUARY.minusDays(5);
+        LocalDateTime end = JANUARY.plusDays(5);
+        assertThat(hitRepository.findHitsUris(start, end, List.of(URI)))
+                .singleElement()
+                .satisfies(stats -> assertThat(stats.getHits()).isEqualTo(2L));
+
+        // Запрос выполняется на диапазоне нулевой длины ради SQL, который строит Hibernate
+        List<String> statements = sqlRecorder.record(() -> hitRepository.findHitsUris(end, end, List.of(URI)));
+        assertThat(statements).hasSize(1);
+        List<String> scans = new QueryPlans(jdbcTemplate, transactionTemplate)
+                .hitScans(statements.get(0), start, end, URI);
+        assertThat(scans).isNotEmpty().allSatisfy(scan -> assertThat(scan).contains(" on hits_p202001"));
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table + " h JOIN hit_uris u ON u.id = h.uri_id "
+                + "WHERE u.uri = ?", Long.class, URI);
+    }
+}
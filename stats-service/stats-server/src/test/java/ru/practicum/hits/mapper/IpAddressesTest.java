@@ -0,0 +1,49 @@
+package ru.practicum.hits.mapper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressesTest {
+
+    @Test
+    void canonicalIpv4IsParsedAsUnsignedNumber() {
+        assertThat(IpAddresses.parseIpv4("0.0.0.0")).isZero();
+        assertThat(IpAddresses.parseIpv4("10.0.0.1")).isEqualTo(0x0A000001L);
+        assertThat(IpAddresses.parseIpv4("255.255.255.255")).isEqualTo(0xFFFFFFFFL);
+        assertThat(IpAddresses.formatIpv4(0xFFFFFFFFL)).isEqualTo("255.255.255.255");
+    }
+
+    // Все, что не является IPv4 в канонической нотации, в том числе IPv4, отображенный в IPv6,
+    // считается отдельной строкой, как при COUNT(DISTINCT ip)
+    @ParameterizedTest
+    @ValueSource(strings = {"", "1.2.3", "1.2.3.4.5", "256.0.0.1", "010.0.0.1", "1..2.3", "1.2.3.", ".1.2.3",
+            "1.2.3.4 ", "::1", "2001:db8::1", "::ffff:10.0.0.1", "localhost"})
+    void nonCanonicalIpv4IsNotParsed(String ip) {
+        assertThat(IpAddresses.parseIpv4(ip)).isEqualTo(IpAddresses.NOT_IPV4);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"10.0.0.1", "0.0.0.0", "255.255.255.255", "010.0.0.1", "::1", "2001:db8::1",
+            "::ffff:10.0.0.1", "fe80::1%eth0", "хост"})
+    void encodeDecodeRoundTrip(String ip) {
+        assertThat(IpAddresses.decode(IpAddresses.encode(ip))).isEqualTo(ip);
+    }
+
+    @Test
+    void ipv4IsEncodedInFiveBytes() {
+        byte[] encoded = IpAddresses.encode("192.168.1.20");
+
+        assertThat(encoded).hasSize(5);
+        assertThat(IpAddresses.ipv4(encoded)).isEqualTo(IpAddresses.parseIpv4("192.168.1.20"));
+    }
+
+    @Test
+    void textAddressesHaveNoIpv4() {
+        assertThat(IpAddresses.ipv4(IpAddresses.encode("::ffff:10.0.0.1"))).isEqualTo(IpAddresses.NOT_IPV4);
+        // Строка из четырех символов не путается с закодированным IPv4
+        assertThat(IpAddresses.ipv4(IpAddresses.encode("::12"))).isEqualTo(IpAddresses.NOT_IPV4);
+    }
+}
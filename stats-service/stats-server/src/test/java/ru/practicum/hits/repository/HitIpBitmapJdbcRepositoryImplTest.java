@@ -0,0 +1,58 @@
+package ru.practicum.hits.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.practicum.hits.PostgresTestBase;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.HitIpBitmap;
+import ru.practicum.hits.sketch.UniqueIpSet;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Повторное слияние дописывает множества ip к уже сохраненным строкам, в том числе когда ключей больше,
+// чем помещается в один запрос блокировки
+class HitIpBitmapJdbcRepositoryImplTest extends PostgresTestBase {
+
+    private static final LocalDate DAY = LocalDate.of(2021, 6, 1);
+    private static final int URIS = 1_500;
+
+    @Autowired
+    private HitIpBitmapRepository hitIpBitmapRepository;
+
+    @Test
+    void mergeAllUnitesWithStoredSets() {
+        Map<String, Integer> ids = hitIpBitmapRepository.resolveIpIds(List.of("::1", "2001:db8::1"));
+        hitIpBitmapRepository.mergeAll(sets(0, 10, ids.get("::1")));
+        hitIpBitmapRepository.mergeAll(sets(5, 20, ids.get("2001:db8::1")));
+
+        Map<AppUri, List<UniqueIpSet>> daily = hitIpBitmapRepository.findDaily(DAY, DAY.plusDays(1), null);
+        assertThat(daily).hasSize(URIS);
+        assertThat(daily.values()).allSatisfy(sets -> {
+            assertThat(sets).hasSize(1);
+            assertThat(sets.get(0).cardinality()).isEqualTo(22);
+        });
+    }
+
+    // Множества всех uri с ip 10.0.0.from .. 10.0.0.(to - 1) и одним адресом из словаря
+    private static Map<HitIpBitmap.Key, UniqueIpSet> sets(int from, int to, int ipId) {
+        Map<HitIpBitmap.Key, UniqueIpSet> sets = new HashMap<>();
+        for (int i = 0; i < URIS; i++) {
+            HitIpBitmap.Key key = new HitIpBitmap.Key();
+            key.setApp("ewm-service");
+            key.setUri("/merge/" + i);
+            key.setDay(DAY);
+            UniqueIpSet set = new UniqueIpSet();
+            for (int ip = from; ip < to; ip++) {
+                set.addIpv4(0x0A000000L + ip);
+            }
+            set.addIpId(ipId);
+            sets.put(key, set);
+        }
+        return sets;
+    }
+}
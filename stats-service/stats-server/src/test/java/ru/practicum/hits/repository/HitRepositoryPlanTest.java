@@ -0,0 +1,81 @@
+package ru.practicum.hits.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.hits.PostgresTestBase;
+import ru.practicum.hits.QueryPlans;
+import ru.practicum.hits.SqlRecorder;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Запросы /stats по сырым хитам читают hits и ее секции только покрывающими индексами миграции V4 (index-only scan).
+// Каждый запрос HitRepository выполняется на диапазоне нулевой длины, чтобы получить SQL, который строит Hibernate,
+// и этот SQL объясняется на диапазоне в неделю
+@Import(SqlRecorder.class)
+class HitRepositoryPlanTest extends PostgresTestBase {
+
+    private static final List<String> URIS = List.of("/events", "/events/1");
+    private static final String INDEX_ONLY_SCAN = "Index Only Scan";
+
+    @Autowired
+    private HitRepository hitRepository;
+    @Autowired
+    private SqlRecorder sqlRecorder;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private QueryPlans queryPlans;
+    private LocalDateTime end;
+    private LocalDateTime start;
+
+    @BeforeEach
+    void setUp() {
+        queryPlans = new QueryPlans(jdbcTemplate, transactionTemplate);
+        end = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        start = end.minusDays(7);
+    }
+
+    @Test
+    void findHitsReadsOnlyIndexes() {
+        assertIndexOnly(() -> hitRepository.findHits(end, end), List.of());
+    }
+
+    @Test
+    void findHitsUrisReadsOnlyIndexes() {
+        assertIndexOnly(() -> hitRepository.findHitsUris(end, end, URIS), URIS);
+    }
+
+    @Test
+    void findUniqueHitsReadsOnlyIndexes() {
+        assertIndexOnly(() -> hitRepository.findUniqueHits(end, end), List.of());
+    }
+
+    @Test
+    void findUniqueHitsUrisReadsOnlyIndexes() {
+        assertIndexOnly(() -> hitRepository.findUniqueHitsUris(end, end, URIS), URIS);
+    }
+
+    // Параметры запроса идут в SQL в порядке JPQL: начало и конец диапазона, затем uri из списка
+    private void assertIndexOnly(Runnable query, List<String> uris) {
+        List<String> statements = sqlRecorder.record(query);
+        assertThat(statements).hasSize(1);
+        String sql = statements.get(0);
+        List<Object> params = new ArrayList<>(List.of(start, end));
+        params.addAll(uris);
+        assertThat(sql.chars().filter(c -> c == '?').count()).isEqualTo(params.size());
+
+        List<String> scans = queryPlans.indexedHitScans(sql, params.toArray());
+        assertThat(scans).isNotEmpty().allSatisfy(scan -> assertThat(scan).startsWith(INDEX_ONLY_SCAN));
+    }
+}
@@ -0,0 +1,69 @@
+package ru.practicum.hits.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.practicum.hits.PostgresTestBase;
+import ru.practicum.hits.model.AppUri;
+import ru.practicum.hits.model.HitSketch;
+import ru.practicum.hits.sketch.HyperLogLog;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Повторное слияние дописывает скетчи к уже сохраненным строкам, в том числе когда ключей больше,
+// чем помещается в один запрос блокировки
+class HitSketchJdbcRepositoryImplTest extends PostgresTestBase {
+
+    private static final int PRECISION = 12;
+    private static final LocalDate DAY = LocalDate.of(2021, 6, 1);
+    private static final int URIS = 1_500;
+
+    @Autowired
+    private HitSketchRepository hitSketchRepository;
+
+    @Test
+    void mergeAllUnitesWithStoredSketches() {
+        hitSketchRepository.mergeAll(sketches(0, 10));
+        hitSketchRepository.mergeAll(sketches(5, 20));
+
+        Map<AppUri, HyperLogLog> merged = hitSketchRepository.findMerged(DAY, DAY.plusDays(1), null);
+        assertThat(merged).hasSize(URIS);
+        assertThat(merged.values()).allSatisfy(sketch -> assertThat(sketch.estimate()).isEqualTo(20));
+
+        Map<AppUri, HyperLogLog> one = hitSketchRepository.findMerged(DAY, DAY.plusDays(1), List.of(uri(URIS - 1)));
+        assertThat(one).containsOnlyKeys(new AppUri("ewm-service", uri(URIS - 1)));
+    }
+
+    // Хитов за DAY нет, как у сжатых суток
+    @Test
+    void sketchesOfDaysWithoutHitsAreDetected() {
+        hitSketchRepository.mergeAll(sketches(0, 1));
+
+        assertThat(hitSketchRepository.hasDaysWithoutHits()).isTrue();
+    }
+
+    // Скетчи всех uri с ip 10.0.0.from .. 10.0.0.(to - 1)
+    private static Map<HitSketch.Key, HyperLogLog> sketches(int from, int to) {
+        Map<HitSketch.Key, HyperLogLog> sketches = new HashMap<>();
+        for (int i = 0; i < URIS; i++) {
+            HitSketch.Key key = new HitSketch.Key();
+            key.setApp("ewm-service");
+            key.setUri(uri(i));
+            key.setDay(DAY);
+            HyperLogLog sketch = new HyperLogLog(PRECISION);
+            for (int ip = from; ip < to; ip++) {
+                sketch.add("10.0.0." + ip);
+            }
+            sketches.put(key, sketch);
+        }
+        return sketches;
+    }
+
+    private static String uri(int i) {
+        return "/merge/" + i;
+    }
+}
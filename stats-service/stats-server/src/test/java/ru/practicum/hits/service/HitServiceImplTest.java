@@ -0,0 +1,68 @@
+package ru.practicum.hits.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import ru.practicum.NewHitRequest;
+import ru.practicum.hits.cache.StatsQueryCache;
+import ru.practicum.hits.index.UriPrefixIndex;
+import ru.practicum.hits.ingest.HitWriteBuffer;
+import ru.practicum.hits.ingest.LiveHitsTracker;
+import ru.practicum.hits.ingest.TopHitsTracker;
+import ru.practicum.hits.store.HitStore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Хиты, которые буфер асинхронной записи не принял, не подтверждаются ответом 201
+class HitServiceImplTest {
+
+    private static final NewHitRequest REQUEST =
+            new NewHitRequest("ewm-service", "/events/1", "10.0.0.1", LocalDateTime.of(2025, 3, 10, 12, 0));
+
+    private final HitWriteBuffer writeBuffer = mock(HitWriteBuffer.class);
+    private final HitServiceImpl service = new HitServiceImpl(mock(HitStore.class), provider(writeBuffer),
+            provider(null), provider(null), provider(null), provider(null), List.of(), 10_000);
+
+    @Test
+    void rejectedHitIsAnsweredWith503() {
+        when(writeBuffer.offer(any())).thenReturn(false);
+
+        assertThatThrownBy(() -> service.addHit(REQUEST))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    @Test
+    void rejectedBatchIsAnsweredWith503() {
+        when(writeBuffer.offerAll(anyList())).thenReturn(false);
+
+        assertThatThrownBy(() -> service.addHits(List.of(REQUEST, REQUEST)))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    @Test
+    void acceptedHitsAreConfirmed() {
+        when(writeBuffer.offer(any())).thenReturn(true);
+        when(writeBuffer.offerAll(anyList())).thenReturn(true);
+
+        assertThat(service.addHit(REQUEST).getUri()).isEqualTo("/events/1");
+        service.addHits(List.of(REQUEST, REQUEST));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(bean);
+        return provider;
+    }
+}
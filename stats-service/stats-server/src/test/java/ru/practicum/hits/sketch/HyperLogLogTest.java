@@ -0,0 +1,87 @@
+package ru.practicum.hits.sketch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 12, 14})
+    void estimateStaysWithinFourStandardErrors(int precision) {
+        int cardinality = 200_000;
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (int i = 0; i < cardinality; i++) {
+            sketch.add(ip(i));
+            // Повторы не меняют оценку
+            sketch.add(ip(i));
+        }
+
+        double relativeError = Math.abs(sketch.estimate() - cardinality) / (double) cardinality;
+        assertThat(relativeError).isLessThan(4 * HyperLogLog.standardError(precision));
+    }
+
+    @Test
+    void smallCardinalityIsCountedAlmostExactly() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int i = 0; i < 100; i++) {
+            sketch.add(ip(i));
+        }
+
+        assertThat(sketch.estimate()).isCloseTo(100L, within(2L));
+        assertThat(new HyperLogLog(12).estimate()).isZero();
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog left = new HyperLogLog(12);
+        HyperLogLog right = new HyperLogLog(12);
+        HyperLogLog union = new HyperLogLog(12);
+        for (int i = 0; i < 30_000; i++) {
+            left.add(ip(i));
+            union.add(ip(i));
+        }
+        for (int i = 20_000; i < 50_000; i++) {
+            right.add(ip(i));
+            union.add(ip(i));
+        }
+
+        left.merge(right);
+
+        assertThat(left.toBytes()).isEqualTo(union.toBytes());
+        assertThat(left.estimate()).isEqualTo(union.estimate());
+    }
+
+    @Test
+    void mergeRejectsDifferentPrecision() {
+        assertThatThrownBy(() -> new HyperLogLog(12).merge(new HyperLogLog(14)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void precisionIsCheckedAndRestoredFromBytes() {
+        assertThatThrownBy(() -> new HyperLogLog(HyperLogLog.MIN_PRECISION - 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[1000]))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        HyperLogLog sketch = new HyperLogLog(14);
+        for (int i = 0; i < 5_000; i++) {
+            sketch.add(ip(i));
+        }
+        HyperLogLog restored = HyperLogLog.fromBytes(sketch.toBytes());
+
+        assertThat(restored.getPrecision()).isEqualTo(14);
+        assertThat(restored.estimate()).isEqualTo(sketch.estimate());
+    }
+
+    private static String ip(int i) {
+        return "10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+    }
+}
@@ -0,0 +1,125 @@
+package ru.practicum.hits.sketch;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.hits.sketch.SpaceSaving.Estimate;
+import ru.practicum.hits.sketch.SpaceSaving.Top;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpaceSavingTest {
+
+    private static final int CAPACITY = 50;
+
+    @Test
+    void smallStreamIsCountedExactly() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(CAPACITY);
+        sketch.offer("/events/1", 3);
+        sketch.offer("/events/2");
+        sketch.offer("/events/1");
+
+        Top<String> top = SpaceSaving.top(List.of(sketch), 10);
+
+        assertThat(top.estimates()).containsExactly(new Estimate<>("/events/1", 4, 0), new Estimate<>("/events/2", 1, 0));
+        assertThat(top.total()).isEqualTo(5);
+        assertThat(top.otherMax()).isZero();
+        assertThat(sketch.floor()).isZero();
+    }
+
+    @Test
+    void estimatesStayWithinErrorBounds() {
+        Map<Integer, Long> exact = new HashMap<>();
+        SpaceSaving<Integer> sketch = new SpaceSaving<>(CAPACITY);
+        feed(sketch, exact, new Random(1), 100_000);
+
+        assertBounds(SpaceSaving.top(List.of(sketch), CAPACITY), exact, CAPACITY);
+        assertThat(sketch.size()).isEqualTo(CAPACITY);
+        assertThat(sketch.total()).isEqualTo(100_000);
+    }
+
+    @Test
+    void mergedSketchKeepsErrorBounds() {
+        Map<Integer, Long> exact = new HashMap<>();
+        List<SpaceSaving<Integer>> sketches = new ArrayList<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 4; i++) {
+            SpaceSaving<Integer> sketch = new SpaceSaving<>(CAPACITY);
+            feed(sketch, exact, random, 25_000 * (i + 1));
+            sketches.add(sketch);
+        }
+
+        SpaceSaving<Integer> merged = SpaceSaving.merge(sketches, CAPACITY);
+        assertThat(merged.total()).isEqualTo(250_000);
+        assertThat(merged.size()).isEqualTo(CAPACITY);
+        assertBounds(SpaceSaving.top(List.of(merged), CAPACITY), exact, CAPACITY);
+
+        // После объединения скетч продолжает принимать элементы
+        feed(merged, exact, random, 50_000);
+        assertBounds(SpaceSaving.top(List.of(merged), CAPACITY), exact, CAPACITY);
+    }
+
+    @Test
+    void topOverSketchesMatchesMergedSketch() {
+        Map<Integer, Long> exact = new HashMap<>();
+        List<SpaceSaving<Integer>> sketches = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 3; i++) {
+            SpaceSaving<Integer> sketch = new SpaceSaving<>(CAPACITY);
+            feed(sketch, exact, random, 40_000);
+            sketches.add(sketch);
+        }
+
+        Top<Integer> top = SpaceSaving.top(sketches, 10);
+        // Объединение без вытеснения: оценки всех элементов совпадают с оценками top
+        Top<Integer> merged = SpaceSaving.top(List.of(SpaceSaving.merge(sketches, CAPACITY * 3)), 10);
+
+        assertThat(top.estimates()).extracting(Estimate::count)
+                .containsExactlyElementsOf(merged.estimates().stream().map(Estimate::count).toList());
+        assertThat(top.total()).isEqualTo(120_000);
+        assertBounds(top, exact, CAPACITY);
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThatThrownBy(() -> new SpaceSaving<String>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // Поток с распределением, близким к Zipf: элемент i встречается примерно в 1 / (i + 1) раз реже первого
+    private static void feed(SpaceSaving<Integer> sketch, Map<Integer, Long> exact, Random random, int length) {
+        for (int i = 0; i < length; i++) {
+            int key = (int) Math.floor(Math.exp(random.nextDouble() * Math.log(2_000))) - 1;
+            sketch.offer(key);
+            exact.merge(key, 1L, Long::sum);
+        }
+    }
+
+    // Истинное значение каждого элемента лежит в [count - error, count], error не больше total / capacity
+    // на каждый исходный скетч, элементы вне списка встречались не больше otherMax раз,
+    // а частые элементы (больше total / capacity) в список попадают
+    private static void assertBounds(Top<Integer> top, Map<Integer, Long> exact, int capacity) {
+        long total = exact.values().stream().mapToLong(Long::longValue).sum();
+        assertThat(top.total()).isEqualTo(total);
+        for (Estimate<Integer> estimate : top.estimates()) {
+            long actual = exact.getOrDefault(estimate.key(), 0L);
+            assertThat(actual).isBetween(estimate.count() - estimate.error(), estimate.count());
+            assertThat(estimate.error()).isLessThanOrEqualTo(total / capacity);
+        }
+        Set<Integer> listed = top.estimates().stream().map(Estimate::key).collect(Collectors.toSet());
+        exact.forEach((key, actual) -> {
+            if (!listed.contains(key)) {
+                assertThat(actual).isLessThanOrEqualTo(top.otherMax());
+            }
+            if (actual > total / capacity) {
+                assertThat(listed).contains(key);
+            }
+        });
+    }
+}
@@ -0,0 +1,55 @@
+package ru.practicum.hits.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UniqueIpSetTest {
+
+    private static final Map<String, Integer> IDS = Map.of(
+            "::1", 1,
+            "2001:db8::1", 2,
+            "::ffff:10.0.0.1", 3);
+
+    @Test
+    void ipv4AndOtherAddressesAreCountedSeparately() {
+        UniqueIpSet set = UniqueIpSet.of(List.of("10.0.0.1", "10.0.0.1", "255.255.255.255", "::1",
+                "2001:db8::1", "::1", "::ffff:10.0.0.1"), IDS);
+
+        // ::ffff:10.0.0.1 - отдельная строка, а не повтор 10.0.0.1
+        assertThat(set.cardinality()).isEqualTo(5);
+    }
+
+    @Test
+    void bytesRoundTrip() {
+        UniqueIpSet set = UniqueIpSet.of(List.of("10.0.0.1", "192.168.0.1", "255.255.255.255", "::1"), IDS);
+
+        UniqueIpSet restored = UniqueIpSet.fromBytes(set.ipv4Bytes(), set.ipIdsBytes());
+
+        assertThat(restored.cardinality()).isEqualTo(4);
+        assertThat(restored.unionCardinality(set)).isEqualTo(4);
+        assertThat(UniqueIpSet.fromBytes(null, new byte[0]).cardinality()).isZero();
+    }
+
+    @Test
+    void mergeAndUnionCountSharedAddressesOnce() {
+        UniqueIpSet first = UniqueIpSet.of(List.of("10.0.0.1", "10.0.0.2", "::1"), IDS);
+        first.addUnresolved("fe80::1");
+        UniqueIpSet second = UniqueIpSet.of(List.of("10.0.0.2", "10.0.0.3", "::1", "2001:db8::1"), IDS);
+        second.addUnresolved("fe80::1");
+        second.addUnresolved("fe80::2");
+
+        assertThat(first.unionCardinality(second)).isEqualTo(7);
+        assertThat(second.unionCardinality(first)).isEqualTo(7);
+        assertThat(first.cardinality()).isEqualTo(4);
+
+        UniqueIpSet union = UniqueIpSet.union(List.of(first, second));
+        assertThat(union.cardinality()).isEqualTo(7);
+
+        first.merge(second);
+        assertThat(first.cardinality()).isEqualTo(7);
+    }
+}
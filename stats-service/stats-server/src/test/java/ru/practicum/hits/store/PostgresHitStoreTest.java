@@ -0,0 +1,111 @@
+package ru.practicum.hits.store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.practicum.hits.ingest.HitWriter;
+import ru.practicum.hits.maintenance.HitCompactionService;
+import ru.practicum.hits.model.RollupGranularity;
+import ru.practicum.hits.model.TimeSlice;
+import ru.practicum.hits.model.UniqueMode;
+import ru.practicum.hits.repository.HitIpBitmapRepository;
+import ru.practicum.hits.repository.HitRepository;
+import ru.practicum.hits.repository.HitRollupRepository;
+import ru.practicum.hits.repository.HitSketchRepository;
+import ru.practicum.validation.ConstraintViolationException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Граница диапазона внутри сжатых суток расширяется до границы суток, а при reject-unaligned диапазон отклоняется
+class PostgresHitStoreTest {
+
+    private static final LocalDateTime COMPACTED_BEFORE = LocalDateTime.of(2025, 1, 10, 0, 0);
+
+    private final HitRollupRepository hitRollupRepository = mock(HitRollupRepository.class);
+    private PostgresHitStore store;
+    private PostgresHitStore strictStore;
+
+    @BeforeEach
+    void setUp() {
+        store = store(false);
+        strictStore = store(true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PostgresHitStore store(boolean rejectUnaligned) {
+        HitCompactionService compaction = mock(HitCompactionService.class);
+        when(compaction.compactedBefore()).thenReturn(COMPACTED_BEFORE);
+        ObjectProvider<HitCompactionService> compactionProvider = mock(ObjectProvider.class);
+        when(compactionProvider.getIfAvailable()).thenReturn(compaction);
+        ObjectProvider<RangeFanOut> fanOutProvider = mock(ObjectProvider.class);
+
+        return new PostgresHitStore(mock(HitRepository.class), hitRollupRepository, mock(HitSketchRepository.class),
+                mock(HitIpBitmapRepository.class), mock(HitWriter.class), fanOutProvider, compactionProvider,
+                true, true, 12, true, rejectUnaligned);
+    }
+
+    @Test
+    void acceptsDayAlignedRangeInCompactedDays() {
+        LocalDateTime end = LocalDateTime.of(2025, 1, 7, 23, 59, 59);
+        store.getStats(LocalDateTime.of(2025, 1, 5, 0, 0), end, null, UniqueMode.NONE);
+        verify(hitRollupRepository).findStats(any(), eq(end), eq(null));
+    }
+
+    @Test
+    void acceptsAnyEndOutsideCompactedDays() {
+        assertThatCode(() -> store.getStats(LocalDateTime.of(2025, 1, 5, 0, 0),
+                LocalDateTime.of(2025, 1, 12, 13, 45, 10), null, UniqueMode.NONE))
+                .doesNotThrowAnyException();
+    }
+
+    @Test
+    void widensBoundsInsideCompactedDaysToWholeDays() {
+        store.getStats(LocalDateTime.of(2025, 1, 5, 12, 0), LocalDateTime.of(2025, 1, 7, 12, 0), null,
+                UniqueMode.NONE);
+        verify(hitRollupRepository).findStats(
+                eq(TimeSlice.split(LocalDateTime.of(2025, 1, 5, 0, 0), LocalDateTime.of(2025, 1, 8, 0, 0))),
+                eq(LocalDateTime.of(2025, 1, 7, 23, 59, 59)), eq(null));
+    }
+
+    // Конец в несжатых сутках не расширяется
+    @Test
+    void widensOnlyCompactedEdge() {
+        LocalDateTime end = LocalDateTime.of(2025, 1, 12, 13, 45, 10);
+        store.getStats(LocalDateTime.of(2025, 1, 5, 12, 0), end, null, UniqueMode.NONE);
+        verify(hitRollupRepository).findStats(any(), eq(end), eq(null));
+    }
+
+    @Test
+    void strictStoreRejectsStartInsideCompactedDay() {
+        assertThatThrownBy(() -> strictStore.getStats(LocalDateTime.of(2025, 1, 5, 12, 0),
+                LocalDateTime.of(2025, 1, 12, 0, 0), null, UniqueMode.NONE))
+                .isInstanceOf(ConstraintViolationException.class);
+        verify(hitRollupRepository, never()).findStats(any(), any(), any());
+    }
+
+    @Test
+    void strictStoreRejectsEndInsideCompactedDay() {
+        assertThatThrownBy(() -> strictStore.getStats(LocalDateTime.of(2025, 1, 5, 0, 0),
+                LocalDateTime.of(2025, 1, 7, 12, 0), List.of("/events"), UniqueMode.NONE))
+                .isInstanceOf(ConstraintViolationException.class);
+        assertThatThrownBy(() -> strictStore.getUniqueIps(LocalDateTime.of(2025, 1, 5, 0, 0),
+                LocalDateTime.of(2025, 1, 7, 12, 0), null))
+                .isInstanceOf(ConstraintViolationException.class);
+        assertThatThrownBy(() -> strictStore.streamStats(LocalDateTime.of(2025, 1, 5, 0, 0),
+                LocalDateTime.of(2025, 1, 7, 12, 0), null, UniqueMode.NONE, stat -> { }))
+                .isInstanceOf(ConstraintViolationException.class);
+        assertThatThrownBy(() -> strictStore.getHistogram(LocalDateTime.of(2025, 1, 5, 0, 0),
+                LocalDateTime.of(2025, 1, 7, 12, 0), null, RollupGranularity.DAY, UniqueMode.NONE))
+                .isInstanceOf(ConstraintViolationException.class);
+    }
+}
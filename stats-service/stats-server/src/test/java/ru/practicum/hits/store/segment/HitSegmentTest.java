@@ -0,0 +1,131 @@
+package ru.practicum.hits.store.segment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitSegmentTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void committedRecordsSurviveReopen() throws Exception {
+        try (HitSegment segment = HitSegment.open(dir, 0, 16)) {
+            segment.append(1_000, 1, 2, 0x0A000001L);
+            segment.append(2_000, 3, 4, -5L);
+            segment.commit(true);
+        }
+
+        try (HitSegment segment = HitSegment.open(dir, 0, 1024)) {
+            assertThat(segment.count()).isEqualTo(2);
+            assertThat(scan(segment, Long.MIN_VALUE, Long.MAX_VALUE, null))
+                    .containsExactly(new Record(1_000, 1, 2, 0x0A000001L), new Record(2_000, 3, 4, -5L));
+            // Емкость берется из заголовка, а не из параметра
+            for (int i = 2; i < 16; i++) {
+                segment.append(3_000, 1, 1, 1);
+            }
+            assertThat(segment.isFull()).isTrue();
+        }
+    }
+
+    @Test
+    void uncommittedTailIsDroppedAfterCrash() throws Exception {
+        HitSegment crashed = HitSegment.open(dir, 0, 16);
+        try {
+            for (int i = 0; i < 3; i++) {
+                crashed.append(1_000 + i, 1, 1, i);
+            }
+            crashed.commit(false);
+            crashed.append(9_000, 1, 1, 9);
+            crashed.append(9_001, 1, 1, 9);
+            assertThat(crashed.count()).isEqualTo(3);
+
+            // Сегмент открывается заново без close: индекса нет, он строится по зафиксированным записям
+            try (HitSegment reopened = HitSegment.open(dir, 0, 16)) {
+                assertThat(reopened.count()).isEqualTo(3);
+                assertThat(reopened.overlaps(9_000, 9_001)).isFalse();
+                assertThat(scan(reopened, Long.MIN_VALUE, Long.MAX_VALUE, null))
+                        .extracting(Record::time)
+                        .containsExactly(1_000L, 1_001L, 1_002L);
+            }
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    void staleIndexIsRebuilt() throws Exception {
+        try (HitSegment segment = HitSegment.open(dir, 0, HitSegment.BLOCK_SIZE * 2)) {
+            segment.append(5_000, 1, 1, 1);
+            segment.commit(false);
+        }
+        Path index = dir.resolve("hits-00000000.idx");
+        byte[] staleIndex = Files.readAllBytes(index);
+        try (HitSegment segment = HitSegment.open(dir, 0, 0)) {
+            segment.append(7_000, 1, 1, 1);
+            segment.commit(false);
+        }
+        Files.write(index, staleIndex);
+
+        try (HitSegment segment = HitSegment.open(dir, 0, 0)) {
+            assertThat(segment.overlaps(7_000, 7_000)).isTrue();
+            assertThat(scan(segment, 6_000, 8_000, null)).extracting(Record::time).containsExactly(7_000L);
+        }
+    }
+
+    @Test
+    void scanFiltersByTimeAndUriAcrossBlocks() throws Exception {
+        int records = HitSegment.BLOCK_SIZE * 3;
+        try (HitSegment segment = HitSegment.open(dir, 0, records)) {
+            for (int i = 0; i < records; i++) {
+                segment.append(i, 1, i % 3, i);
+            }
+            segment.commit(false);
+            assertThat(segment.blocks()).isEqualTo(3);
+
+            BitSet uris = new BitSet();
+            uris.set(2);
+            long from = HitSegment.BLOCK_SIZE - 10;
+            long to = HitSegment.BLOCK_SIZE * 2L + 10;
+            List<Record> found = scan(segment, from, to, uris);
+
+            assertThat(found).allSatisfy(record -> {
+                assertThat(record.uri()).isEqualTo(2);
+                assertThat(record.time()).isBetween(from, to);
+            });
+            assertThat(found).hasSize((int) ((to - from + 1) / 3));
+            // Блоки вне диапазона пропускаются целиком
+            assertThat(scan(segment, HitSegment.BLOCK_SIZE * 2L, records, uris, 0, 2)).isEmpty();
+        }
+    }
+
+    @Test
+    void foreignFileIsRejected() throws Exception {
+        Files.write(dir.resolve("hits-00000000.seg"), new byte[128]);
+
+        assertThatThrownBy(() -> HitSegment.open(dir, 0, 16)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static List<Record> scan(HitSegment segment, long from, long to, BitSet uris) {
+        return scan(segment, from, to, uris, 0, segment.blocks());
+    }
+
+    private static List<Record> scan(HitSegment segment, long from, long to, BitSet uris, int fromBlock, int toBlock) {
+        List<Record> records = new ArrayList<>();
+        segment.scan(fromBlock, toBlock, from, to, uris,
+                (time, app, uri, ip) -> records.add(new Record(time, app, uri, ip)));
+        return records;
+    }
+
+    private record Record(long time, int app, int uri, long ip) {
+    }
+}
@@ -0,0 +1,74 @@
+package ru.practicum.hits.store.segment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentDictionaryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void idsSurviveReopen() throws Exception {
+        Path file = dir.resolve("uris.dict");
+        try (SegmentDictionary dictionary = new SegmentDictionary(file, true)) {
+            assertThat(dictionary.find("/events")).isEqualTo(-1);
+            assertThat(dictionary.resolve("/events")).isZero();
+            assertThat(dictionary.resolve("/events/1")).isEqualTo(1);
+            assertThat(dictionary.resolve("/события")).isEqualTo(2);
+            assertThat(dictionary.resolve("/events")).isZero();
+        }
+
+        try (SegmentDictionary dictionary = new SegmentDictionary(file, false)) {
+            assertThat(dictionary.values()).containsExactly("/events", "/events/1", "/события");
+            assertThat(dictionary.find("/события")).isEqualTo(2);
+            assertThat(dictionary.valueOf(1)).isEqualTo("/events/1");
+            assertThat(dictionary.resolve("/events/2")).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void tornTailIsTruncated() throws Exception {
+        Path file = dir.resolve("apps.dict");
+        try (SegmentDictionary dictionary = new SegmentDictionary(file, false)) {
+            dictionary.resolve("ewm-service");
+        }
+        long complete = Files.size(file);
+        // Запись обещает 20 байт, но дописаны только 5
+        ByteBuffer torn = ByteBuffer.allocate(Integer.BYTES + 5).putInt(20).put("ewm-m".getBytes(StandardCharsets.UTF_8));
+        Files.write(file, torn.array(), StandardOpenOption.APPEND);
+
+        try (SegmentDictionary dictionary = new SegmentDictionary(file, false)) {
+            assertThat(Files.size(file)).isEqualTo(complete);
+            assertThat(dictionary.values()).containsExactly("ewm-service");
+            assertThat(dictionary.resolve("ewm-main")).isEqualTo(1);
+        }
+
+        try (SegmentDictionary dictionary = new SegmentDictionary(file, false)) {
+            assertThat(dictionary.values()).containsExactly("ewm-service", "ewm-main");
+        }
+    }
+
+    @Test
+    void tornLengthIsTruncated() throws Exception {
+        Path file = dir.resolve("ips.dict");
+        try (SegmentDictionary dictionary = new SegmentDictionary(file, false)) {
+            dictionary.resolve("::1");
+        }
+        long complete = Files.size(file);
+        Files.write(file, new byte[]{0, 0}, StandardOpenOption.APPEND);
+
+        try (SegmentDictionary dictionary = new SegmentDictionary(file, false)) {
+            assertThat(Files.size(file)).isEqualTo(complete);
+            assertThat(dictionary.values()).containsExactly("::1");
+        }
+    }
+}